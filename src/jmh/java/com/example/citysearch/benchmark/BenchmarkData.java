@@ -0,0 +1,67 @@
+package com.example.citysearch.benchmark;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.RowErrorPolicy;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.store.CityStore;
+import com.example.citysearch.trie.IndexType;
+
+// Wiring shared by the benchmarks: the application's own components, built
+// without Spring, over either the bundled file or a synthetic one
+final class BenchmarkData {
+  private BenchmarkData() {
+  }
+
+  // "bundled" for cities_canada-usa.tsv, otherwise a synthetic row count such as "10000000"
+  static Path file(String dataset) throws IOException {
+    if (dataset.equals("bundled")) {
+      try {
+        return Path.of(BenchmarkData.class.getResource("/cities_canada-usa.tsv").toURI());
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
+    }
+    return SyntheticCities.cached(Integer.parseInt(dataset));
+  }
+
+  static CitySearchProperties properties(IndexType indexType) {
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setIndexType(indexType);
+    properties.setLimitData(10);
+    properties.setTextScoreWeight(0.6);
+    properties.setLocationScoreWeight(0.4);
+    properties.setRowErrorPolicy(RowErrorPolicy.SKIP);
+    // Measure the search path itself rather than cache hits
+    properties.setResultCacheSize(0);
+    return properties;
+  }
+
+  static CityDataLoader load(CitySearchProperties properties, TsvIngestionPipeline pipeline, Path file)
+      throws IOException {
+    CityDataLoader dataLoader = new CityDataLoader(properties, pipeline);
+    dataLoader.loadFromFile(null, file, (rowsParsed, rowsRejected) -> {
+    });
+    return dataLoader;
+  }
+
+  // Prefixes of real names, so every query has matches like typed ones would
+  static String[] prefixes(CityStore store, int length, int count) {
+    Random random = new Random(7);
+    List<String> prefixes = new ArrayList<>(count);
+    for (int attempt = 0; prefixes.size() < count && attempt < 100 * count; attempt++) {
+      String name = store.getName(random.nextInt(store.size()));
+      if (name.length() >= length) {
+        prefixes.add(name.substring(0, length));
+      }
+    }
+    return prefixes.toArray(new String[0]);
+  }
+}
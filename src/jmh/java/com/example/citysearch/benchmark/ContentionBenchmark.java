@@ -0,0 +1,114 @@
+package com.example.citysearch.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.IngestionJobs;
+import com.example.citysearch.loader.IngestionReport;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.service.CitySearchService;
+import com.example.citysearch.service.SearchMetrics;
+import com.example.citysearch.service.SearchResultCache;
+import com.example.citysearch.service.SearchSessions;
+import com.example.citysearch.service.ShardRouter;
+import com.example.citysearch.trie.IndexType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Searches running while the same dataset is reloaded over and over. The
+// upload re-sends one batch whose ids are already present, so every load
+// rebuilds the whole index without growing it. Vary the split with -tg,
+// e.g. -tg 1,1 / 3,1 / 7,1 readers,uploaders.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentionBenchmark {
+  private static final int BATCH_ROWS = 1_000;
+
+  @Param({ "bundled" })
+  public String dataset;
+
+  @Param({ "TRIE", "RADIX" })
+  public IndexType indexType;
+
+  private TsvIngestionPipeline pipeline;
+  private IngestionJobs ingestionJobs;
+  private ShardRouter shardRouter;
+  private CityDataLoader dataLoader;
+  private CitySearchService service;
+  private Path batch;
+  private String[] prefixes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    CitySearchProperties properties = BenchmarkData.properties(indexType);
+    pipeline = new TsvIngestionPipeline(properties);
+    dataLoader = BenchmarkData.load(properties, pipeline, BenchmarkData.file(dataset));
+    ingestionJobs = new IngestionJobs(dataLoader, properties);
+    SearchResultCache resultCache = new SearchResultCache(properties, dataLoader);
+    shardRouter = new ShardRouter(properties, new ObjectMapper());
+    service = new CitySearchService(dataLoader, properties, ingestionJobs, resultCache,
+        new SearchMetrics(new SimpleMeterRegistry(), dataLoader, resultCache), shardRouter,
+        new SearchSessions(properties, dataLoader));
+    batch = Files.createTempFile("citysearch-batch-", ".tsv");
+    SyntheticCities.write(batch, BATCH_ROWS, 99);
+    dataLoader.loadFromFile(null, batch, (rowsParsed, rowsRejected) -> {
+    });
+    prefixes = BenchmarkData.prefixes(dataLoader.getTrie().getStore(), 2, 1024);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    shardRouter.shutdown();
+    ingestionJobs.shutdown();
+    pipeline.shutdown();
+    Files.deleteIfExists(batch);
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(3)
+  public List<Suggestion> search(Cursor cursor) {
+    cursor.next = (cursor.next + 1) % prefixes.length;
+    return service.search(null, prefixes[cursor.next], null, null, null, false, false);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public IngestionReport upload() throws IOException {
+    return dataLoader.loadFromFile(null, batch, (rowsParsed, rowsRejected) -> {
+    });
+  }
+}
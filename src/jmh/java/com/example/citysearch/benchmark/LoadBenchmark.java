@@ -0,0 +1,88 @@
+package com.example.citysearch.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.IndexType;
+
+// Time to parse a file and publish its index. Run with -prof gc for the
+// allocation rate; after every iteration the retained heap of the loaded
+// index is printed next to the index's own estimate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+  @Param({ "bundled", "1000000" })
+  public String dataset;
+
+  @Param({ "TRIE", "RADIX" })
+  public IndexType indexType;
+
+  private CitySearchProperties properties;
+  private TsvIngestionPipeline pipeline;
+  private Path file;
+  private CityDataLoader loaded;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    properties = BenchmarkData.properties(indexType);
+    pipeline = new TsvIngestionPipeline(properties);
+    file = BenchmarkData.file(dataset);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pipeline.shutdown();
+  }
+
+  @Benchmark
+  public CityDataLoader load() throws IOException {
+    loaded = BenchmarkData.load(properties, pipeline, file);
+    return loaded;
+  }
+
+  @TearDown(Level.Iteration)
+  public void reportFootprint() {
+    CityIndex index = loaded.getTrie();
+    int cities = index.getSize();
+    long estimate = index.getMemoryBytes();
+    long withIndex = usedHeapAfterGc();
+    index = null;
+    loaded = null;
+    long retained = withIndex - usedHeapAfterGc();
+    System.out.printf("%n%d cities: %d bytes retained (%.1f per city), %d estimated (%.1f per city)%n", cities,
+        retained, (double) retained / cities, estimate, (double) estimate / cities);
+  }
+
+  private static long usedHeapAfterGc() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
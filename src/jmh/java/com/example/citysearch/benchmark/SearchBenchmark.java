@@ -0,0 +1,128 @@
+package com.example.citysearch.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.IngestionJobs;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.service.CitySearchService;
+import com.example.citysearch.service.SearchMetrics;
+import com.example.citysearch.service.SearchResultCache;
+import com.example.citysearch.service.SearchSessions;
+import com.example.citysearch.service.ShardRouter;
+import com.example.citysearch.store.CityStore;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.IndexType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Query throughput by prefix length, for the bare index and the whole service
+// path (candidate selection, scoring, sorting) with and without coordinates.
+// Use -t to see how reads scale across threads.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+  private static final int QUERIES = 1024;
+
+  @Param({ "bundled" })
+  public String dataset;
+
+  @Param({ "TRIE", "RADIX" })
+  public IndexType indexType;
+
+  @Param({ "1", "2", "3", "4", "6", "8", "10" })
+  public int prefixLength;
+
+  private TsvIngestionPipeline pipeline;
+  private IngestionJobs ingestionJobs;
+  private ShardRouter shardRouter;
+  private CityIndex index;
+  private CitySearchService service;
+  String[] prefixes;
+  double[] latitudes;
+  double[] longitudes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    CitySearchProperties properties = BenchmarkData.properties(indexType);
+    pipeline = new TsvIngestionPipeline(properties);
+    CityDataLoader dataLoader = BenchmarkData.load(properties, pipeline, BenchmarkData.file(dataset));
+    ingestionJobs = new IngestionJobs(dataLoader, properties);
+    SearchResultCache resultCache = new SearchResultCache(properties, dataLoader);
+    shardRouter = new ShardRouter(properties, new ObjectMapper());
+    service = new CitySearchService(dataLoader, properties, ingestionJobs, resultCache,
+        new SearchMetrics(new SimpleMeterRegistry(), dataLoader, resultCache), shardRouter,
+        new SearchSessions(properties, dataLoader));
+    index = dataLoader.getTrie();
+
+    CityStore store = index.getStore();
+    prefixes = BenchmarkData.prefixes(store, prefixLength, QUERIES);
+    // Callers near real cities, a few tens of kilometres off
+    Random random = new Random(11);
+    latitudes = new double[QUERIES];
+    longitudes = new double[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      int city = random.nextInt(store.size());
+      latitudes[i] = Math.max(-90, Math.min(90, store.getLatitude(city) + random.nextGaussian() * 0.3));
+      longitudes[i] = Math.max(-180, Math.min(180, store.getLongitude(city) + random.nextGaussian() * 0.3));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    shardRouter.shutdown();
+    ingestionJobs.shutdown();
+    pipeline.shutdown();
+  }
+
+  // Each thread walks the query arrays on its own
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    int next(SearchBenchmark benchmark) {
+      next = (next + 1) % benchmark.prefixes.length;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public int[] indexSearchByPrefix(Cursor cursor) {
+    return index.searchByPrefix(prefixes[cursor.next(this)], 10);
+  }
+
+  @Benchmark
+  public List<Suggestion> serviceSearch(Cursor cursor) {
+    return service.search(null, prefixes[cursor.next(this)], null, null, null, false, false);
+  }
+
+  @Benchmark
+  public List<Suggestion> serviceSearchWithCoordinates(Cursor cursor) {
+    int i = cursor.next(this);
+    return service.search(null, prefixes[i], latitudes[i], longitudes[i], null, false, false);
+  }
+}
@@ -0,0 +1,121 @@
+package com.example.citysearch.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Random;
+
+// Deterministic GeoNames-shaped TSV of any size. Names are built from
+// syllables so prefixes fan out like real ones, with a share of multi-word
+// and accented names and repeated names in different places; cities cluster
+// around a few thousand centres and populations follow a power law.
+public final class SyntheticCities {
+  private static final String[] SYLLABLES = { "ab", "al", "an", "ar", "ba", "bel", "ber", "bo", "bur", "ca", "car",
+      "ce", "cha", "co", "da", "del", "do", "el", "en", "fa", "fer", "ga", "gle", "ha", "har", "hil", "in", "ja",
+      "ka", "ken", "la", "lan", "le", "li", "lo", "ma", "mar", "me", "mi", "mon", "na", "ne", "no", "or", "pa",
+      "per", "po", "ra", "ri", "ro", "sa", "san", "se", "sha", "so", "ta", "ter", "to", "tra", "va", "ver", "vi",
+      "wa", "wes", "ya", "za" };
+  private static final String[] PREFIXES = { "New ", "Port ", "Saint ", "Fort ", "Lake ", "Mount ", "North " };
+  private static final String[] SUFFIXES = { " City", " Springs", " Falls", " Heights", " Harbour", " Valley" };
+  private static final String[] ACCENTED = { "é", "è", "ü", "ö", "ñ", "ç", "å" };
+  private static final String[] COUNTRIES = { "CA", "US", "MX", "GB", "FR", "DE", "ES", "BR", "AU", "IN" };
+  private static final int CENTRES = 4096;
+
+  private SyntheticCities() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Path path = args.length > 1 ? Path.of(args[1]) : Path.of("target", "benchmark-data", "synthetic-" + rows + ".tsv");
+    write(path, rows, 42);
+    System.out.println("Wrote " + rows + " rows to " + path);
+  }
+
+  // Generated files are kept under target/ and reused by later runs
+  public static Path cached(int rows) throws IOException {
+    Path path = Path.of("target", "benchmark-data", "synthetic-" + rows + ".tsv");
+    if (!Files.exists(path)) {
+      write(path, rows, 42);
+    }
+    return path;
+  }
+
+  public static void write(Path path, int rows, long seed) throws IOException {
+    Random random = new Random(seed);
+    double[] centreLatitudes = new double[CENTRES];
+    double[] centreLongitudes = new double[CENTRES];
+    for (int i = 0; i < CENTRES; i++) {
+      centreLatitudes[i] = random.nextDouble() * 130 - 60;
+      centreLongitudes[i] = random.nextDouble() * 360 - 180;
+    }
+
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+    try {
+      try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        out.write("id\tname\tascii\talt_name\tlat\tlong\tcountry\tadmin1\tpopulation\n");
+        StringBuilder line = new StringBuilder(128);
+        String previous = "Springfield";
+        for (int row = 0; row < rows; row++) {
+          // About one name in twenty repeats an earlier one, like the many Springfields
+          String name = random.nextInt(20) == 0 ? previous : name(random);
+          previous = random.nextInt(8) == 0 ? name : previous;
+          String ascii = ascii(name);
+          int centre = random.nextInt(CENTRES);
+          double latitude = clamp(centreLatitudes[centre] + random.nextGaussian() * 2, 90);
+          double longitude = clamp(centreLongitudes[centre] + random.nextGaussian() * 3, 180);
+          // Pareto-distributed, so a few cities dominate every prefix like real data
+          long population = (long) (500 / Math.pow(1 - random.nextDouble(), 1.2));
+
+          line.setLength(0);
+          line.append(row + 1).append('\t').append(name).append('\t').append(ascii.equals(name) ? "" : ascii)
+              .append('\t');
+          if (random.nextInt(4) == 0) {
+            line.append(name(random)).append(',').append(name(random));
+          }
+          line.append('\t').append(String.format(Locale.ROOT, "%.5f\t%.5f", latitude, longitude)).append('\t')
+              .append(COUNTRIES[centre % COUNTRIES.length]).append('\t')
+              .append(String.format(Locale.ROOT, "%02d", centre % 60)).append('\t').append(population).append('\n');
+          out.append(line);
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static String name(Random random) {
+    StringBuilder name = new StringBuilder();
+    int shape = random.nextInt(10);
+    if (shape == 0) {
+      name.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+    }
+    int start = name.length();
+    int syllables = 2 + random.nextInt(3);
+    for (int i = 0; i < syllables; i++) {
+      name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+    }
+    if (random.nextInt(15) == 0) {
+      name.insert(start + 1 + random.nextInt(name.length() - start - 1), ACCENTED[random.nextInt(ACCENTED.length)]);
+    }
+    name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+    if (shape == 1) {
+      name.append(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+    }
+    return name.toString();
+  }
+
+  private static String ascii(String name) {
+    return Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+  }
+
+  private static double clamp(double value, double range) {
+    return Math.max(-range, Math.min(range, value));
+  }
+}
@@ -0,0 +1,339 @@
+package com.example.citysearch.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.citysearch.CitysearchApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Drives the suggestions API the way autocomplete clients do while the same
+// dataset is re-uploaded, and reports latency percentiles and throughput as
+// JSON. By default it starts the application in this JVM on a random port;
+// url= points it at a running one instead. Each search thread waits for its
+// answer before sending the next keystroke, so the percentiles are those of a
+// closed loop of that many users. Latency and throughput only count
+// successful responses, so shedding load cannot make a build look faster.
+// Given baseline=, a previous report, it fails with exit code 1 when p50 or
+// p99 latency rose or throughput fell by more than maxRegression, or when
+// more than maxErrorRate of the requests failed or were rejected.
+public final class LoadTest {
+  private static final String TSV = "cities_canada-usa.tsv";
+  private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+  private final Map<String, String> options;
+  private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+      .connectTimeout(Duration.ofSeconds(5)).build();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private volatile boolean measuring;
+  private volatile boolean running = true;
+
+  private LoadTest(Map<String, String> options) {
+    this.options = options;
+  }
+
+  // Options are key=value pairs; see README for the list
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals <= 0) {
+        throw new IllegalArgumentException("Options are key=value, got " + arg);
+      }
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    System.exit(new LoadTest(options).run());
+  }
+
+  private String option(String key, String fallback) {
+    return options.getOrDefault(key, fallback);
+  }
+
+  private int run() throws Exception {
+    ConfigurableApplicationContext application = null;
+    String url = options.get("url");
+    if (url == null) {
+      System.setProperty("spring.devtools.restart.enabled", "false");
+      application = new SpringApplicationBuilder(CitysearchApplication.class)
+          .run("--server.port=0", "--logging.level.root=WARN");
+      url = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+    }
+    try {
+      Map<String, Object> report = measure(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+      Path path = Path.of(option("report", "target/loadtest/report.json"));
+      Files.createDirectories(path.toAbsolutePath().getParent());
+      objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), report);
+      System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+      System.out.println("Report written to " + path);
+      String baseline = options.get("baseline");
+      return baseline == null ? 0 : compare(report, Path.of(baseline));
+    } finally {
+      if (application != null) {
+        application.close();
+      }
+    }
+  }
+
+  private Map<String, Object> measure(String url) throws Exception {
+    int threads = Integer.parseInt(option("threads", "8"));
+    long warmupMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(option("warmup", "5")));
+    long durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(option("duration", "30")));
+    long uploadIntervalMillis = Long.parseLong(option("uploadInterval", "2000"));
+    double locatedShare = Double.parseDouble(option("located", "0.5"));
+    boolean sessions = Boolean.parseBoolean(option("sessions", "true"));
+    long seed = Long.parseLong(option("seed", "42"));
+
+    byte[] tsv;
+    try (InputStream in = LoadTest.class.getClassLoader().getResourceAsStream(TSV)) {
+      if (in == null) {
+        throw new IOException(TSV + " is not on the classpath");
+      }
+      tsv = in.readAllBytes();
+    }
+    PrefixWorkload workload = PrefixWorkload.read(new ByteArrayInputStream(tsv), locatedShare);
+
+    List<Worker> searchers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      Random random = new Random(seed + i);
+      searchers.add(new Worker("search-" + i, () -> {
+        String session = sessions ? UUID.randomUUID().toString() : null;
+        List<HttpRequest> requests = new ArrayList<>();
+        for (PrefixWorkload.Query query : workload.nextInput(random, session)) {
+          requests.add(searchRequest(url, query));
+        }
+        return requests;
+      }));
+    }
+    Worker uploader = uploadIntervalMillis <= 0 ? null
+        : new Worker("upload", () -> List.of(uploadRequest(url, tsv)), uploadIntervalMillis);
+
+    Instant started = Instant.now();
+    searchers.forEach(Thread::start);
+    if (uploader != null) {
+      uploader.start();
+    }
+    Thread.sleep(warmupMillis);
+    measuring = true;
+    long measureStarted = System.nanoTime();
+    Thread.sleep(durationMillis);
+    measuring = false;
+    double seconds = (System.nanoTime() - measureStarted) / 1e9;
+    running = false;
+    for (Worker searcher : searchers) {
+      searcher.join();
+    }
+    if (uploader != null) {
+      uploader.join();
+    }
+
+    Worker searches = searchers.get(0);
+    for (Worker searcher : searchers.subList(1, searchers.size())) {
+      searches.merge(searcher);
+    }
+    Path histograms = Path.of(option("report", "target/loadtest/report.json")).toAbsolutePath().getParent();
+    Files.createDirectories(histograms);
+    searches.writeDistribution(histograms.resolve("searches.hgrm"));
+
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("startedAt", started.toString());
+    report.put("url", url);
+    report.put("threads", threads);
+    report.put("durationSeconds", seconds);
+    report.put("locatedShare", locatedShare);
+    report.put("sessions", sessions);
+    report.put("uploadIntervalMillis", uploadIntervalMillis);
+    report.put("searches", searches.summary(seconds));
+    if (uploader != null) {
+      uploader.writeDistribution(histograms.resolve("uploads.hgrm"));
+      report.put("uploads", uploader.summary(seconds));
+    }
+    return report;
+  }
+
+  private static HttpRequest searchRequest(String url, PrefixWorkload.Query query) {
+    StringBuilder uri = new StringBuilder(url).append("/api/v1/suggestions?q=")
+        .append(URLEncoder.encode(query.q(), StandardCharsets.UTF_8));
+    if (query.latitude() != null) {
+      uri.append("&latitude=").append(query.latitude()).append("&longitude=").append(query.longitude());
+    }
+    if (query.session() != null) {
+      uri.append("&session=").append(query.session());
+    }
+    return HttpRequest.newBuilder(URI.create(uri.toString())).GET().build();
+  }
+
+  // Re-uploads the bundled file into the default dataset. The upload is
+  // answered once accepted, so its latency excludes the rebuild that then
+  // competes with the searches
+  private static HttpRequest uploadRequest(String url, byte[] tsv) {
+    String boundary = "loadtest-" + UUID.randomUUID();
+    ByteArrayOutputStream body = new ByteArrayOutputStream(tsv.length + 256);
+    body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + TSV
+        + "\"\r\nContent-Type: text/tab-separated-values\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+    body.writeBytes(tsv);
+    body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+    return HttpRequest.newBuilder(URI.create(url + "/api/v1/suggestions"))
+        .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())).build();
+  }
+
+  // Fails when p50 or p99 search latency grew, or search throughput shrank,
+  // by more than maxRegression relative to the baseline report, or when the
+  // share of failed or rejected searches or uploads exceeds maxErrorRate
+  private int compare(Map<String, Object> report, Path baseline) throws IOException {
+    double maxRegression = Double.parseDouble(option("maxRegression", "0.10"));
+    double maxErrorRate = Double.parseDouble(option("maxErrorRate", "0.01"));
+    JsonNode measured = objectMapper.valueToTree(report);
+    JsonNode current = measured.path("searches");
+    JsonNode previous = objectMapper.readTree(baseline.toFile()).path("searches");
+    List<String> regressions = new ArrayList<>();
+    for (String kind : List.of("searches", "uploads")) {
+      for (String rate : List.of("errorRate", "rejectedRate")) {
+        double share = measured.path(kind).path(rate).asDouble();
+        if (share > maxErrorRate) {
+          regressions.add(kind + " " + rate + " " + share + " above " + maxErrorRate);
+        }
+      }
+    }
+    for (String percentile : List.of("p50", "p99")) {
+      double now = current.path("latencyMicros").path(percentile).asDouble();
+      double before = previous.path("latencyMicros").path(percentile).asDouble();
+      if (before > 0 && now > before * (1 + maxRegression)) {
+        regressions.add(percentile + " latency " + before + " -> " + now + " us");
+      }
+    }
+    double now = current.path("throughputPerSecond").asDouble();
+    double before = previous.path("throughputPerSecond").asDouble();
+    if (now < before * (1 - maxRegression)) {
+      regressions.add("throughput " + before + " -> " + now + " requests/s");
+    }
+    if (regressions.isEmpty()) {
+      System.out.println("No regression beyond " + maxRegression * 100 + "% against " + baseline);
+      return 0;
+    }
+    regressions.forEach(regression -> System.out.println("Regression: " + regression));
+    return 1;
+  }
+
+  private interface Requests {
+    List<HttpRequest> next() throws IOException;
+  }
+
+  // Sends request after request, or one batch per interval, and counts the
+  // outcome of those completed while measuring; only successful ones are
+  // timed, as a fast 429 or 500 says nothing about serving latency
+  private final class Worker extends Thread {
+    private final Requests requests;
+    private final long intervalMillis;
+    private final Histogram latencies = new Histogram(MAX_LATENCY_MICROS, 3);
+    private long ok;
+    private long rejected;
+    private long errors;
+
+    Worker(String name, Requests requests) {
+      this(name, requests, 0);
+    }
+
+    Worker(String name, Requests requests, long intervalMillis) {
+      super(name);
+      this.requests = requests;
+      this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          for (HttpRequest request : requests.next()) {
+            long started = System.nanoTime();
+            int status;
+            try {
+              status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+              status = -1;
+            }
+            if (measuring) {
+              if (status >= 200 && status < 300) {
+                latencies.recordValue(Math.min(MAX_LATENCY_MICROS, (System.nanoTime() - started) / 1000));
+                ok++;
+              } else if (status == 429) {
+                rejected++;
+              } else {
+                errors++;
+              }
+            }
+          }
+          if (intervalMillis > 0) {
+            Thread.sleep(intervalMillis);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    void merge(Worker other) {
+      latencies.add(other.latencies);
+      ok += other.ok;
+      rejected += other.rejected;
+      errors += other.errors;
+    }
+
+    void writeDistribution(Path path) throws IOException {
+      try (PrintStream out = new PrintStream(Files.newOutputStream(path), false, StandardCharsets.UTF_8)) {
+        // In milliseconds
+        latencies.outputPercentileDistribution(out, 1000.0);
+      }
+    }
+
+    Map<String, Object> summary(double seconds) {
+      Map<String, Object> latency = new LinkedHashMap<>();
+      latency.put("p50", latencies.getValueAtPercentile(50));
+      latency.put("p90", latencies.getValueAtPercentile(90));
+      latency.put("p99", latencies.getValueAtPercentile(99));
+      latency.put("p999", latencies.getValueAtPercentile(99.9));
+      latency.put("max", latencies.getMaxValue());
+      latency.put("mean", latencies.getMean());
+      long requests = ok + rejected + errors;
+      Map<String, Object> summary = new LinkedHashMap<>();
+      summary.put("requests", requests);
+      summary.put("ok", ok);
+      summary.put("rejected", rejected);
+      summary.put("errors", errors);
+      summary.put("errorRate", requests == 0 ? 0.0 : (double) errors / requests);
+      summary.put("rejectedRate", requests == 0 ? 0.0 : (double) rejected / requests);
+      // Successful responses only
+      summary.put("throughputPerSecond", ok / seconds);
+      summary.put("latencyMicros", latency);
+      return summary;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.example.citysearch.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Keystroke-by-keystroke queries derived from a GeoNames TSV. A typist picks
+// a city with a chance growing with the square root of its population, types
+// the first few characters of its name one by one, now and then hits a wrong
+// key and backspaces, and sends coordinates near the city for a share of the
+// inputs. Every input box gets its own session id, as a browser client would.
+final class PrefixWorkload {
+  private final String[] names;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  // Running sum of the pick weights, for a binary search by a uniform draw
+  private final double[] cumulativeWeights;
+  private final double locatedShare;
+
+  private PrefixWorkload(List<String> names, List<double[]> rows, double locatedShare) {
+    this.names = names.toArray(new String[0]);
+    this.latitudes = rows.stream().mapToDouble(row -> row[0]).toArray();
+    this.longitudes = rows.stream().mapToDouble(row -> row[1]).toArray();
+    this.cumulativeWeights = new double[rows.size()];
+    double total = 0;
+    for (int i = 0; i < rows.size(); i++) {
+      total += 1 + Math.sqrt(rows.get(i)[2]);
+      cumulativeWeights[i] = total;
+    }
+    this.locatedShare = locatedShare;
+  }
+
+  static PrefixWorkload read(InputStream tsv, double locatedShare) throws IOException {
+    List<String> names = new ArrayList<>();
+    List<double[]> rows = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(tsv, StandardCharsets.UTF_8))) {
+      List<String> header = Arrays.asList(reader.readLine().split("\t", -1));
+      int name = header.indexOf("name");
+      int latitude = header.indexOf("lat");
+      int longitude = header.indexOf("long");
+      int population = header.indexOf("population");
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length < header.size() || fields[name].isBlank()) {
+          continue;
+        }
+        names.add(fields[name]);
+        rows.add(new double[] { Double.parseDouble(fields[latitude]), Double.parseDouble(fields[longitude]),
+            fields[population].isEmpty() ? 0 : Double.parseDouble(fields[population]) });
+      }
+    }
+    if (names.isEmpty()) {
+      throw new IOException("No cities to derive queries from");
+    }
+    return new PrefixWorkload(names, rows, locatedShare);
+  }
+
+  // The requests one input box sends, in order
+  List<Query> nextInput(Random random, String session) {
+    int city = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * cumulativeWeights[names.length - 1]);
+    city = city < 0 ? -city - 1 : city;
+    String name = names[city];
+    Double latitude = null;
+    Double longitude = null;
+    if (random.nextDouble() < locatedShare) {
+      latitude = Math.max(-90, Math.min(90, latitudes[city] + random.nextGaussian() * 0.5));
+      longitude = Math.max(-180, Math.min(180, longitudes[city] + random.nextGaussian() * 0.5));
+    }
+    // Most people stop typing after a handful of characters
+    int typed = 1 + random.nextInt(Math.min(name.length(), 8));
+    List<Query> queries = new ArrayList<>(typed + 2);
+    for (int length = 1; length <= typed; length++) {
+      String prefix = name.substring(0, length);
+      queries.add(new Query(prefix, latitude, longitude, session));
+      if (length < typed && random.nextDouble() < 0.05) {
+        queries.add(new Query(prefix + (char) ('a' + random.nextInt(26)), latitude, longitude, session));
+        queries.add(new Query(prefix, latitude, longitude, session));
+      }
+    }
+    return queries;
+  }
+
+  record Query(String q, Double latitude, Double longitude, String session) {
+  }
+}
@@ -0,0 +1,153 @@
+package com.example.citysearch.admission;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Separate bulkheads for searches and for uploads and city changes, taken
+// before the request body is read. A slow multipart upload holds an upload
+// permit, never a search one, so uploads cannot crowd out queries however
+// many arrive; with request threads unbounded (virtual threads), these limits
+// are what bounds the work.
+// Requests that find their bulkhead full get a 429 with Retry-After.
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+  private static final String SUGGESTIONS = "/api/v1/suggestions";
+
+  private final Bulkhead searches;
+  private final Bulkhead uploads;
+  private final Counter searchesRejected;
+  private final Counter uploadsRejected;
+  private final ObjectMapper objectMapper;
+
+  public AdmissionFilter(CitySearchProperties citySearchProperties, MeterRegistry registry,
+      ObjectMapper objectMapper) {
+    this.searches = new Bulkhead("search", citySearchProperties.getMaxConcurrentSearches(),
+        citySearchProperties.getAdmissionWaitMillis());
+    this.uploads = new Bulkhead("upload", citySearchProperties.getMaxConcurrentUploads(),
+        citySearchProperties.getAdmissionWaitMillis());
+    this.searchesRejected = rejectedCounter(registry, searches);
+    this.uploadsRejected = rejectedCounter(registry, uploads);
+    this.objectMapper = objectMapper;
+  }
+
+  private static Counter rejectedCounter(MeterRegistry registry, Bulkhead bulkhead) {
+    Gauge.builder("citysearch.admission.active", bulkhead, Bulkhead::getActive)
+        .description("Requests holding a permit").tag("bulkhead", bulkhead.getName()).register(registry);
+    return Counter.builder("citysearch.admission.rejected")
+        .description("Requests turned away with 429").tag("bulkhead", bulkhead.getName()).register(registry);
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    Bulkhead bulkhead = bulkheadFor(request);
+    if (bulkhead == null) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    boolean admitted;
+    try {
+      admitted = bulkhead.tryAcquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      admitted = false;
+    }
+    if (!admitted) {
+      (bulkhead == searches ? searchesRejected : uploadsRejected).increment();
+      reject(request, response, bulkhead);
+      return;
+    }
+
+    // A streamed batch keeps working after this thread returns, so its permit
+    // is handed back when the async response ends instead
+    AtomicBoolean released = new AtomicBoolean();
+    Runnable release = () -> {
+      if (released.compareAndSet(false, true)) {
+        bulkhead.release();
+      }
+    };
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      if (request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new ReleasingListener(release));
+      } else {
+        release.run();
+      }
+    }
+  }
+
+  private Bulkhead bulkheadFor(HttpServletRequest request) {
+    String path = request.getRequestURI().substring(request.getContextPath().length());
+    String method = request.getMethod();
+    if (path.equals(SUGGESTIONS)) {
+      return "GET".equals(method) ? searches : "POST".equals(method) ? uploads : null;
+    }
+    if (path.equals(SUGGESTIONS + "/shard")) {
+      return "GET".equals(method) ? searches : null;
+    }
+    // City changes write to a dataset like uploads do and can wait on one
+    if (path.startsWith(SUGGESTIONS + "/cities/")) {
+      return "GET".equals(method) ? null : uploads;
+    }
+    return path.equals(SUGGESTIONS + "/batch") && "POST".equals(method) ? searches : null;
+  }
+
+  private void reject(HttpServletRequest request, HttpServletResponse response, Bulkhead bulkhead)
+      throws IOException {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+    body.put("error", "Too Many Requests");
+    body.put("message", "All " + bulkhead.getLimit() + " " + bulkhead.getName() + " slots are busy; try again later");
+    body.put("path", request.getRequestURI());
+    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    objectMapper.writeValue(response.getOutputStream(), body);
+  }
+
+  private record ReleasingListener(Runnable release) implements AsyncListener {
+    @Override
+    public void onComplete(AsyncEvent event) {
+      release.run();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      release.run();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      release.run();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // Re-registered by the container for a nested startAsync; the permit stays held
+      event.getAsyncContext().addListener(this);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.example.citysearch.admission;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// A fixed number of permits for one kind of work. A caller waits at most
+// maxWaitMillis for a permit and is turned away after that, so a burst is
+// shed instead of piling up behind the ones already running.
+public class Bulkhead {
+  private final String name;
+  private final int limit;
+  private final long maxWaitMillis;
+  private final Semaphore permits;
+
+  public Bulkhead(String name, int limit, long maxWaitMillis) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Bulkhead " + name + " needs a positive limit");
+    }
+    this.name = name;
+    this.limit = limit;
+    this.maxWaitMillis = maxWaitMillis;
+    this.permits = new Semaphore(limit);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public int getActive() {
+    return limit - permits.availablePermits();
+  }
+
+  public boolean tryAcquire() throws InterruptedException {
+    return maxWaitMillis <= 0 ? permits.tryAcquire() : permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public void release() {
+    permits.release();
+  }
+}
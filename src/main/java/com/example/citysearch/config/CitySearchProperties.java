@@ -1,7 +1,15 @@
 package com.example.citysearch.config;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.example.citysearch.loader.RowErrorPolicy;
+import com.example.citysearch.trie.IndexType;
 
 @Component
 @ConfigurationProperties(prefix = "citysearch")
@@ -9,6 +17,30 @@ public class CitySearchProperties {
   private double textScoreWeight;
   private double locationScoreWeight;
   private int limitData;
+  private IndexType indexType = IndexType.TRIE;
+  private String snapshotPath;
+  private int ingestionThreads;
+  private RowErrorPolicy rowErrorPolicy = RowErrorPolicy.COLLECT;
+  private String defaultDataset = "canada-usa";
+  private Map<String, DataSize> datasetMemoryBudgets = new HashMap<>();
+  private int fuzzyMaxEdits = 2;
+  private boolean indexAlternateNames = true;
+  private long resultCacheSize = 10_000;
+  private double resultCacheCellDegrees = 0.01;
+  private int batchMaxQueries = 10_000;
+  private int batchThreads;
+  private int maxConcurrentSearches = 200;
+  private int maxConcurrentUploads = 2;
+  private long admissionWaitMillis = 50;
+  private int maxQueuedUploads = 16;
+  private int maxPatchedCities = 10_000;
+  private int shardCount = 1;
+  private Map<String, List<String>> remoteShards = new HashMap<>();
+  private long shardTimeoutMillis = 2000;
+  private DataSize sessionMemory = DataSize.ofMegabytes(16);
+  private long sessionIdleSeconds = 60;
+  private int sessionMaxKeys = 512;
+  private long changeLockWaitMillis = 1000;
 
   public int getLimitData() {
     return limitData;
@@ -34,4 +66,196 @@ public class CitySearchProperties {
     this.locationScoreWeight = locationScoreWeight;
   }
 
+  public IndexType getIndexType() {
+    return indexType;
+  }
+
+  public void setIndexType(IndexType indexType) {
+    this.indexType = indexType;
+  }
+
+  public String getSnapshotPath() {
+    return snapshotPath;
+  }
+
+  public void setSnapshotPath(String snapshotPath) {
+    this.snapshotPath = snapshotPath;
+  }
+
+  public int getIngestionThreads() {
+    return ingestionThreads;
+  }
+
+  public void setIngestionThreads(int ingestionThreads) {
+    this.ingestionThreads = ingestionThreads;
+  }
+
+  public RowErrorPolicy getRowErrorPolicy() {
+    return rowErrorPolicy;
+  }
+
+  public void setRowErrorPolicy(RowErrorPolicy rowErrorPolicy) {
+    this.rowErrorPolicy = rowErrorPolicy;
+  }
+
+  public String getDefaultDataset() {
+    return defaultDataset;
+  }
+
+  public void setDefaultDataset(String defaultDataset) {
+    this.defaultDataset = defaultDataset;
+  }
+
+  public Map<String, DataSize> getDatasetMemoryBudgets() {
+    return datasetMemoryBudgets;
+  }
+
+  public void setDatasetMemoryBudgets(Map<String, DataSize> datasetMemoryBudgets) {
+    this.datasetMemoryBudgets = datasetMemoryBudgets;
+  }
+
+  public int getFuzzyMaxEdits() {
+    return fuzzyMaxEdits;
+  }
+
+  public void setFuzzyMaxEdits(int fuzzyMaxEdits) {
+    this.fuzzyMaxEdits = fuzzyMaxEdits;
+  }
+
+  public boolean isIndexAlternateNames() {
+    return indexAlternateNames;
+  }
+
+  public void setIndexAlternateNames(boolean indexAlternateNames) {
+    this.indexAlternateNames = indexAlternateNames;
+  }
+
+  public long getResultCacheSize() {
+    return resultCacheSize;
+  }
+
+  public void setResultCacheSize(long resultCacheSize) {
+    this.resultCacheSize = resultCacheSize;
+  }
+
+  public double getResultCacheCellDegrees() {
+    return resultCacheCellDegrees;
+  }
+
+  public void setResultCacheCellDegrees(double resultCacheCellDegrees) {
+    this.resultCacheCellDegrees = resultCacheCellDegrees;
+  }
+
+  public int getBatchMaxQueries() {
+    return batchMaxQueries;
+  }
+
+  public void setBatchMaxQueries(int batchMaxQueries) {
+    this.batchMaxQueries = batchMaxQueries;
+  }
+
+  public int getBatchThreads() {
+    return batchThreads;
+  }
+
+  public void setBatchThreads(int batchThreads) {
+    this.batchThreads = batchThreads;
+  }
+
+  public int getMaxConcurrentSearches() {
+    return maxConcurrentSearches;
+  }
+
+  public void setMaxConcurrentSearches(int maxConcurrentSearches) {
+    this.maxConcurrentSearches = maxConcurrentSearches;
+  }
+
+  public int getMaxConcurrentUploads() {
+    return maxConcurrentUploads;
+  }
+
+  public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+    this.maxConcurrentUploads = maxConcurrentUploads;
+  }
+
+  public long getAdmissionWaitMillis() {
+    return admissionWaitMillis;
+  }
+
+  public void setAdmissionWaitMillis(long admissionWaitMillis) {
+    this.admissionWaitMillis = admissionWaitMillis;
+  }
+
+  public int getMaxQueuedUploads() {
+    return maxQueuedUploads;
+  }
+
+  public void setMaxQueuedUploads(int maxQueuedUploads) {
+    this.maxQueuedUploads = maxQueuedUploads;
+  }
+
+  public int getMaxPatchedCities() {
+    return maxPatchedCities;
+  }
+
+  public void setMaxPatchedCities(int maxPatchedCities) {
+    this.maxPatchedCities = maxPatchedCities;
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  public void setShardCount(int shardCount) {
+    this.shardCount = shardCount;
+  }
+
+  public Map<String, List<String>> getRemoteShards() {
+    return remoteShards;
+  }
+
+  public void setRemoteShards(Map<String, List<String>> remoteShards) {
+    this.remoteShards = remoteShards;
+  }
+
+  public long getShardTimeoutMillis() {
+    return shardTimeoutMillis;
+  }
+
+  public void setShardTimeoutMillis(long shardTimeoutMillis) {
+    this.shardTimeoutMillis = shardTimeoutMillis;
+  }
+
+  public DataSize getSessionMemory() {
+    return sessionMemory;
+  }
+
+  public void setSessionMemory(DataSize sessionMemory) {
+    this.sessionMemory = sessionMemory;
+  }
+
+  public long getSessionIdleSeconds() {
+    return sessionIdleSeconds;
+  }
+
+  public void setSessionIdleSeconds(long sessionIdleSeconds) {
+    this.sessionIdleSeconds = sessionIdleSeconds;
+  }
+
+  public int getSessionMaxKeys() {
+    return sessionMaxKeys;
+  }
+
+  public void setSessionMaxKeys(int sessionMaxKeys) {
+    this.sessionMaxKeys = sessionMaxKeys;
+  }
+
+  public long getChangeLockWaitMillis() {
+    return changeLockWaitMillis;
+  }
+
+  public void setChangeLockWaitMillis(long changeLockWaitMillis) {
+    this.changeLockWaitMillis = changeLockWaitMillis;
+  }
+
 }
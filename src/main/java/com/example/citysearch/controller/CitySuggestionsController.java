@@ -1,21 +1,43 @@
 package com.example.citysearch.controller;
 
+import com.example.citysearch.exception.TooManyRequestsException;
+import com.example.citysearch.loader.ChangeReport;
+import com.example.citysearch.loader.Dataset;
+import com.example.citysearch.loader.IngestionJob;
+import com.example.citysearch.model.BatchQuery;
+import com.example.citysearch.model.BatchResult;
+import com.example.citysearch.model.CityChanges;
+import com.example.citysearch.model.CityUpsert;
+import com.example.citysearch.model.ShardHit;
 import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.model.SuggestionsResponse;
+import com.example.citysearch.service.BatchSearcher;
 import com.example.citysearch.service.CitySearchService;
+import com.example.citysearch.service.SearchResultCache;
+import com.example.citysearch.trie.CityIndex;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,15 +46,21 @@ import java.util.Map;
 @RequestMapping("/api/v1/suggestions")
 public class CitySuggestionsController {
   private final CitySearchService citySearchService;
+  private final BatchSearcher batchSearcher;
+  private final ObjectWriter batchLineWriter;
 
-  public CitySuggestionsController(CitySearchService citySearchService) {
+  public CitySuggestionsController(CitySearchService citySearchService, BatchSearcher batchSearcher,
+      ObjectMapper objectMapper) {
     this.citySearchService = citySearchService;
+    this.batchSearcher = batchSearcher;
+    this.batchLineWriter = objectMapper.writerFor(BatchResult.class);
   }
 
   @GetMapping
   @Operation(summary = "Get city suggestions", description = "Returns city suggestions based on search query and optional coordinates")
   @ApiResponses(value = {
-      @ApiResponse(responseCode = "200", description = "Successfully retrieved suggestions", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Suggestion.class))),
+      @ApiResponse(responseCode = "200", description = "Successfully retrieved suggestions", content = @Content(mediaType = "application/json", schema = @Schema(implementation = SuggestionsResponse.class))),
+      @ApiResponse(responseCode = "404", description = "Unknown dataset", content = @Content(mediaType = "application/json")),
       @ApiResponse(responseCode = "400", description = "Invalid input parameters", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{\n"
           +
           "  \"path\": \"/api/v1/suggestions\",\n" +
@@ -42,29 +70,74 @@ public class CitySuggestionsController {
           "}")))
 
   })
-  public Map<String, Object> getSuggestions(
+  public SuggestionsResponse getSuggestions(
       @RequestParam(required = false) String q,
       @RequestParam(required = false) Double latitude,
-      @RequestParam(required = false) Double longitude) {
-    if ((latitude == null && longitude != null) || (latitude != null && longitude == null)) {
-      throw new IllegalArgumentException("Both latitude and longitude must be provided together");
-    }
-    if (latitude != null && (latitude < -90 || latitude > 90)) {
-      throw new IllegalArgumentException("Latitude must be between -90 and 90 degrees");
-    }
-    if (longitude != null && (longitude < -180 || longitude > 180)) {
-      throw new IllegalArgumentException("Longitude must be between -180 and 180 degrees");
-    }
+      @RequestParam(required = false) Double longitude,
+      @Parameter(description = "Only return cities within this many kilometres of the coordinates") @RequestParam(required = false) Double radiusKm,
+      @Parameter(description = "Dataset to search; defaults to the configured default dataset") @RequestParam(required = false) String dataset,
+      @Parameter(description = "Also suggest cities within a small edit distance of the query when exact prefix matches run out") @RequestParam(defaultValue = "false") boolean fuzzy,
+      @Parameter(description = "Also match the start of later words in a name, e.g. \"york\" for New York, ranked below names starting with the query") @RequestParam(defaultValue = "false") boolean infix,
+      @Parameter(description = "Random id, 1-64 letters, digits, '-' or '_', shared by the keystrokes of one input box; later keystrokes narrow the previous ones' matches instead of searching again") @RequestParam(required = false) String session) {
+    CitySearchService.validateLocation(latitude, longitude, radiusKm);
 
-    List<Suggestion> suggestions = citySearchService.search(q, latitude, longitude);
-    Map<String, Object> response = new HashMap<>();
-    response.put("suggestions", suggestions);
-    return response;
+    List<Suggestion> suggestions = citySearchService.search(dataset, q, latitude, longitude, radiusKm, fuzzy, infix,
+        session);
+    return new SuggestionsResponse(suggestions);
+  }
+
+  @Operation(summary = "Get suggestions from this node's cities only", description = "Used by a node that holds other shards of the dataset and merges the answers; never asks this node's own remote shards. Suggestions carry population so equal scores merge the same way as on one node")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "This node's best suggestions", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = ShardHit.class)))),
+      @ApiResponse(responseCode = "400", description = "Invalid coordinates", content = @Content(mediaType = "application/json")),
+      @ApiResponse(responseCode = "404", description = "Unknown dataset", content = @Content(mediaType = "application/json"))
+  })
+  @GetMapping("/shard")
+  public List<ShardHit> getShardSuggestions(
+      @RequestParam(required = false) String q,
+      @RequestParam(required = false) Double latitude,
+      @RequestParam(required = false) Double longitude,
+      @RequestParam(required = false) Double radiusKm,
+      @RequestParam(required = false) String dataset,
+      @RequestParam(defaultValue = "false") boolean fuzzy,
+      @RequestParam(defaultValue = "false") boolean infix) {
+    return citySearchService.searchShard(dataset, q, latitude, longitude, radiusKm, fuzzy, infix);
+  }
+
+  @Operation(summary = "Get suggestions for many queries", description = "Answers up to citysearch.batchMaxQueries queries against one version of the dataset and streams one NDJSON line per query as results are ready. Lines arrive in completion order; index is the position of the query in the request")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "One line per query, with suggestions or an error", content = @Content(mediaType = "application/x-ndjson", examples = @ExampleObject(value = "{\"index\":1,\"q\":\"Lond\",\"suggestions\":[{\"name\":\"London\",\"country\":\"CA\",\"admin1\":\"08\",\"latitude\":42.98339,\"longitude\":-81.23304,\"score\":0.6}]}\n"
+          + "{\"index\":0,\"q\":\"Tor\",\"error\":\"Latitude must be between -90 and 90 degrees\"}"))),
+      @ApiResponse(responseCode = "400", description = "Empty or oversized batch", content = @Content(mediaType = "application/json")),
+      @ApiResponse(responseCode = "404", description = "Unknown dataset", content = @Content(mediaType = "application/json"))
+  })
+  @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> getBatchSuggestions(
+      @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "Queries to answer", content = @Content(array = @ArraySchema(schema = @Schema(implementation = BatchQuery.class)))) @RequestBody List<BatchQuery> queries,
+      @Parameter(description = "Dataset to search; defaults to the configured default dataset") @RequestParam(required = false) String dataset,
+      @Parameter(description = "Also suggest cities within a small edit distance of each query") @RequestParam(defaultValue = "false") boolean fuzzy,
+      @Parameter(description = "Also match the start of later words in a name") @RequestParam(defaultValue = "false") boolean infix) {
+    BatchSearcher.Batch batch = batchSearcher.prepare(dataset, queries, fuzzy, infix);
+    StreamingResponseBody body = out -> {
+      try {
+        batch.run(results -> {
+          for (BatchResult result : results) {
+            out.write(batchLineWriter.writeValueAsBytes(result));
+            out.write('\n');
+          }
+          out.flush();
+        });
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Batch interrupted", e);
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
   }
 
-  @Operation(summary = "Upload city data", description = "Upload TSV file containing city data")
+  @Operation(summary = "Upload city data", description = "Upload TSV file containing city data. The file is ingested in the background; poll the returned job for progress")
   @ApiResponses(value = {
-      @ApiResponse(responseCode = "200", description = "File successfully processed", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"message\": \"File uploaded and data loaded into Trie successfully\" }"))),
+      @ApiResponse(responseCode = "202", description = "File accepted for ingestion", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"message\": \"File accepted for ingestion\", \"jobId\": \"3f1c9b2e-8d4a-4f0e-9a51-0c6a7b2d9e11\", \"state\": \"QUEUED\", \"statusUrl\": \"/api/v1/suggestions/jobs/3f1c9b2e-8d4a-4f0e-9a51-0c6a7b2d9e11\" }"))),
       @ApiResponse(responseCode = "400", description = "Invalid file or format", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{\n"
           +
           "  \"path\": \"/api/v1/suggestions\",\n" +
@@ -72,6 +145,7 @@ public class CitySuggestionsController {
           "  \"message\": \"Invalid file type. Please upload a .tsv file.\",\n" +
           "  \"status\": 400\n" +
           "}"))),
+      @ApiResponse(responseCode = "429", description = "Too many uploads in progress or waiting", content = @Content(mediaType = "application/json")),
       @ApiResponse(responseCode = "413", description = "File too large", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{\n"
           +
           "  \"instance\": \"/api/v1/suggestions\",\n" +
@@ -88,8 +162,9 @@ public class CitySuggestionsController {
           "}")))
   })
   @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-  public ResponseEntity<Map<String, String>> uploadFile(
-      @Parameter(description = "TSV file to upload", required = true, content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE)) @RequestParam MultipartFile file) {
+  public ResponseEntity<Map<String, Object>> uploadFile(
+      @Parameter(description = "TSV file to upload", required = true, content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE)) @RequestParam MultipartFile file,
+      @Parameter(description = "Dataset to load into; created on first upload") @RequestParam(required = false) String dataset) {
     if (file.isEmpty()) {
       throw new IllegalArgumentException("File is empty");
     }
@@ -100,13 +175,154 @@ public class CitySuggestionsController {
     }
 
     try {
-      citySearchService.loadFromMultipartFile(file);
-      Map<String, String> response = new HashMap<>();
-      response.put("message", "File uploaded and data loaded into Trie successfully");
-      return ResponseEntity.ok(response);
+      IngestionJob job = citySearchService.submitUpload(dataset, file);
+      Map<String, Object> response = new HashMap<>();
+      response.put("message", "File accepted for ingestion");
+      response.put("jobId", job.getId());
+      response.put("dataset", job.getDataset());
+      response.put("state", job.getState());
+      response.put("statusUrl", "/api/v1/suggestions/jobs/" + job.getId());
+      return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    } catch (IllegalArgumentException | TooManyRequestsException e) {
+      throw e;
     } catch (Exception e) {
       throw new RuntimeException("Failed to load city data from file", e);
     }
 
   }
+
+  @Operation(summary = "Apply city changes", description = "Adds, replaces and deletes cities by GeoNames id in one new version of the dataset. The changes are patched over the live index instead of rebuilding it, so a daily diff of a few hundred rows is applied in milliseconds")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Changes applied", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"inserted\": 2, \"updated\": 311, \"deleted\": 14, \"notFound\": [5128581], \"version\": 7 }"))),
+      @ApiResponse(responseCode = "400", description = "Invalid city or GeoNames id; nothing was changed", content = @Content(mediaType = "application/json")),
+      @ApiResponse(responseCode = "404", description = "Unknown dataset", content = @Content(mediaType = "application/json"))
+  })
+  @PostMapping(value = "/cities/changes", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ChangeReport applyChanges(@RequestBody CityChanges changes,
+      @Parameter(description = "Dataset to change; created by the first upsert") @RequestParam(required = false) String dataset) {
+    return citySearchService.applyChanges(dataset, changes);
+  }
+
+  @Operation(summary = "Add or replace a city", description = "Adds the city, or replaces the one with the same GeoNames id, in a new version of the dataset")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "City stored", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"inserted\": 0, \"updated\": 1, \"deleted\": 0, \"notFound\": [], \"version\": 8 }"))),
+      @ApiResponse(responseCode = "400", description = "Invalid city, or a body GeoNames id that differs from the path", content = @Content(mediaType = "application/json"))
+  })
+  @PutMapping(value = "/cities/{geonameId}", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ChangeReport upsertCity(@PathVariable long geonameId, @RequestBody CityUpsert city,
+      @Parameter(description = "Dataset to change; created by the first upsert") @RequestParam(required = false) String dataset) {
+    if (city.getGeonameId() != null && city.getGeonameId() != geonameId) {
+      throw new IllegalArgumentException("The GeoNames id in the body does not match the path");
+    }
+    city.setGeonameId(geonameId);
+    return citySearchService.applyChanges(dataset, new CityChanges(List.of(city), List.of()));
+  }
+
+  @Operation(summary = "Delete a city", description = "Removes the city with this GeoNames id in a new version of the dataset")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "City deleted", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"inserted\": 0, \"updated\": 0, \"deleted\": 1, \"notFound\": [], \"version\": 9 }"))),
+      @ApiResponse(responseCode = "404", description = "Unknown dataset or GeoNames id", content = @Content(mediaType = "application/json"))
+  })
+  @DeleteMapping("/cities/{geonameId}")
+  public ChangeReport deleteCity(@PathVariable long geonameId,
+      @Parameter(description = "Dataset to change") @RequestParam(required = false) String dataset) {
+    return citySearchService.deleteCity(dataset, geonameId);
+  }
+
+  @Operation(summary = "Get upload job status", description = "Reports the progress of a background upload. The new data only becomes searchable once the job has SUCCEEDED")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Job status", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"jobId\": \"3f1c9b2e-8d4a-4f0e-9a51-0c6a7b2d9e11\", \"state\": \"RUNNING\", \"rowsParsed\": 1228800, \"rowsRejected\": 3, \"rowsPerSecond\": 512000.0, \"elapsedMillis\": 2400, \"errors\": [] }"))),
+      @ApiResponse(responseCode = "404", description = "Unknown job id", content = @Content(mediaType = "application/json"))
+  })
+  @GetMapping("/jobs/{jobId}")
+  public Map<String, Object> getUploadJob(@PathVariable String jobId) {
+    IngestionJob job = citySearchService.getUploadJob(jobId);
+    Map<String, Object> response = new HashMap<>();
+    response.put("jobId", job.getId());
+    response.put("dataset", job.getDataset());
+    response.put("state", job.getState());
+    response.put("rowsParsed", job.getRowsParsed());
+    response.put("rowsRejected", job.getRowsRejected());
+    response.put("rowsPerSecond", job.getRowsPerSecond());
+    response.put("elapsedMillis", job.getElapsedMillis());
+    response.put("errors", job.getErrors());
+    if (job.getFailure() != null) {
+      response.put("failure", job.getFailure());
+    }
+    return response;
+  }
+
+  @Operation(summary = "List datasets", description = "Returns every loaded dataset with its size, estimated memory use, budget and activity")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Dataset stats", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"datasets\": [ { \"name\": \"canada-usa\", \"cities\": 7237, \"memoryBytes\": 1843200, \"memoryBudgetBytes\": -1, \"loads\": 1, \"searches\": 42, \"loadedAt\": \"2025-01-01T10:00:00Z\" } ] }")))
+  })
+  @GetMapping("/datasets")
+  public Map<String, Object> getDatasets() {
+    List<Map<String, Object>> datasets = new ArrayList<>();
+    for (Dataset dataset : citySearchService.getDatasets()) {
+      CityIndex index = dataset.getIndex();
+      Map<String, Object> stats = new HashMap<>();
+      stats.put("name", dataset.getName());
+      stats.put("cities", index.getSize());
+      stats.put("memoryBytes", index.getMemoryBytes());
+      stats.put("memoryBudgetBytes", dataset.getMemoryBudgetBytes());
+      stats.put("loads", dataset.getLoads());
+      stats.put("searches", dataset.getSearches());
+      stats.put("loadedAt", dataset.getLoadedAt());
+      datasets.add(stats);
+    }
+    Map<String, Object> response = new HashMap<>();
+    response.put("datasets", datasets);
+    return response;
+  }
+
+  @Operation(summary = "Result cache stats", description = "Returns hit, miss and eviction counts of the suggestion result cache since startup")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Cache stats", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"enabled\": true, \"size\": 812, \"hits\": 9120, \"misses\": 1204, \"hitRate\": 0.883, \"evictions\": 37 }")))
+  })
+  @GetMapping("/cache")
+  public Map<String, Object> getCacheStats() {
+    SearchResultCache cache = citySearchService.getResultCache();
+    CacheStats stats = cache.stats();
+    Map<String, Object> response = new HashMap<>();
+    response.put("enabled", cache.isEnabled());
+    response.put("size", cache.size());
+    response.put("hits", stats.hitCount());
+    response.put("misses", stats.missCount());
+    response.put("hitRate", stats.hitRate());
+    response.put("evictions", stats.evictionCount());
+    return response;
+  }
+
+  @Operation(summary = "Evict dataset", description = "Drops a dataset and frees its index. The default dataset cannot be evicted")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Dataset evicted", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"message\": \"Dataset evicted\" }"))),
+      @ApiResponse(responseCode = "400", description = "Default dataset", content = @Content(mediaType = "application/json")),
+      @ApiResponse(responseCode = "404", description = "Unknown dataset", content = @Content(mediaType = "application/json"))
+  })
+  @DeleteMapping("/datasets/{dataset}")
+  public Map<String, String> evictDataset(@PathVariable String dataset) {
+    citySearchService.evictDataset(dataset);
+    Map<String, String> response = new HashMap<>();
+    response.put("message", "Dataset evicted");
+    return response;
+  }
+
+  @Operation(summary = "Write index snapshot", description = "Serializes the default dataset's index to the configured snapshot file so later starts can map it instead of parsing TSV")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Snapshot written", content = @Content(mediaType = "application/json", examples = @ExampleObject(value = "{ \"message\": \"Snapshot written\", \"bytes\": \"1048576\" }"))),
+      @ApiResponse(responseCode = "400", description = "No snapshot path configured", content = @Content(mediaType = "application/json"))
+  })
+  @PostMapping("/snapshot")
+  public ResponseEntity<Map<String, String>> writeSnapshot() {
+    try {
+      long bytes = citySearchService.writeSnapshot();
+      Map<String, String> response = new HashMap<>();
+      response.put("message", "Snapshot written");
+      response.put("bytes", String.valueOf(bytes));
+      return ResponseEntity.ok(response);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write index snapshot", e);
+    }
+  }
 }
@@ -0,0 +1,89 @@
+package com.example.citysearch.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.model.SuggestionsResponse;
+import com.example.citysearch.store.CityStore;
+import com.example.citysearch.store.SuggestionJson;
+
+// Writes a suggestions response by splicing each city's JSON fields, encoded
+// once when its store was built, with the score into a pooled buffer; only the
+// score is formatted per request. The bytes are the same as Jackson would
+// write. Suggestions from other nodes are encoded on the spot. The pool is
+// shared rather than per thread, since virtual threads each serve a single
+// request and would never reuse a thread-local buffer.
+final class SuggestionsJsonWriter {
+  private static final byte[] OPEN = "{\"suggestions\":[".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CLOSE = "]}".getBytes(StandardCharsets.US_ASCII);
+  private static final int BUFFER_BYTES = 4096;
+  // Larger buffers, grown for an unusual response, are not kept
+  private static final int MAX_KEPT_BYTES = 64 * 1024;
+
+  private final BlockingQueue<ByteBuffer> buffers;
+
+  SuggestionsJsonWriter() {
+    this(4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  // Beyond pooledBuffers concurrent writes, buffers are allocated and dropped
+  SuggestionsJsonWriter(int pooledBuffers) {
+    this.buffers = new ArrayBlockingQueue<>(pooledBuffers);
+  }
+
+  void write(SuggestionsResponse response, OutputStream out) throws IOException {
+    ByteBuffer pooled = buffers.poll();
+    ByteBuffer buffer = pooled != null ? pooled.clear() : ByteBuffer.allocate(BUFFER_BYTES);
+    buffer.put(OPEN);
+    boolean first = true;
+    for (Suggestion suggestion : response.getSuggestions()) {
+      CityStore store = suggestion.getStore();
+      int fields = store != null ? store.getJsonLength(suggestion.getCity()) : 0;
+      byte[] encoded = store != null ? null : SuggestionJson.encode(suggestion.getName(), suggestion.getCountry(),
+          suggestion.getAdmin1(), suggestion.getLatitude(), suggestion.getLongitude());
+      String score = Double.toString(suggestion.getScore());
+      // Comma, fields, score, closing brace and the closing of the response
+      buffer = ensure(buffer, 1 + (store != null ? fields : encoded.length) + score.length() + 1 + CLOSE.length);
+      if (!first) {
+        buffer.put((byte) ',');
+      }
+      first = false;
+      if (store != null) {
+        store.putJson(suggestion.getCity(), buffer);
+      } else {
+        buffer.put(encoded);
+      }
+      for (int i = 0; i < score.length(); i++) {
+        buffer.put((byte) score.charAt(i));
+      }
+      buffer.put((byte) '}');
+    }
+    buffer = ensure(buffer, CLOSE.length);
+    buffer.put(CLOSE);
+    try {
+      out.write(buffer.array(), 0, buffer.position());
+    } finally {
+      if (buffer.capacity() <= MAX_KEPT_BYTES) {
+        buffers.offer(buffer);
+      }
+    }
+  }
+
+  private static ByteBuffer ensure(ByteBuffer buffer, int needed) {
+    if (buffer.remaining() >= needed) {
+      return buffer;
+    }
+    ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + needed));
+    grown.put(buffer.flip());
+    return grown;
+  }
+
+  int pooledBuffers() {
+    return buffers.size();
+  }
+}
@@ -0,0 +1,37 @@
+package com.example.citysearch.controller;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.model.SuggestionsResponse;
+import com.example.citysearch.service.SearchMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Replaces Boot's default JSON converter so suggestion responses are written
+// from pre-encoded fragments and their serialization stage can be timed;
+// everything else is written by Jackson as before.
+@Component
+public class TimedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+  private final SearchMetrics metrics;
+  private final SuggestionsJsonWriter suggestionsWriter = new SuggestionsJsonWriter();
+
+  public TimedJsonHttpMessageConverter(ObjectMapper objectMapper, SearchMetrics metrics) {
+    super(objectMapper);
+    this.metrics = metrics;
+  }
+
+  @Override
+  protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+    if (!(object instanceof SuggestionsResponse response)) {
+      super.writeInternal(object, type, outputMessage);
+      return;
+    }
+    long started = System.nanoTime();
+    suggestionsWriter.write(response, outputMessage.getBody());
+    metrics.recordSerialization(System.nanoTime() - started);
+  }
+}
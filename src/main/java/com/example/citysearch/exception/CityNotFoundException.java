@@ -0,0 +1,7 @@
+package com.example.citysearch.exception;
+
+public class CityNotFoundException extends RuntimeException {
+  public CityNotFoundException(String message) {
+    super(message);
+  }
+}
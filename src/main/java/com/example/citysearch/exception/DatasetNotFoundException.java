@@ -0,0 +1,7 @@
+package com.example.citysearch.exception;
+
+public class DatasetNotFoundException extends RuntimeException {
+  public DatasetNotFoundException(String message) {
+    super(message);
+  }
+}
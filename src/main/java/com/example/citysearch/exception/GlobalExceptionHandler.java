@@ -1,5 +1,6 @@
 package com.example.citysearch.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -36,4 +37,26 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
     return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
   }
-}
\ No newline at end of file
+
+  @ExceptionHandler({ JobNotFoundException.class, DatasetNotFoundException.class, CityNotFoundException.class })
+  public ResponseEntity<Object> handleNotFoundException(RuntimeException ex, WebRequest request) {
+    Map<String, Object> response = new HashMap<>();
+    response.put("status", HttpStatus.NOT_FOUND.value());
+    response.put("error", "Not Found");
+    response.put("message", ex.getMessage());
+    response.put("path", request.getDescription(false).replace("uri=", ""));
+
+    return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+  }
+
+  @ExceptionHandler(TooManyRequestsException.class)
+  public ResponseEntity<Object> handleTooManyRequestsException(TooManyRequestsException ex, WebRequest request) {
+    Map<String, Object> response = new HashMap<>();
+    response.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+    response.put("error", "Too Many Requests");
+    response.put("message", ex.getMessage());
+    response.put("path", request.getDescription(false).replace("uri=", ""));
+
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").body(response);
+  }
+}
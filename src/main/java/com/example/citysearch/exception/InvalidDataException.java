@@ -0,0 +1,11 @@
+package com.example.citysearch.exception;
+
+import java.io.IOException;
+
+// Uploaded data that cannot be ingested as-is: missing columns or, under the
+// FAIL row policy, a malformed row. Reported to clients as a bad request.
+public class InvalidDataException extends IOException {
+  public InvalidDataException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,7 @@
+package com.example.citysearch.exception;
+
+public class JobNotFoundException extends RuntimeException {
+  public JobNotFoundException(String message) {
+    super(message);
+  }
+}
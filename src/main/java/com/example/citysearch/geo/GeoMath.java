@@ -0,0 +1,72 @@
+package com.example.citysearch.geo;
+
+public final class GeoMath {
+  public static final double EARTH_RADIUS_KM = 6371;
+
+  private GeoMath() {
+  }
+
+  public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+    double latDistance = Math.toRadians(lat2 - lat1);
+    double lonDistance = Math.toRadians(lon2 - lon1);
+    double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    return EARTH_RADIUS_KM * c;
+  }
+
+  public static Origin origin(double latitude, double longitude) {
+    return new Origin(latitude, longitude);
+  }
+
+  // A point many cities are measured against, with its own trigonometry done
+  // once; the city side supplies its precomputed cos(latitude).
+  public static final class Origin {
+    private final double latitudeRadians;
+    private final double longitudeRadians;
+    private final double cosLatitude;
+
+    private Origin(double latitude, double longitude) {
+      this.latitudeRadians = Math.toRadians(latitude);
+      this.longitudeRadians = Math.toRadians(longitude);
+      this.cosLatitude = Math.cos(latitudeRadians);
+    }
+
+    // Same haversine as haversineKm, with asin(sqrt(a)) for atan2
+    public double distanceKm(double latitude, double longitude, double cosLatitude) {
+      double sinLat = Math.sin((Math.toRadians(latitude) - latitudeRadians) / 2);
+      double sinLon = Math.sin((Math.toRadians(longitude) - longitudeRadians) / 2);
+      double a = sinLat * sinLat + this.cosLatitude * cosLatitude * sinLon * sinLon;
+      return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+  }
+
+  // Lower bound of the great-circle distance from a point to anything inside a
+  // lat/long box; it never overestimates, so it is safe for best-first pruning.
+  public static double minDistanceKm(double lat, double lon, double minLat, double maxLat, double minLon,
+      double maxLon) {
+    if (minLat > maxLat) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    double latGap = lat < minLat ? minLat - lat : (lat > maxLat ? lat - maxLat : 0);
+    double lonGap = 0;
+    if (lon < minLon || lon > maxLon) {
+      lonGap = Math.min(wrappedDelta(lon, minLon), wrappedDelta(lon, maxLon));
+    }
+    if (lonGap == 0) {
+      // Inside the longitude range the nearest point lies on the same meridian
+      return Math.toRadians(latGap) * EARTH_RADIUS_KM;
+    }
+
+    // Distance to the nearest edge meridian, measured as cross-track distance
+    double crossTrack = Math.asin(Math.cos(Math.toRadians(lat)) * Math.sin(Math.toRadians(Math.min(lonGap, 90))));
+    return Math.max(Math.toRadians(latGap), crossTrack) * EARTH_RADIUS_KM;
+  }
+
+  private static double wrappedDelta(double a, double b) {
+    double delta = Math.abs(a - b) % 360;
+    return delta > 180 ? 360 - delta : delta;
+  }
+}
@@ -0,0 +1,7 @@
+package com.example.citysearch.loader;
+
+import java.util.List;
+
+// Outcome of one set of upserts and deletions; version is the dataset version that made them visible
+public record ChangeReport(int inserted, int updated, int deleted, List<Long> notFound, long version) {
+}
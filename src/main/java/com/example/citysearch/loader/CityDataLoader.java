@@ -1,94 +1,249 @@
 package com.example.citysearch.loader;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.util.unit.DataSize;
 
-import com.example.citysearch.model.City;
-import com.example.citysearch.trie.CitySearchTrie;
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.DatasetNotFoundException;
+import com.example.citysearch.exception.InvalidDataException;
+import com.example.citysearch.exception.TooManyRequestsException;
+import com.example.citysearch.model.CityUpsert;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.ShardedCityIndex;
 
 @Component
 public class CityDataLoader {
-  private final CitySearchTrie trie = new CitySearchTrie();
+  private static final Pattern DATASET_NAME = Pattern.compile("[a-z0-9][a-z0-9_-]{0,63}");
+
+  // Readers only ever see a fully built snapshot; loads build the next one off
+  // to the side and publish it with a single volatile write.
+  private final Map<String, Dataset> datasets = new ConcurrentHashMap<>();
+  private final CitySearchProperties citySearchProperties;
+  private final TsvIngestionPipeline ingestionPipeline;
+  private final String defaultDataset;
+  private final int topK;
+  private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
+  private final List<BiConsumer<String, IngestionReport>> ingestionListeners = new CopyOnWriteArrayList<>();
 
   @Value("classpath:cities_canada-usa.tsv")
   private Resource citiesResource;
 
-  public void loadFromMultipartFile(MultipartFile file) throws IOException {
-    if (file.isEmpty()) {
-      throw new IOException("The file is empty.");
+  public CityDataLoader(CitySearchProperties citySearchProperties, TsvIngestionPipeline ingestionPipeline) {
+    this.citySearchProperties = citySearchProperties;
+    this.ingestionPipeline = ingestionPipeline;
+    this.defaultDataset = citySearchProperties.getDefaultDataset();
+    this.topK = Math.max(citySearchProperties.getLimitData(), CityIndex.DEFAULT_TOP_K);
+    dataset(defaultDataset);
+  }
+
+  // Called with the dataset name after a new index goes live or the dataset is evicted
+  public void addChangeListener(Consumer<String> listener) {
+    changeListeners.add(listener);
+  }
+
+  // Called with the dataset name and report of every completed ingest, before
+  // its index is checked against the budget and published
+  public void addIngestionListener(BiConsumer<String, IngestionReport> listener) {
+    ingestionListeners.add(listener);
+  }
+
+  private void publish(Dataset dataset, CityIndex next) {
+    dataset.publish(next);
+    changeListeners.forEach(listener -> listener.accept(dataset.getName()));
+  }
+
+  public String getDefaultDataset() {
+    return defaultDataset;
+  }
+
+  public IngestionReport loadFromFile(String dataset, Path path, TsvIngestionPipeline.ProgressListener listener)
+      throws IOException {
+    try (InputStream inputStream = Files.newInputStream(path)) {
+      return load(dataset(dataset), inputStream, listener);
     }
+  }
 
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-      String line;
-      String headerLine = reader.readLine();
-      if (headerLine == null) {
-        throw new IOException("The file is empty.");
+  public IngestionReport loadFromTsv(String filePath) throws IOException {
+    try (InputStream inputStream = citiesResource.getInputStream()) {
+      return load(dataset(defaultDataset), inputStream, (rowsParsed, rowsRejected) -> {
+      });
+    }
+  }
+
+  // Rows are staged into a builder seeded from the live index; nothing is
+  // published unless the whole input was ingested and fits the budget.
+  private IngestionReport load(Dataset dataset, InputStream inputStream,
+      TsvIngestionPipeline.ProgressListener listener) throws IOException {
+    dataset.writeLock.lock();
+    try {
+      CityIndex.Builder builder = dataset.getIndex().toBuilder();
+      IngestionReport report = ingestionPipeline.ingest(inputStream, builder, listener);
+      ingestionListeners.forEach(ingestion -> ingestion.accept(dataset.getName(), report));
+      CityIndex next = builder.build();
+      checkBudget(dataset, next);
+      publish(dataset, next);
+      return report;
+    } finally {
+      dataset.writeLock.unlock();
+    }
+  }
+
+  // Upserts and deletions keyed by GeoNames id are applied as a patch over the
+  // live index, so a small diff publishes a new version without a rebuild;
+  // the patch is compacted into a full index once it outgrows maxPatchedCities.
+  // Upserts create the dataset like an upload does. Changes arrive on request
+  // threads, so while an upload holds the dataset they wait at most
+  // changeLockWaitMillis and are then refused with 429 instead of piling up.
+  public ChangeReport applyChanges(String name, List<CityUpsert> upserts, List<Long> deletions)
+      throws InvalidDataException {
+    Dataset dataset = upserts.isEmpty() ? getDataset(name) : dataset(name);
+    lockForChanges(dataset);
+    try {
+      CityIndex.Changes changes = dataset.getIndex().changes();
+      int inserted = 0;
+      int updated = 0;
+      for (CityUpsert upsert : upserts) {
+        List<String> alternateNames = citySearchProperties.isIndexAlternateNames() ? upsert.getAlternateNames()
+            : List.of();
+        if (changes.upsert(upsert.toCity(), alternateNames)) {
+          updated++;
+        } else {
+          inserted++;
+        }
       }
-      String[] headers = headerLine.split("\t");
-      Map<String, Integer> columnIndexMap = new HashMap<>();
-      for (int i = 0; i < headers.length; i++) {
-        columnIndexMap.put(headers[i].toLowerCase(), i);
+      int deleted = 0;
+      List<Long> notFound = new ArrayList<>();
+      for (Long geonameId : deletions) {
+        if (changes.delete(geonameId)) {
+          deleted++;
+        } else {
+          notFound.add(geonameId);
+        }
       }
-
-      if (!columnIndexMap.containsKey("name") ||
-          !columnIndexMap.containsKey("lat") ||
-          !columnIndexMap.containsKey("long")) {
-        throw new IOException("Required columns (name, latitude, longitude) are missing.");
+      if (inserted + updated + deleted == 0) {
+        // Nothing matched, so readers and cached results keep the current version
+        return new ChangeReport(0, 0, 0, notFound, dataset.getVersion());
       }
+      CityIndex next = changes.build(citySearchProperties.getMaxPatchedCities());
+      checkBudget(dataset, next);
+      publish(dataset, next);
+      return new ChangeReport(inserted, updated, deleted, notFound, dataset.getVersion());
+    } finally {
+      dataset.writeLock.unlock();
+    }
+  }
 
-      while ((line = reader.readLine()) != null) {
-        String[] parts = line.split("\t");
-        String name = parts[columnIndexMap.get("name")];
-        double latitude = Double.parseDouble(parts[columnIndexMap.get("lat")]);
-        double longitude = Double.parseDouble(parts[columnIndexMap.get("long")]);
+  private void lockForChanges(Dataset dataset) {
+    boolean locked;
+    try {
+      locked = dataset.writeLock.tryLock(citySearchProperties.getChangeLockWaitMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      locked = false;
+    }
+    if (!locked) {
+      throw new TooManyRequestsException("Dataset " + dataset.getName() + " is being loaded; try again later");
+    }
+  }
 
-        trie.insert(name, new City(name, latitude, longitude));
-      }
+  public void loadSnapshot(Path path) throws IOException {
+    Dataset dataset = dataset(defaultDataset);
+    dataset.writeLock.lock();
+    try {
+      CityIndex next = IndexSnapshotFile.map(path);
+      checkBudget(dataset, next);
+      publish(dataset, next);
+    } finally {
+      dataset.writeLock.unlock();
     }
   }
 
-  public void loadFromTsv(String filePath) throws IOException {
-    try (InputStream inputStream = citiesResource.getInputStream();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-      String line;
-      String headerLine = reader.readLine();
-      if (headerLine == null) {
-        throw new IOException("The file is empty.");
-      }
-      String[] headers = headerLine.split("\t");
-      Map<String, Integer> columnIndexMap = new HashMap<>();
-      for (int i = 0; i < headers.length; i++) {
-        columnIndexMap.put(headers[i].toLowerCase(), i);
-      }
+  public long writeSnapshot(Path path) throws IOException {
+    return IndexSnapshotFile.write(getTrie(), path);
+  }
 
-      if (!columnIndexMap.containsKey("name") ||
-          !columnIndexMap.containsKey("lat") ||
-          !columnIndexMap.containsKey("long")) {
-        throw new IOException("Required columns (name, latitude, longitude) are missing.");
-      }
+  public CityIndex getTrie() {
+    return getDataset(defaultDataset).getIndex();
+  }
 
-      while ((line = reader.readLine()) != null) {
-        String[] parts = line.split("\t");
-        String name = parts[columnIndexMap.get("name")];
-        double latitude = Double.parseDouble(parts[columnIndexMap.get("lat")]);
-        double longitude = Double.parseDouble(parts[columnIndexMap.get("long")]);
+  public CityIndex getTrie(String dataset) {
+    return getDataset(dataset).getIndex();
+  }
 
-        trie.insert(name, new City(name, latitude, longitude));
-      }
+  public Dataset getDataset(String name) {
+    Dataset dataset = datasets.get(name == null ? defaultDataset : name);
+    if (dataset == null) {
+      throw new DatasetNotFoundException("Unknown dataset: " + name);
     }
+    return dataset;
+  }
+
+  public List<Dataset> getDatasets() {
+    List<Dataset> all = new ArrayList<>(datasets.values());
+    all.sort(Comparator.comparing(Dataset::getName));
+    return all;
   }
 
-  public CitySearchTrie getTrie() {
-    return trie;
+  // Drops the dataset and its index; a load still running against it finishes
+  // but its result is discarded with the evicted dataset.
+  public void evict(String name) {
+    if (defaultDataset.equals(name)) {
+      throw new IllegalArgumentException("The default dataset cannot be evicted");
+    }
+    if (datasets.remove(name) == null) {
+      throw new DatasetNotFoundException("Unknown dataset: " + name);
+    }
+    changeListeners.forEach(listener -> listener.accept(name));
+  }
+
+  public String resolveDatasetName(String name) {
+    if (name == null) {
+      return defaultDataset;
+    }
+    if (!DATASET_NAME.matcher(name).matches()) {
+      throw new IllegalArgumentException("Invalid dataset name: " + name);
+    }
+    return name;
+  }
+
+  private Dataset dataset(String name) {
+    return datasets.computeIfAbsent(resolveDatasetName(name), key -> {
+      DataSize budget = citySearchProperties.getDatasetMemoryBudgets().get(key);
+      return new Dataset(key, newBuilder().build(), budget == null ? -1 : budget.toBytes());
+    });
+  }
+
+  // Loads go through the live index's builder, so an empty sharded index
+  // keeps every later load sharded; a snapshot replaces it with one index
+  private CityIndex.Builder newBuilder() {
+    int shardCount = citySearchProperties.getShardCount();
+    return shardCount > 1 ? new ShardedCityIndex.Builder(citySearchProperties.getIndexType(), topK, shardCount)
+        : citySearchProperties.getIndexType().newBuilder(topK);
+  }
+
+  private static void checkBudget(Dataset dataset, CityIndex next) throws InvalidDataException {
+    long budget = dataset.getMemoryBudgetBytes();
+    if (budget >= 0 && next.getMemoryBytes() > budget) {
+      throw new InvalidDataException("Dataset " + dataset.getName() + " would need " + next.getMemoryBytes()
+          + " bytes, over its memory budget of " + budget + " bytes");
+    }
   }
 
 }
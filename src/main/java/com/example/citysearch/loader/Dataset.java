@@ -0,0 +1,71 @@
+package com.example.citysearch.loader;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.example.citysearch.trie.CityIndex;
+
+// One named, independently loaded index. Readers see whichever snapshot was
+// last published; loads into the same dataset are serialized on its own lock,
+// so uploads to different datasets do not wait on each other. It is a
+// ReentrantLock rather than a monitor so that request threads can give up
+// after a bounded wait, and virtual threads waiting on it do not pin a carrier.
+public class Dataset {
+  private final String name;
+  private final long memoryBudgetBytes;
+  final ReentrantLock writeLock = new ReentrantLock();
+  private volatile CityIndex index;
+  private volatile Instant loadedAt;
+  // Bumped after every publish; anything derived from the index, such as
+  // cached results, is only valid for the version it was computed under
+  private volatile long version;
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder searches = new LongAdder();
+
+  Dataset(String name, CityIndex index, long memoryBudgetBytes) {
+    this.name = name;
+    this.index = index;
+    this.memoryBudgetBytes = memoryBudgetBytes;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public CityIndex getIndex() {
+    return index;
+  }
+
+  // Negative when the dataset has no budget
+  public long getMemoryBudgetBytes() {
+    return memoryBudgetBytes;
+  }
+
+  public Instant getLoadedAt() {
+    return loadedAt;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public long getLoads() {
+    return loads.sum();
+  }
+
+  public long getSearches() {
+    return searches.sum();
+  }
+
+  public void recordSearch() {
+    searches.increment();
+  }
+
+  void publish(CityIndex next) {
+    index = next;
+    version++;
+    loadedAt = Instant.now();
+    loads.increment();
+  }
+}
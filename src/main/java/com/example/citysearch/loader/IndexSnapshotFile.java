@@ -0,0 +1,73 @@
+package com.example.citysearch.loader;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.example.citysearch.snapshot.SnapshotReader;
+import com.example.citysearch.snapshot.SnapshotWriter;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.RadixCitySearchTrie;
+
+// Versioned binary image of a finished index: a header followed by the radix
+// trie and city columns. Loading maps the file and serves from it in place.
+public final class IndexSnapshotFile {
+  private static final int MAGIC = 0x58444943; // "CIDX"
+  // 2: keys are accent-folded and may include alternate names
+  // 3: a word trie precedes the name trie
+  // 4: keys may list several cities; the store keeps GeoNames ids
+  // 5: a k-d tree over the store follows it
+  // 6: the store keeps cos(latitude) per city
+  // 7: the store keeps each city's response fields as JSON
+  public static final int FORMAT_VERSION = 7;
+
+  private IndexSnapshotFile() {
+  }
+
+  // Writes next to the target and renames, so readers never map a partial file
+  public static long write(CityIndex index, Path path) throws IOException {
+    RadixCitySearchTrie trie = RadixCitySearchTrie.copyOf(index);
+    Path directory = path.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        SnapshotWriter out = new SnapshotWriter(channel);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        trie.writeTo(out);
+        out.flush();
+        channel.force(true);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return Files.size(path);
+  }
+
+  public static RadixCitySearchTrie map(Path path) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot is larger than 2GB: " + path);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    SnapshotReader in = new SnapshotReader(buffer);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a city index snapshot: " + path);
+    }
+    int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported snapshot version " + version + ", expected " + FORMAT_VERSION);
+    }
+    return RadixCitySearchTrie.readFrom(in);
+  }
+}
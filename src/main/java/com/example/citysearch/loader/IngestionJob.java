@@ -0,0 +1,96 @@
+package com.example.citysearch.loader;
+
+import java.util.List;
+
+// Progress of one background upload. Written by the ingesting thread and read
+// by status requests, so every field is volatile and only ever replaced.
+public class IngestionJob implements TsvIngestionPipeline.ProgressListener {
+  public enum State {
+    QUEUED, RUNNING, SUCCEEDED, FAILED
+  }
+
+  private final String id;
+  private final String dataset;
+  private volatile State state = State.QUEUED;
+  private volatile long rowsParsed;
+  private volatile long rowsRejected;
+  private volatile List<String> errors = List.of();
+  private volatile String failure;
+  private volatile long startNanos;
+  private volatile long finishNanos;
+
+  public IngestionJob(String id, String dataset) {
+    this.id = id;
+    this.dataset = dataset;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getDataset() {
+    return dataset;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public long getRowsParsed() {
+    return rowsParsed;
+  }
+
+  public long getRowsRejected() {
+    return rowsRejected;
+  }
+
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  public String getFailure() {
+    return failure;
+  }
+
+  public long getElapsedMillis() {
+    long start = startNanos;
+    if (start == 0) {
+      return 0;
+    }
+    long end = state == State.RUNNING ? System.nanoTime() : finishNanos;
+    return (end - start) / 1_000_000;
+  }
+
+  public double getRowsPerSecond() {
+    long elapsedMillis = getElapsedMillis();
+    return elapsedMillis == 0 ? 0 : rowsParsed * 1000.0 / elapsedMillis;
+  }
+
+  public boolean isFinished() {
+    return state == State.SUCCEEDED || state == State.FAILED;
+  }
+
+  void start() {
+    startNanos = System.nanoTime();
+    state = State.RUNNING;
+  }
+
+  @Override
+  public void onProgress(long rowsParsed, long rowsRejected) {
+    this.rowsParsed = rowsParsed;
+    this.rowsRejected = rowsRejected;
+  }
+
+  void succeed(IngestionReport report) {
+    onProgress(report.rowsParsed(), report.rowsRejected());
+    errors = report.errors();
+    finishNanos = System.nanoTime();
+    state = State.SUCCEEDED;
+  }
+
+  void fail(String message) {
+    failure = message;
+    finishNanos = System.nanoTime();
+    state = State.FAILED;
+  }
+}
@@ -0,0 +1,109 @@
+package com.example.citysearch.loader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.TooManyRequestsException;
+
+import jakarta.annotation.PreDestroy;
+
+// Runs uploads in the background, one at a time, so the request thread only
+// spools the file to disk. The loader publishes the new index with a single
+// volatile write once a job has ingested everything, so a failed job leaves
+// the live dataset untouched. Uploads beyond the queue bound are refused
+// rather than left waiting on disk.
+@Component
+public class IngestionJobs {
+  private static final int MAX_FINISHED_JOBS = 50;
+
+  private final CityDataLoader dataLoader;
+  private final ExecutorService executor;
+  private final Map<String, IngestionJob> jobs = new LinkedHashMap<>();
+
+  public IngestionJobs(CityDataLoader dataLoader, CitySearchProperties citySearchProperties) {
+    this.dataLoader = dataLoader;
+    this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, citySearchProperties.getMaxQueuedUploads())), runnable -> {
+          Thread thread = new Thread(runnable, "ingestion-job");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  public IngestionJob submit(String dataset, MultipartFile file) throws IOException {
+    String target = dataLoader.resolveDatasetName(dataset);
+    // The multipart temp file is deleted when the request completes
+    Path upload = Files.createTempFile("citysearch-upload-", ".tsv");
+    try {
+      file.transferTo(upload);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(upload);
+      throw e;
+    }
+
+    IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), target);
+    try {
+      executor.execute(() -> run(job, upload));
+    } catch (RejectedExecutionException e) {
+      Files.deleteIfExists(upload);
+      throw new TooManyRequestsException("Too many uploads are waiting to be ingested; try again later");
+    }
+    register(job);
+    return job;
+  }
+
+  public IngestionJob get(String id) {
+    synchronized (jobs) {
+      return jobs.get(id);
+    }
+  }
+
+  private void run(IngestionJob job, Path upload) {
+    job.start();
+    try {
+      job.succeed(dataLoader.loadFromFile(job.getDataset(), upload, job));
+    } catch (Exception e) {
+      job.fail(e.getMessage());
+    } finally {
+      try {
+        Files.deleteIfExists(upload);
+      } catch (IOException e) {
+        upload.toFile().deleteOnExit();
+      }
+    }
+  }
+
+  private void register(IngestionJob job) {
+    synchronized (jobs) {
+      jobs.put(job.getId(), job);
+      // Forget the oldest finished jobs; queued and running ones are always kept
+      int finished = (int) jobs.values().stream().filter(IngestionJob::isFinished).count();
+      Iterator<IngestionJob> iterator = jobs.values().iterator();
+      while (finished > MAX_FINISHED_JOBS && iterator.hasNext()) {
+        if (iterator.next().isFinished()) {
+          iterator.remove();
+          finished--;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package com.example.citysearch.loader;
+
+import java.util.List;
+
+public record IngestionReport(long rowsParsed, long rowsRejected, List<String> errors, long elapsedMillis) {
+
+  public double rowsPerSecond() {
+    return elapsedMillis == 0 ? rowsParsed * 1000.0 : rowsParsed * 1000.0 / elapsedMillis;
+  }
+}
@@ -0,0 +1,10 @@
+package com.example.citysearch.loader;
+
+public enum RowErrorPolicy {
+  // Drop malformed rows and only count them
+  SKIP,
+  // Drop malformed rows and report the first few of them
+  COLLECT,
+  // Abort the whole load on the first malformed row
+  FAIL
+}
@@ -0,0 +1,328 @@
+package com.example.citysearch.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.InvalidDataException;
+import com.example.citysearch.model.City;
+import com.example.citysearch.trie.CityIndex;
+
+import jakarta.annotation.PreDestroy;
+
+// Shared TSV ingestion: the caller's thread reads lines in chunks, workers
+// tokenize and parse them, and parsed rows are fed to the index builder in file
+// order. A row repeating an earlier GeoNames id replaces that row, so the last
+// one wins deterministically; rows that only share a name are all kept.
+@Component
+public class TsvIngestionPipeline {
+  private static final int CHUNK_LINES = 4096;
+  private static final int MAX_COLLECTED_ERRORS = 100;
+
+  private final ExecutorService workers;
+  private final int parallelism;
+  private final RowErrorPolicy errorPolicy;
+  private final boolean indexAlternateNames;
+
+  public TsvIngestionPipeline(CitySearchProperties citySearchProperties) {
+    int threads = citySearchProperties.getIngestionThreads();
+    this.parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.errorPolicy = citySearchProperties.getRowErrorPolicy();
+    this.indexAlternateNames = citySearchProperties.isIndexAlternateNames();
+    AtomicInteger counter = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "tsv-ingest-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  // Called on the ingesting thread after every applied chunk with running totals
+  public interface ProgressListener {
+    void onProgress(long rowsParsed, long rowsRejected);
+  }
+
+  public IngestionReport ingest(InputStream input, CityIndex.Builder builder) throws IOException {
+    return ingest(input, builder, (rowsParsed, rowsRejected) -> {
+    });
+  }
+
+  public IngestionReport ingest(InputStream input, CityIndex.Builder builder, ProgressListener listener)
+      throws IOException {
+    long start = System.nanoTime();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+    String headerLine = reader.readLine();
+    if (headerLine == null) {
+      throw new IOException("The file is empty.");
+    }
+    Columns columns = Columns.of(headerLine, indexAlternateNames);
+
+    Progress progress = new Progress();
+    ArrayDeque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+    try {
+      List<String> lines = new ArrayList<>(CHUNK_LINES);
+      long firstLine = 2;
+      long lineNumber = 1;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        lines.add(line);
+        if (lines.size() == CHUNK_LINES) {
+          submit(inFlight, columns, firstLine, lines);
+          lines = new ArrayList<>(CHUNK_LINES);
+          firstLine = lineNumber + 1;
+          // Bounded read-ahead keeps memory flat however large the input is
+          if (inFlight.size() >= parallelism * 2) {
+            apply(inFlight.poll(), builder, progress, listener);
+          }
+        }
+      }
+      if (!lines.isEmpty()) {
+        submit(inFlight, columns, firstLine, lines);
+      }
+      while (!inFlight.isEmpty()) {
+        apply(inFlight.poll(), builder, progress, listener);
+      }
+    } finally {
+      inFlight.forEach(future -> future.cancel(true));
+    }
+
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    return new IngestionReport(progress.parsed, progress.rejected, List.copyOf(progress.errors), elapsedMillis);
+  }
+
+  private void submit(ArrayDeque<Future<ParsedChunk>> inFlight, Columns columns, long firstLine,
+      List<String> lines) {
+    inFlight.add(workers.submit(() -> parseChunk(columns, firstLine, lines)));
+  }
+
+  private void apply(Future<ParsedChunk> future, CityIndex.Builder builder, Progress progress,
+      ProgressListener listener) throws IOException {
+    ParsedChunk chunk;
+    try {
+      chunk = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Ingestion interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to parse city data", e.getCause());
+    }
+
+    if (!chunk.errors.isEmpty()) {
+      switch (errorPolicy) {
+        case FAIL -> throw new InvalidDataException(chunk.errors.get(0));
+        case COLLECT -> {
+          for (String error : chunk.errors) {
+            if (progress.errors.size() < MAX_COLLECTED_ERRORS) {
+              progress.errors.add(error);
+            }
+          }
+        }
+        case SKIP -> {
+        }
+      }
+      progress.rejected += chunk.errors.size();
+    }
+    for (int i = 0; i < chunk.cities.size(); i++) {
+      City city = chunk.cities.get(i);
+      builder.insert(city.getName(), city, chunk.alternateNames.get(i));
+    }
+    progress.parsed += chunk.cities.size();
+    listener.onProgress(progress.parsed, progress.rejected);
+  }
+
+  private static ParsedChunk parseChunk(Columns columns, long firstLine, List<String> lines) {
+    ParsedChunk chunk = new ParsedChunk(lines.size());
+    int[] bounds = new int[2 * (columns.maxIndex + 1)];
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      if (line.isEmpty()) {
+        continue;
+      }
+      try {
+        City city = parseRow(line, columns, bounds);
+        chunk.cities.add(city);
+        chunk.alternateNames.add(alternateNames(line, columns, bounds, city.getName()));
+      } catch (IllegalArgumentException e) {
+        chunk.errors.add("Line " + (firstLine + i) + ": " + e.getMessage());
+      }
+    }
+    return chunk;
+  }
+
+  // Splits on tabs with indexOf instead of a regex, recording only the fields we need
+  static City parseRow(String line, Columns columns, int[] bounds) {
+    int field = 0;
+    int start = 0;
+    while (field <= columns.maxIndex) {
+      int end = line.indexOf('\t', start);
+      if (end < 0) {
+        end = line.length();
+      }
+      bounds[2 * field] = start;
+      bounds[2 * field + 1] = end;
+      field++;
+      if (end == line.length()) {
+        break;
+      }
+      start = end + 1;
+    }
+    for (int i = field; i <= columns.maxIndex; i++) {
+      bounds[2 * i] = -1;
+    }
+
+    String name = column(line, bounds, columns.name);
+    if (name == null) {
+      throw new IllegalArgumentException("missing name");
+    }
+    double latitude = parseCoordinate(line, bounds, columns.latitude, "lat", 90);
+    double longitude = parseCoordinate(line, bounds, columns.longitude, "long", 180);
+    String population = column(line, bounds, columns.population);
+    long populationValue;
+    try {
+      populationValue = population == null ? 0 : Long.parseLong(population);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid population '" + population + "'");
+    }
+    String id = column(line, bounds, columns.id);
+    long geonameId;
+    try {
+      geonameId = id == null ? 0 : Long.parseLong(id);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid id '" + id + "'");
+    }
+    if (geonameId < 0) {
+      throw new IllegalArgumentException("invalid id '" + id + "'");
+    }
+    return new City(name, latitude, longitude, populationValue, column(line, bounds, columns.country),
+        column(line, bounds, columns.admin1), geonameId);
+  }
+
+  // The ascii column plus the comma-separated alt_name list, minus repeats of the name
+  static List<String> alternateNames(String line, Columns columns, int[] bounds, String name) {
+    String ascii = column(line, bounds, columns.ascii);
+    String alternates = column(line, bounds, columns.alternateNames);
+    if (alternates == null) {
+      return ascii == null || ascii.equals(name) ? List.of() : List.of(ascii);
+    }
+    List<String> names = new ArrayList<>();
+    if (ascii != null && !ascii.equals(name)) {
+      names.add(ascii);
+    }
+    int start = 0;
+    while (start <= alternates.length()) {
+      int end = alternates.indexOf(',', start);
+      if (end < 0) {
+        end = alternates.length();
+      }
+      String alternate = alternates.substring(start, end).trim();
+      if (!alternate.isEmpty() && !alternate.equals(name)) {
+        names.add(alternate);
+      }
+      start = end + 1;
+    }
+    return names;
+  }
+
+  private static double parseCoordinate(String line, int[] bounds, int index, String label, double range) {
+    String value = column(line, bounds, index);
+    if (value == null) {
+      throw new IllegalArgumentException("missing " + label);
+    }
+    double coordinate;
+    try {
+      coordinate = Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid " + label + " '" + value + "'");
+    }
+    if (coordinate < -range || coordinate > range) {
+      throw new IllegalArgumentException(label + " out of range: " + value);
+    }
+    return coordinate;
+  }
+
+  private static String column(String line, int[] bounds, int index) {
+    if (index < 0 || bounds[2 * index] < 0 || bounds[2 * index] == bounds[2 * index + 1]) {
+      return null;
+    }
+    return line.substring(bounds[2 * index], bounds[2 * index + 1]);
+  }
+
+  static final class Columns {
+    final int id;
+    final int name;
+    final int latitude;
+    final int longitude;
+    final int population;
+    final int country;
+    final int admin1;
+    final int ascii;
+    final int alternateNames;
+    final int maxIndex;
+
+    private Columns(int id, int name, int latitude, int longitude, int population, int country, int admin1,
+        int ascii, int alternateNames) {
+      this.id = id;
+      this.name = name;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.population = population;
+      this.country = country;
+      this.admin1 = admin1;
+      this.ascii = ascii;
+      this.alternateNames = alternateNames;
+      this.maxIndex = Math.max(Math.max(Math.max(name, latitude), Math.max(longitude, population)),
+          Math.max(Math.max(country, admin1), Math.max(Math.max(ascii, alternateNames), id)));
+    }
+
+    static Columns of(String headerLine, boolean alternateNames) throws InvalidDataException {
+      List<String> headers = new ArrayList<>();
+      for (String header : headerLine.split("\t")) {
+        headers.add(header.trim().toLowerCase());
+      }
+      int name = headers.indexOf("name");
+      int latitude = headers.indexOf("lat");
+      int longitude = headers.indexOf("long");
+      if (name < 0 || latitude < 0 || longitude < 0) {
+        throw new InvalidDataException("Required columns (name, latitude, longitude) are missing.");
+      }
+      return new Columns(headers.indexOf("id"), name, latitude, longitude, headers.indexOf("population"), headers.indexOf("country"),
+          headers.indexOf("admin1"), headers.indexOf("ascii"), alternateNames ? headers.indexOf("alt_name") : -1);
+    }
+  }
+
+  private static final class ParsedChunk {
+    final List<City> cities;
+    final List<List<String>> alternateNames;
+    final List<String> errors = new ArrayList<>();
+
+    ParsedChunk(int capacity) {
+      this.cities = new ArrayList<>(capacity);
+      this.alternateNames = new ArrayList<>(capacity);
+    }
+  }
+
+  private static final class Progress {
+    long parsed;
+    long rejected;
+    final List<String> errors = new ArrayList<>();
+  }
+}
@@ -0,0 +1,59 @@
+package com.example.citysearch.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public class BatchQuery {
+
+  @Schema(description = "Search query", example = "Lond")
+  private String q;
+
+  @Schema(description = "Latitude of the caller, if known", example = "43.70011")
+  private Double latitude;
+
+  @Schema(description = "Longitude of the caller, if known", example = "-79.4163")
+  private Double longitude;
+
+  @Schema(description = "Only return cities within this many kilometres of the coordinates", example = "50")
+  private Double radiusKm;
+
+  public BatchQuery() {
+  }
+
+  public BatchQuery(String q, Double latitude, Double longitude) {
+    this.q = q;
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
+  public String getQ() {
+    return q;
+  }
+
+  public void setQ(String q) {
+    this.q = q;
+  }
+
+  public Double getLatitude() {
+    return latitude;
+  }
+
+  public void setLatitude(Double latitude) {
+    this.latitude = latitude;
+  }
+
+  public Double getLongitude() {
+    return longitude;
+  }
+
+  public void setLongitude(Double longitude) {
+    this.longitude = longitude;
+  }
+
+  public Double getRadiusKm() {
+    return radiusKm;
+  }
+
+  public void setRadiusKm(Double radiusKm) {
+    this.radiusKm = radiusKm;
+  }
+}
@@ -0,0 +1,55 @@
+package com.example.citysearch.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+// One NDJSON line of a batch response: either suggestions or an error
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+
+  @Schema(description = "Position of the query in the request", example = "0")
+  private final int index;
+
+  @Schema(description = "The query as sent", example = "Lond")
+  private final String q;
+
+  @Schema(description = "Suggestions, best first")
+  private final List<Suggestion> suggestions;
+
+  @Schema(description = "Why the query was rejected", example = "Latitude must be between -90 and 90 degrees")
+  private final String error;
+
+  private BatchResult(int index, String q, List<Suggestion> suggestions, String error) {
+    this.index = index;
+    this.q = q;
+    this.suggestions = suggestions;
+    this.error = error;
+  }
+
+  public static BatchResult of(int index, String q, List<Suggestion> suggestions) {
+    return new BatchResult(index, q, suggestions, null);
+  }
+
+  public static BatchResult error(int index, String q, String error) {
+    return new BatchResult(index, q, null, error);
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public String getQ() {
+    return q;
+  }
+
+  public List<Suggestion> getSuggestions() {
+    return suggestions;
+  }
+
+  public String getError() {
+    return error;
+  }
+}
@@ -4,11 +4,33 @@ public class City {
   private String name;
   private double latitude;
   private double longitude;
+  private long population;
+  private String country;
+  private String admin1;
+  private long geonameId;
 
   public City(String name, double latitude, double longitude) {
+    this(name, latitude, longitude, 0);
+  }
+
+  public City(String name, double latitude, double longitude, long population) {
+    this(name, latitude, longitude, population, null, null);
+  }
+
+  public City(String name, double latitude, double longitude, long population, String country, String admin1) {
+    this(name, latitude, longitude, population, country, admin1, 0);
+  }
+
+  // A non-zero geonameId identifies the city across uploads; 0 means the row had none
+  public City(String name, double latitude, double longitude, long population, String country, String admin1,
+      long geonameId) {
     this.name = name;
     this.latitude = latitude;
     this.longitude = longitude;
+    this.population = population;
+    this.country = country;
+    this.admin1 = admin1;
+    this.geonameId = geonameId;
   }
 
   public String getName() {
@@ -22,4 +44,20 @@ public class City {
   public double getLongitude() {
     return longitude;
   }
+
+  public long getPopulation() {
+    return population;
+  }
+
+  public String getCountry() {
+    return country;
+  }
+
+  public String getAdmin1() {
+    return admin1;
+  }
+
+  public long getGeonameId() {
+    return geonameId;
+  }
 }
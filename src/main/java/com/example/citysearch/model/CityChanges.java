@@ -0,0 +1,39 @@
+package com.example.citysearch.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public class CityChanges {
+
+  @Schema(description = "Cities to add or replace, matched by GeoNames id")
+  private List<CityUpsert> upserts = new ArrayList<>();
+
+  @Schema(description = "GeoNames ids of cities to delete", example = "[5128581]")
+  private List<Long> deletions = new ArrayList<>();
+
+  public CityChanges() {
+  }
+
+  public CityChanges(List<CityUpsert> upserts, List<Long> deletions) {
+    this.upserts = upserts;
+    this.deletions = deletions;
+  }
+
+  public List<CityUpsert> getUpserts() {
+    return upserts;
+  }
+
+  public void setUpserts(List<CityUpsert> upserts) {
+    this.upserts = upserts == null ? new ArrayList<>() : upserts;
+  }
+
+  public List<Long> getDeletions() {
+    return deletions;
+  }
+
+  public void setDeletions(List<Long> deletions) {
+    this.deletions = deletions == null ? new ArrayList<>() : deletions;
+  }
+}
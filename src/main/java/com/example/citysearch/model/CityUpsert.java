@@ -0,0 +1,110 @@
+package com.example.citysearch.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public class CityUpsert {
+
+  @Schema(description = "GeoNames id; a city with this id is replaced, otherwise the city is added", example = "6167865")
+  private Long geonameId;
+
+  @Schema(description = "City name", example = "Toronto")
+  private String name;
+
+  @Schema(description = "Latitude in degrees", example = "43.70011")
+  private Double latitude;
+
+  @Schema(description = "Longitude in degrees", example = "-79.4163")
+  private Double longitude;
+
+  @Schema(description = "Population, 0 when unknown", example = "2600000")
+  private long population;
+
+  @Schema(description = "ISO country code", example = "CA")
+  private String country;
+
+  @Schema(description = "Admin1 code", example = "08")
+  private String admin1;
+
+  @Schema(description = "Other names the city is found under")
+  private List<String> alternateNames = List.of();
+
+  public CityUpsert() {
+  }
+
+  public CityUpsert(Long geonameId, String name, Double latitude, Double longitude) {
+    this.geonameId = geonameId;
+    this.name = name;
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
+  public City toCity() {
+    return new City(name, latitude, longitude, population, country, admin1, geonameId);
+  }
+
+  public Long getGeonameId() {
+    return geonameId;
+  }
+
+  public void setGeonameId(Long geonameId) {
+    this.geonameId = geonameId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public Double getLatitude() {
+    return latitude;
+  }
+
+  public void setLatitude(Double latitude) {
+    this.latitude = latitude;
+  }
+
+  public Double getLongitude() {
+    return longitude;
+  }
+
+  public void setLongitude(Double longitude) {
+    this.longitude = longitude;
+  }
+
+  public long getPopulation() {
+    return population;
+  }
+
+  public void setPopulation(long population) {
+    this.population = population;
+  }
+
+  public String getCountry() {
+    return country;
+  }
+
+  public void setCountry(String country) {
+    this.country = country;
+  }
+
+  public String getAdmin1() {
+    return admin1;
+  }
+
+  public void setAdmin1(String admin1) {
+    this.admin1 = admin1;
+  }
+
+  public List<String> getAlternateNames() {
+    return alternateNames;
+  }
+
+  public void setAlternateNames(List<String> alternateNames) {
+    this.alternateNames = alternateNames == null ? List.of() : alternateNames;
+  }
+}
@@ -0,0 +1,18 @@
+package com.example.citysearch.model;
+
+// A suggestion as one citysearch node sends it to another that merges shards;
+// the match's text score and population travel along so tiers and equal
+// scores merge in the same order as locally
+public record ShardHit(String name, String country, String admin1, double latitude, double longitude, double score,
+    long population, double textScore) {
+
+  public static ShardHit of(Suggestion suggestion) {
+    return new ShardHit(suggestion.getName(), suggestion.getCountry(), suggestion.getAdmin1(),
+        suggestion.getLatitude(), suggestion.getLongitude(), suggestion.getScore(), suggestion.getPopulation(),
+        suggestion.getTextScore());
+  }
+
+  public Suggestion toSuggestion() {
+    return new Suggestion(name, country, admin1, latitude, longitude, score, population, textScore);
+  }
+}
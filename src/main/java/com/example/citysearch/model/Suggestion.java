@@ -1,5 +1,8 @@
 package com.example.citysearch.model;
 
+import com.example.citysearch.store.CityStore;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import io.swagger.v3.oas.annotations.media.Schema;
 
 public class Suggestion {
@@ -7,6 +10,12 @@ public class Suggestion {
   @Schema(description = "Name of the city", example = "New York")
   private String name;
 
+  @Schema(description = "ISO country code of the city, if known", example = "US")
+  private String country;
+
+  @Schema(description = "First-level administrative division code of the city, if known", example = "NY")
+  private String admin1;
+
   @Schema(description = "Latitude of the city", example = "40.7128")
   private double latitude;
 
@@ -16,15 +25,75 @@ public class Suggestion {
   @Schema(description = "Relevance score of the suggestion", example = "0.95")
   private double score;
 
+  // Breaks ties between equal scores when shard results are merged; not part of the response
+  @JsonIgnore
+  private long population;
+
+  // Text score of the match's tier: 1 for a full prefix, less for an inner
+  // word or a near miss. Shard results are merged tier by tier, as within one
+  // index; not part of the response
+  @JsonIgnore
+  private double textScore;
+
+  // The store and city this came from, whose JSON fields were encoded when the
+  // store was built; null for suggestions that arrived from another node. With
+  // a store, the text fields are only decoded if something other than the
+  // pre-encoded JSON asks for them.
+  @JsonIgnore
+  private CityStore store;
+
+  @JsonIgnore
+  private int city = -1;
+
+  public Suggestion(CityStore store, int city, double score) {
+    this(store, city, score, 0);
+  }
+
+  public Suggestion(CityStore store, int city, double score, double textScore) {
+    this.store = store;
+    this.city = city;
+    this.latitude = store.getLatitude(city);
+    this.longitude = store.getLongitude(city);
+    this.score = score;
+    this.population = store.getPopulation(city);
+    this.textScore = textScore;
+  }
+
   public Suggestion(String name, double latitude, double longitude, double score) {
+    this(name, null, null, latitude, longitude, score);
+  }
+
+  public Suggestion(String name, String country, String admin1, double latitude, double longitude, double score) {
+    this(name, country, admin1, latitude, longitude, score, 0);
+  }
+
+  public Suggestion(String name, String country, String admin1, double latitude, double longitude, double score,
+      long population) {
+    this(name, country, admin1, latitude, longitude, score, population, 0);
+  }
+
+  public Suggestion(String name, String country, String admin1, double latitude, double longitude, double score,
+      long population, double textScore) {
     this.name = name;
+    this.country = country;
+    this.admin1 = admin1;
     this.latitude = latitude;
     this.longitude = longitude;
     this.score = score;
+    this.population = population;
+    this.textScore = textScore;
   }
 
   public String getName() {
-    return name;
+    return store != null ? store.getName(city) : name;
+  }
+
+  public String getCountry() {
+    return store != null ? store.getCountry(city) : country;
+  }
+
+  public String getAdmin1() {
+    return store != null ? store.getAdmin1(city) : admin1;
   }
 
   public double getLatitude() {
@@ -38,4 +107,24 @@ public class Suggestion {
   public double getScore() {
     return score;
   }
+
+  @JsonIgnore
+  public long getPopulation() {
+    return population;
+  }
+
+  @JsonIgnore
+  public double getTextScore() {
+    return textScore;
+  }
+
+  @JsonIgnore
+  public CityStore getStore() {
+    return store;
+  }
+
+  @JsonIgnore
+  public int getCity() {
+    return city;
+  }
 }
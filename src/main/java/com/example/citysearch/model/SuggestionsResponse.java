@@ -0,0 +1,19 @@
+package com.example.citysearch.model;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public class SuggestionsResponse {
+
+  @Schema(description = "Suggestions, best first")
+  private final List<Suggestion> suggestions;
+
+  public SuggestionsResponse(List<Suggestion> suggestions) {
+    this.suggestions = suggestions;
+  }
+
+  public List<Suggestion> getSuggestions() {
+    return suggestions;
+  }
+}
@@ -1,21 +1,43 @@
 package com.example.citysearch.runner;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import org.springframework.stereotype.Component;
 import org.springframework.boot.CommandLineRunner;
+import com.example.citysearch.config.CitySearchProperties;
 import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.IngestionReport;
 
 @Component
 public class ApplicationRunner implements CommandLineRunner {
   private final CityDataLoader dataLoader;
+  private final CitySearchProperties citySearchProperties;
 
-  public ApplicationRunner(CityDataLoader dataLoader) {
+  public ApplicationRunner(CityDataLoader dataLoader, CitySearchProperties citySearchProperties) {
     this.dataLoader = dataLoader;
+    this.citySearchProperties = citySearchProperties;
   }
 
   @Override
   public void run(String... args) throws Exception {
-    dataLoader.loadFromTsv("src/main/resources/cities_canada-usa.tsv");
+    String snapshotPath = citySearchProperties.getSnapshotPath();
+    if (snapshotPath != null && !snapshotPath.isEmpty() && Files.exists(Path.of(snapshotPath))) {
+      try {
+        dataLoader.loadSnapshot(Path.of(snapshotPath));
+
+        System.out.println("City index mapped from snapshot " + snapshotPath);
+        return;
+      } catch (IOException e) {
+        // e.g. written by an older format version; rebuild from the TSV instead
+        System.out.println("Ignoring snapshot " + snapshotPath + ": " + e.getMessage());
+      }
+    }
+
+    IngestionReport report = dataLoader.loadFromTsv("src/main/resources/cities_canada-usa.tsv");
 
-    System.out.println("City data loaded successfully.");
+    System.out.println("City data loaded successfully: " + report.rowsParsed() + " rows, " + report.rowsRejected()
+        + " rejected in " + report.elapsedMillis() + " ms.");
   }
 }
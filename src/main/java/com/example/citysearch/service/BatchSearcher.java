@@ -0,0 +1,171 @@
+package com.example.citysearch.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.Dataset;
+import com.example.citysearch.model.BatchQuery;
+import com.example.citysearch.model.BatchResult;
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.KeyNormalizer;
+
+import jakarta.annotation.PreDestroy;
+
+// Answers many queries against one index version. Every query is folded once,
+// identical ones are searched once, and the rest are sorted by folded query so
+// each chunk walks neighbouring trie paths while they are still in cache.
+// Chunks run on a pool sized to the cores and reach the sink as they finish,
+// so results stream out in completion order, tagged with their request index.
+// Batches bypass the result cache to keep one-off lookups from churning it.
+@Component
+public class BatchSearcher {
+  private static final int CHUNK_SIZE = 256;
+
+  private final CitySearchService searchService;
+  private final CityDataLoader dataLoader;
+  private final CitySearchProperties citySearchProperties;
+  private final ExecutorService executor;
+
+  public BatchSearcher(CitySearchService searchService, CityDataLoader dataLoader,
+      CitySearchProperties citySearchProperties) {
+    this.searchService = searchService;
+    this.dataLoader = dataLoader;
+    this.citySearchProperties = citySearchProperties;
+    int threads = citySearchProperties.getBatchThreads() > 0 ? citySearchProperties.getBatchThreads()
+        : Runtime.getRuntime().availableProcessors();
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "batch-search");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  // Receives the results of one chunk at a time, from the thread running the batch
+  public interface Sink {
+    void accept(List<BatchResult> results) throws IOException;
+  }
+
+  // Checks the request as a whole, so a bad batch fails before any output is written
+  public Batch prepare(String dataset, List<BatchQuery> queries, boolean fuzzy, boolean infix) {
+    if (queries == null || queries.isEmpty()) {
+      throw new IllegalArgumentException("The batch has no queries");
+    }
+    if (queries.size() > citySearchProperties.getBatchMaxQueries()) {
+      throw new IllegalArgumentException("A batch may hold at most " + citySearchProperties.getBatchMaxQueries()
+          + " queries, got " + queries.size());
+    }
+    return new Batch(dataLoader.getDataset(dataset), queries, fuzzy, infix);
+  }
+
+  public class Batch {
+    private final Dataset dataset;
+    private final CityIndex index;
+    private final List<CityShard> remoteShards;
+    private final List<BatchQuery> queries;
+    private final boolean fuzzy;
+    private final boolean infix;
+
+    private Batch(Dataset dataset, List<BatchQuery> queries, boolean fuzzy, boolean infix) {
+      this.dataset = dataset;
+      this.index = dataset.getIndex();
+      this.remoteShards = searchService.getRemoteShards(dataset.getName());
+      this.queries = queries;
+      this.fuzzy = fuzzy;
+      this.infix = infix;
+    }
+
+    // Invalid queries are reported first, then each chunk as it completes
+    public void run(Sink sink) throws IOException, InterruptedException {
+      String[] folded = new String[queries.size()];
+      List<BatchResult> rejected = new ArrayList<>();
+      for (int i = 0; i < folded.length; i++) {
+        BatchQuery query = queries.get(i);
+        if (query == null) {
+          rejected.add(BatchResult.error(i, null, "Missing query"));
+          continue;
+        }
+        try {
+          CitySearchService.validateLocation(query.getLatitude(), query.getLongitude(), query.getRadiusKm());
+        } catch (IllegalArgumentException e) {
+          rejected.add(BatchResult.error(i, query.getQ(), e.getMessage()));
+          continue;
+        }
+        folded[i] = query.getQ() == null ? "" : KeyNormalizer.normalize(query.getQ());
+      }
+      if (!rejected.isEmpty()) {
+        sink.accept(rejected);
+      }
+
+      Comparator<Double> nullsFirst = Comparator.nullsFirst(Comparator.naturalOrder());
+      int[] order = IntStream.range(0, folded.length).filter(i -> folded[i] != null).boxed()
+          .sorted(Comparator.<Integer, String>comparing(i -> folded[i])
+              .thenComparing(i -> queries.get(i).getLatitude(), nullsFirst)
+              .thenComparing(i -> queries.get(i).getLongitude(), nullsFirst)
+              .thenComparing(i -> queries.get(i).getRadiusKm(), nullsFirst))
+          .mapToInt(Integer::intValue).toArray();
+
+      CompletionService<List<BatchResult>> completion = new ExecutorCompletionService<>(executor);
+      List<Future<List<BatchResult>>> chunks = new ArrayList<>();
+      for (int start = 0; start < order.length; start += CHUNK_SIZE) {
+        int from = start;
+        int to = Math.min(order.length, start + CHUNK_SIZE);
+        chunks.add(completion.submit(() -> searchChunk(order, from, to, folded)));
+      }
+      try {
+        for (int i = 0; i < chunks.size(); i++) {
+          sink.accept(completion.take().get());
+        }
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Batch search failed", e.getCause());
+      } finally {
+        // Stops the remaining work when the client has gone away
+        chunks.forEach(chunk -> chunk.cancel(true));
+      }
+    }
+
+    // Runs of identical queries are searched once and share the result
+    private List<BatchResult> searchChunk(int[] order, int from, int to, String[] folded) {
+      List<BatchResult> results = new ArrayList<>(to - from);
+      List<Suggestion> suggestions = null;
+      for (int i = from; i < to; i++) {
+        int position = order[i];
+        BatchQuery query = queries.get(position);
+        if (i == from || !sameSearch(order[i - 1], position, folded)) {
+          suggestions = searchService.searchDataset(index, remoteShards, folded[position], query.getLatitude(),
+              query.getLongitude(), query.getRadiusKm(), fuzzy, infix);
+        }
+        dataset.recordSearch();
+        results.add(BatchResult.of(position, query.getQ(), suggestions));
+      }
+      return results;
+    }
+
+    private boolean sameSearch(int a, int b, String[] folded) {
+      BatchQuery first = queries.get(a);
+      BatchQuery second = queries.get(b);
+      return folded[a].equals(folded[b]) && Objects.equals(first.getLatitude(), second.getLatitude())
+          && Objects.equals(first.getLongitude(), second.getLongitude())
+          && Objects.equals(first.getRadiusKm(), second.getRadiusKm());
+    }
+  }
+}
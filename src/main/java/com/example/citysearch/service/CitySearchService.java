@@ -1,71 +1,391 @@
 package com.example.citysearch.service;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.CityNotFoundException;
+import com.example.citysearch.exception.InvalidDataException;
+import com.example.citysearch.exception.JobNotFoundException;
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.loader.ChangeReport;
 import com.example.citysearch.loader.CityDataLoader;
-import com.example.citysearch.model.City;
+import com.example.citysearch.loader.Dataset;
+import com.example.citysearch.loader.IngestionJob;
+import com.example.citysearch.loader.IngestionJobs;
+import com.example.citysearch.model.CityChanges;
+import com.example.citysearch.model.CityUpsert;
+import com.example.citysearch.model.ShardHit;
 import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.store.CityStore;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.FuzzyMatches;
+import com.example.citysearch.trie.KeyNormalizer;
+import com.example.citysearch.trie.ShardedCityIndex;
 
 @Service
 public class CitySearchService {
+  // Between a full-prefix match (1.0) and a one-edit near miss (0.5)
+  private static final double INNER_WORD_TEXT_SCORE = 0.75;
+
   private final CityDataLoader dataLoader;
   private final CitySearchProperties citySearchProperties;
+  private final IngestionJobs ingestionJobs;
+  private final SearchResultCache resultCache;
+  private final SearchMetrics metrics;
+  private final ShardRouter shardRouter;
+  private final SearchSessions searchSessions;
 
-  public CitySearchService(CityDataLoader dataLoader, CitySearchProperties citySearchProperties) {
+  public CitySearchService(CityDataLoader dataLoader, CitySearchProperties citySearchProperties,
+      IngestionJobs ingestionJobs, SearchResultCache resultCache, SearchMetrics metrics, ShardRouter shardRouter,
+      SearchSessions searchSessions) {
     this.dataLoader = dataLoader;
     this.citySearchProperties = citySearchProperties;
+    this.ingestionJobs = ingestionJobs;
+    this.resultCache = resultCache;
+    this.metrics = metrics;
+    this.shardRouter = shardRouter;
+    this.searchSessions = searchSessions;
   }
 
   public List<Suggestion> search(String query, Double latitude, Double longitude) {
-    List<City> matchedCities;
-    List<Suggestion> suggestions = new ArrayList<>();
+    return search(null, query, latitude, longitude, null, false, false);
+  }
+
+  public List<Suggestion> search(String dataset, String query, Double latitude, Double longitude, Double radiusKm,
+      boolean fuzzy, boolean infix) {
+    return search(dataset, query, latitude, longitude, radiusKm, fuzzy, infix, null);
+  }
+
+  // A session, when given, names the caller's keystroke cursor in SearchSessions
+  public List<Suggestion> search(String dataset, String query, Double latitude, Double longitude, Double radiusKm,
+      boolean fuzzy, boolean infix, String session) {
+    SearchSessions.validateSession(session);
+    Dataset target = dataLoader.getDataset(dataset);
+    target.recordSearch();
+    // Folded once here; the index's own folding of an already folded key is a single scan
+    String folded = query == null ? "" : KeyNormalizer.normalize(query);
+    List<CityShard> remoteShards = shardRouter.remoteShards(target.getName());
+    if (session != null && remoteShards.isEmpty()) {
+      CityIndex index = target.getIndex();
+      int[] prefixMatches = searchSessions.prefixMatches(session, target.getName(), index, folded, latitude,
+          longitude, citySearchProperties.getLimitData());
+      if (prefixMatches != null) {
+        return searchIndex(index, folded, latitude, longitude, radiusKm, fuzzy, infix, prefixMatches);
+      }
+    }
+    // Remote shards change without bumping this node's version, so their
+    // results are not cached. Neither are radius searches: the radius is a
+    // hard filter and must be measured from the caller, not the cell centre.
+    if (!resultCache.isEnabled() || !remoteShards.isEmpty() || radiusKm != null) {
+      return searchDataset(target.getIndex(), remoteShards, folded, latitude, longitude, radiusKm, fuzzy, infix);
+    }
+
+    // The version is read before the index, so an entry is never filed under
+    // a newer version than the index it was computed from
+    Double cellLatitude = latitude == null ? null : resultCache.snap(latitude, 90);
+    Double cellLongitude = longitude == null ? null : resultCache.snap(longitude, 180);
+    SearchResultCache.Key key = new SearchResultCache.Key(target.getName(), target.getVersion(), folded,
+        cellLatitude, cellLongitude, fuzzy, infix);
+    return resultCache.get(key, () -> searchDataset(target.getIndex(), List.of(), folded, cellLatitude,
+        cellLongitude, null, fuzzy, infix));
+  }
+
+  // What another node asks of this one when it holds a shard of the dataset:
+  // this node's own cities only, never its remote shards
+  public List<ShardHit> searchShard(String dataset, String query, Double latitude, Double longitude,
+      Double radiusKm, boolean fuzzy, boolean infix) {
+    validateLocation(latitude, longitude, radiusKm);
+    Dataset target = dataLoader.getDataset(dataset);
+    target.recordSearch();
+    String folded = query == null ? "" : KeyNormalizer.normalize(query);
+    return searchDataset(target.getIndex(), List.of(), folded, latitude, longitude, radiusKm, fuzzy, infix)
+        .stream().map(ShardHit::of).toList();
+  }
+
+  // Rejects coordinates that are incomplete or out of range, and a radius
+  // without coordinates
+  public static void validateLocation(Double latitude, Double longitude, Double radiusKm) {
+    if ((latitude == null && longitude != null) || (latitude != null && longitude == null)) {
+      throw new IllegalArgumentException("Both latitude and longitude must be provided together");
+    }
+    if (latitude != null && (latitude < -90 || latitude > 90)) {
+      throw new IllegalArgumentException("Latitude must be between -90 and 90 degrees");
+    }
+    if (longitude != null && (longitude < -180 || longitude > 180)) {
+      throw new IllegalArgumentException("Longitude must be between -180 and 180 degrees");
+    }
+    if (radiusKm != null && (latitude == null || !(radiusKm > 0))) {
+      throw new IllegalArgumentException("radiusKm must be positive and needs latitude and longitude");
+    }
+  }
 
-    if (query == null || query.isEmpty()) {
-      matchedCities = dataLoader.getTrie().getAllCities(citySearchProperties.getLimitData());
+  // Searches every shard of the dataset: the in-process shards of a sharded
+  // index and any remote ones. query must already be folded.
+  List<Suggestion> searchDataset(CityIndex index, List<CityShard> remoteShards, String query, Double latitude,
+      Double longitude, Double radiusKm, boolean fuzzy, boolean infix) {
+    if (remoteShards.isEmpty() && !(index instanceof ShardedCityIndex)) {
+      return searchIndex(index, query, latitude, longitude, radiusKm, fuzzy, infix);
+    }
+    List<CityIndex> local = index instanceof ShardedCityIndex sharded ? sharded.getShards() : List.of(index);
+    List<CityShard> shards = new ArrayList<>(remoteShards);
+    for (int i = 1; i < local.size(); i++) {
+      shards.add(new LocalShard(this, local.get(i), shardRouter.executor()));
+    }
+    // Started last, on the calling thread, once the others are under way
+    shards.add(new LocalShard(this, local.get(0), Runnable::run));
+    return gather(shards, query, latitude, longitude, radiusKm, fuzzy, infix);
+  }
+
+  // Every shard returns its own best suggestions, scored the same way, and
+  // they are merged in the order one index would rank them: by match tier,
+  // then score, then population. Remote shards that fail or time out are left
+  // out of the answer and counted.
+  private List<Suggestion> gather(List<CityShard> shards, String query, Double latitude, Double longitude,
+      Double radiusKm, boolean fuzzy, boolean infix) {
+    long started = System.nanoTime();
+    List<CompletableFuture<List<Suggestion>>> pending = new ArrayList<>(shards.size());
+    for (CityShard shard : shards) {
+      CompletableFuture<List<Suggestion>> found = shard.search(query, latitude, longitude, radiusKm, fuzzy, infix);
+      pending.add(shard instanceof RemoteShard ? found.exceptionally(failure -> {
+        metrics.recordShardFailure(shard.getName());
+        return List.of();
+      }) : found);
+    }
+    List<Suggestion> hits = new ArrayList<>();
+    for (CompletableFuture<List<Suggestion>> found : pending) {
+      hits.addAll(found.join());
+    }
+    hits.sort(Comparator.comparingDouble(Suggestion::getTextScore)
+        .thenComparingDouble(Suggestion::getScore)
+        .thenComparingLong(Suggestion::getPopulation).reversed());
+    List<Suggestion> best = hits.subList(0, Math.min(hits.size(), citySearchProperties.getLimitData()));
+    metrics.recordGather(System.nanoTime() - started);
+    return best;
+  }
+
+  // query must already be folded
+  List<Suggestion> searchIndex(CityIndex trie, String query, Double latitude, Double longitude,
+      Double radiusKm, boolean fuzzy, boolean infix) {
+    return searchIndex(trie, query, latitude, longitude, radiusKm, fuzzy, infix, null);
+  }
+
+  // prefixMatches, when given, stands in for the index lookup of the query's
+  // full-prefix matches and must be ordered the way the index would order them
+  private List<Suggestion> searchIndex(CityIndex trie, String query, Double latitude, Double longitude,
+      Double radiusKm, boolean fuzzy, boolean infix, int[] prefixMatches) {
+    long started = System.nanoTime();
+    int limit = citySearchProperties.getLimitData();
+    CityStore store = trie.getStore();
+    boolean located = latitude != null && longitude != null;
+    boolean hasQuery = query != null && !query.isEmpty();
+
+    int[] matchedCities;
+    if (located && !hasQuery) {
+      // Names play no part, so the spatial index answers directly
+      matchedCities = trie.searchNearest(latitude, longitude,
+          radiusKm == null ? Double.POSITIVE_INFINITY : radiusKm, limit);
+    } else if (located) {
+      // Every prefix match shares the same text score, so the best combined
+      // scores are the nearest cities of the whole prefix subtree.
+      matchedCities = prefixMatches != null ? prefixMatches
+          : trie.searchNearestByPrefix(query, latitude, longitude, limit);
+    } else if (!hasQuery) {
+      matchedCities = trie.getAllCities(limit);
     } else {
-      matchedCities = dataLoader.getTrie().searchByPrefix(query, citySearchProperties.getLimitData());
+      matchedCities = prefixMatches != null ? prefixMatches : trie.searchByPrefix(query, limit);
+    }
+    int count = matchedCities.length;
+    double[] textScores = new double[Math.max(count, limit)];
+    // Matched a prefix of the city's folded name or of one of its alternate names
+    Arrays.fill(textScores, 0, count, hasQuery ? 1.0 : 0);
+    matchedCities = Arrays.copyOf(matchedCities, textScores.length);
+
+    // Inner-word and typo-tolerant matches only fill the slots full-prefix
+    // matches leave empty, and are ranked below them whatever their distance.
+    if (infix && hasQuery && count < limit) {
+      // Asking for count more covers the cities already matched by their full name
+      int[] inner = located
+          ? trie.searchNearestByWordPrefix(query, latitude, longitude, limit + count)
+          : trie.searchByWordPrefix(query, limit + count);
+      for (int i = 0; i < inner.length && count < limit; i++) {
+        if (!contains(matchedCities, count, inner[i])) {
+          textScores[count] = INNER_WORD_TEXT_SCORE;
+          matchedCities[count++] = inner[i];
+        }
+      }
+    }
+
+    int maxEdits = fuzzy && query != null ? maxEditsFor(query) : 0;
+    if (maxEdits > 0 && count < limit) {
+      FuzzyMatches near = trie.searchFuzzyByPrefix(query, maxEdits, limit);
+      for (int i = 0; i < near.size() && count < limit; i++) {
+        if (near.edits(i) > 0 && !contains(matchedCities, count, near.city(i))) {
+          textScores[count] = 1.0 / (1 + near.edits(i));
+          matchedCities[count++] = near.city(i);
+        }
+      }
+    }
+
+    long looked = System.nanoTime();
+    metrics.recordLookup(looked - started);
+
+    // Scored straight off the store columns into a bounded heap, with the
+    // caller's trigonometry done once; objects are only created for the winners.
+    // Matches were collected tier by tier (full prefix, inner word, then fewer
+    // edits before more), and each tier is ranked on its own and placed after
+    // the tiers above it, so location weighting only orders cities within a tier.
+    double textWeight = citySearchProperties.getTextScoreWeight();
+    double locationWeight = citySearchProperties.getLocationScoreWeight();
+    GeoMath.Origin origin = located ? GeoMath.origin(latitude, longitude) : null;
+    ScoreHeap best = new ScoreHeap(limit);
+    int[] winners = new int[limit];
+    double[] winnerScores = new double[limit];
+    double[] winnerTextScores = new double[limit];
+    int found = 0;
+    long sorting = 0;
+    for (int tierStart = 0, i = 0; i < count; tierStart = i) {
+      for (; i < count && textScores[i] == textScores[tierStart]; i++) {
+        int city = matchedCities[i];
+        double locationScore = 0;
+        if (located) {
+          double distance = store.distanceKm(city, origin);
+          if (radiusKm != null && distance > radiusKm) {
+            continue;
+          }
+          locationScore = calculateProximityScore(distance);
+        }
+        best.offer(city, textScores[i] * textWeight + locationScore * locationWeight);
+      }
+      long sortStarted = System.nanoTime();
+      int ranked = best.drain(winners, winnerScores, found);
+      Arrays.fill(winnerTextScores, found, found + ranked, textScores[tierStart]);
+      found += ranked;
+      sorting += System.nanoTime() - sortStarted;
     }
+    metrics.recordSort(sorting);
 
-    for (City city : matchedCities) {
-      double textScore = (query == null || query.isEmpty()) ? 0 : calculateTextScore(query, city.getName());
-      double locationScore = (latitude != null && longitude != null)
-          ? calculateProximityScore(latitude, longitude, city.getLatitude(), city.getLongitude())
-          : 0;
-      double totalScore = (textScore * citySearchProperties.getTextScoreWeight())
-          + (locationScore * citySearchProperties.getLocationScoreWeight());
-      suggestions.add(new Suggestion(city.getName(), city.getLatitude(), city.getLongitude(), totalScore));
+    Suggestion[] suggestions = new Suggestion[found];
+    for (int i = 0; i < found; i++) {
+      suggestions[i] = new Suggestion(store, winners[i], winnerScores[i], winnerTextScores[i]);
     }
+    metrics.recordScoring(System.nanoTime() - looked - sorting);
+    return Arrays.asList(suggestions);
+  }
+
+  public IngestionJob submitUpload(String dataset, MultipartFile file) throws IOException {
+    return ingestionJobs.submit(dataset, file);
+  }
 
-    suggestions.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
-    return suggestions;
+  // Every change is checked before any is applied, so a bad one changes nothing
+  public ChangeReport applyChanges(String dataset, CityChanges changes) {
+    if (changes.getUpserts().isEmpty() && changes.getDeletions().isEmpty()) {
+      throw new IllegalArgumentException("No upserts or deletions given");
+    }
+    for (int i = 0; i < changes.getUpserts().size(); i++) {
+      try {
+        validateUpsert(changes.getUpserts().get(i));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Upsert " + i + ": " + e.getMessage());
+      }
+    }
+    for (Long geonameId : changes.getDeletions()) {
+      if (geonameId == null || geonameId <= 0) {
+        throw new IllegalArgumentException("GeoNames ids to delete must be positive, got " + geonameId);
+      }
+    }
+    try {
+      return dataLoader.applyChanges(dataset, changes.getUpserts(), changes.getDeletions());
+    } catch (InvalidDataException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
   }
 
-  public void loadFromMultipartFile(MultipartFile file) throws IOException {
-    dataLoader.loadFromMultipartFile(file);
+  public ChangeReport deleteCity(String dataset, long geonameId) {
+    ChangeReport report = applyChanges(dataset, new CityChanges(List.of(), List.of(geonameId)));
+    if (!report.notFound().isEmpty()) {
+      throw new CityNotFoundException("No city with GeoNames id " + geonameId);
+    }
+    return report;
+  }
+
+  private static void validateUpsert(CityUpsert upsert) {
+    if (upsert == null) {
+      throw new IllegalArgumentException("Missing city");
+    }
+    if (upsert.getGeonameId() == null || upsert.getGeonameId() <= 0) {
+      throw new IllegalArgumentException("geonameId must be positive");
+    }
+    if (upsert.getName() == null || upsert.getName().isBlank()) {
+      throw new IllegalArgumentException("name is required");
+    }
+    if (upsert.getLatitude() == null || upsert.getLongitude() == null) {
+      throw new IllegalArgumentException("latitude and longitude are required");
+    }
+    validateLocation(upsert.getLatitude(), upsert.getLongitude(), null);
+    if (upsert.getPopulation() < 0) {
+      throw new IllegalArgumentException("population must not be negative");
+    }
   }
 
-  private double calculateTextScore(String query, String cityName) {
-    query = query.toLowerCase();
-    cityName = cityName.toLowerCase();
-    return cityName.startsWith(query) ? 1.0 : 0.0;
+  public List<Dataset> getDatasets() {
+    return dataLoader.getDatasets();
   }
 
-  private double calculateProximityScore(double lat1, double lon1, double lat2, double lon2) {
-    final int R = 6371;
+  List<CityShard> getRemoteShards(String dataset) {
+    return shardRouter.remoteShards(dataset);
+  }
+
+  public SearchResultCache getResultCache() {
+    return resultCache;
+  }
+
+  public void evictDataset(String dataset) {
+    dataLoader.evict(dataset);
+  }
+
+  public IngestionJob getUploadJob(String jobId) {
+    IngestionJob job = ingestionJobs.get(jobId);
+    if (job == null) {
+      throw new JobNotFoundException("No upload job with id " + jobId);
+    }
+    return job;
+  }
+
+  public long writeSnapshot() throws IOException {
+    String snapshotPath = citySearchProperties.getSnapshotPath();
+    if (snapshotPath == null || snapshotPath.isEmpty()) {
+      throw new IllegalArgumentException("No snapshot path configured (citysearch.snapshotPath)");
+    }
+    return dataLoader.writeSnapshot(Path.of(snapshotPath));
+  }
+
+  // One edit for 3-5 characters and two from 6 on, capped by configuration;
+  // shorter prefixes would match nearly everything within a single edit
+  private int maxEditsFor(String query) {
+    int length = query.length();
+    int edits = length < 3 ? 0 : length < 6 ? 1 : 2;
+    return Math.min(edits, citySearchProperties.getFuzzyMaxEdits());
+  }
+
+  private static boolean contains(int[] cities, int count, int city) {
+    for (int i = 0; i < count; i++) {
+      if (cities[i] == city) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    double latDistance = Math.toRadians(lat2 - lat1);
-    double lonDistance = Math.toRadians(lon2 - lon1);
-    double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-            * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-    double distance = R * c;
+  private double calculateProximityScore(double distance) {
     double maxDistance = 20000;
     return Math.max(0.0, Math.min(1.0, 1.0 - (distance / maxDistance)));
   }
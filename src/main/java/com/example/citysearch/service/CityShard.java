@@ -0,0 +1,17 @@
+package com.example.citysearch.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.example.citysearch.model.Suggestion;
+
+// One part of a dataset that answers a search on its own: a shard of this
+// node's index or another citysearch node. Suggestions come back best first,
+// scored the same way everywhere, so the best of all shards can be merged.
+public interface CityShard {
+  String getName();
+
+  // query must already be folded
+  CompletableFuture<List<Suggestion>> search(String query, Double latitude, Double longitude, Double radiusKm,
+      boolean fuzzy, boolean infix);
+}
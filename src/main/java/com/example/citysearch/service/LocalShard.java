@@ -0,0 +1,34 @@
+package com.example.citysearch.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.trie.CityIndex;
+
+// One index of this node, searched on the given executor; Runnable::run
+// searches on the calling thread
+final class LocalShard implements CityShard {
+  private final CitySearchService searchService;
+  private final CityIndex index;
+  private final Executor executor;
+
+  LocalShard(CitySearchService searchService, CityIndex index, Executor executor) {
+    this.searchService = searchService;
+    this.index = index;
+    this.executor = executor;
+  }
+
+  @Override
+  public String getName() {
+    return "local";
+  }
+
+  @Override
+  public CompletableFuture<List<Suggestion>> search(String query, Double latitude, Double longitude, Double radiusKm,
+      boolean fuzzy, boolean infix) {
+    return CompletableFuture.supplyAsync(
+        () -> searchService.searchIndex(index, query, latitude, longitude, radiusKm, fuzzy, infix), executor);
+  }
+}
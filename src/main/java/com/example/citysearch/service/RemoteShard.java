@@ -0,0 +1,74 @@
+package com.example.citysearch.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.example.citysearch.model.ShardHit;
+import com.example.citysearch.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+// Another citysearch node holding part of a dataset. It is asked through its
+// shard endpoint, which answers from that node's own data only, so shards
+// never fan out to each other. The call is asynchronous and bounded by timeout.
+public class RemoteShard implements CityShard {
+  private final HttpClient client;
+  private final ObjectReader reader;
+  private final String baseUrl;
+  private final String dataset;
+  private final Duration timeout;
+
+  public RemoteShard(HttpClient client, ObjectMapper objectMapper, String baseUrl, String dataset, Duration timeout) {
+    this.client = client;
+    this.reader = objectMapper.readerFor(ShardHit[].class);
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    this.dataset = dataset;
+    this.timeout = timeout;
+  }
+
+  @Override
+  public String getName() {
+    return baseUrl;
+  }
+
+  @Override
+  public CompletableFuture<List<Suggestion>> search(String query, Double latitude, Double longitude, Double radiusKm,
+      boolean fuzzy, boolean infix) {
+    StringBuilder uri = new StringBuilder(baseUrl).append("/api/v1/suggestions/shard?dataset=")
+        .append(encode(dataset)).append("&q=").append(encode(query));
+    if (latitude != null) {
+      uri.append("&latitude=").append(latitude).append("&longitude=").append(longitude);
+    }
+    if (radiusKm != null) {
+      uri.append("&radiusKm=").append(radiusKm);
+    }
+    uri.append("&fuzzy=").append(fuzzy).append("&infix=").append(infix);
+    HttpRequest request = HttpRequest.newBuilder(URI.create(uri.toString())).timeout(timeout)
+        .header("Accept", "application/json").GET().build();
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+      if (response.statusCode() != 200) {
+        throw new IllegalStateException("Shard " + baseUrl + " answered " + response.statusCode());
+      }
+      try {
+        ShardHit[] hits = reader.readValue(response.body());
+        return Arrays.stream(hits).map(ShardHit::toSuggestion).toList();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value == null ? "" : value, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,100 @@
+package com.example.citysearch.service;
+
+// The best k (city, score) pairs offered so far, kept as a min-heap on score
+// in primitive arrays: offering a candidate allocates nothing and only the
+// winners are ever ordered. Equal scores keep the order they were offered in.
+final class ScoreHeap {
+  private final int[] cities;
+  private final double[] scores;
+  private final int[] offers;
+  private int size;
+  private int offered;
+
+  ScoreHeap(int capacity) {
+    cities = new int[capacity];
+    scores = new double[capacity];
+    offers = new int[capacity];
+  }
+
+  int size() {
+    return size;
+  }
+
+  void offer(int city, double score) {
+    int offer = offered++;
+    if (size < cities.length) {
+      set(size, city, score, offer);
+      siftUp(size++);
+    } else if (size > 0 && (score > scores[0] || (score == scores[0] && offer < offers[0]))) {
+      set(0, city, score, offer);
+      siftDown(0);
+    }
+  }
+
+  // Empties the heap into the arrays, best first, and returns how many were written
+  int drain(int[] cityOut, double[] scoreOut) {
+    return drain(cityOut, scoreOut, 0);
+  }
+
+  // As drain, writing from offset on, so the heap can rank one tier after another
+  int drain(int[] cityOut, double[] scoreOut, int offset) {
+    int count = size;
+    for (int i = count - 1; i >= 0; i--) {
+      cityOut[offset + i] = cities[0];
+      scoreOut[offset + i] = scores[0];
+      size--;
+      if (size > 0) {
+        set(0, cities[size], scores[size], offers[size]);
+        siftDown(0);
+      }
+    }
+    offered = 0;
+    return count;
+  }
+
+  private boolean worse(int a, int b) {
+    return scores[a] < scores[b] || (scores[a] == scores[b] && offers[a] > offers[b]);
+  }
+
+  private void siftUp(int i) {
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (!worse(i, parent)) {
+        return;
+      }
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) {
+        return;
+      }
+      if (child + 1 < size && worse(child + 1, child)) {
+        child++;
+      }
+      if (!worse(child, i)) {
+        return;
+      }
+      swap(i, child);
+      i = child;
+    }
+  }
+
+  private void set(int i, int city, double score, int offer) {
+    cities[i] = city;
+    scores[i] = score;
+    offers[i] = offer;
+  }
+
+  private void swap(int a, int b) {
+    int city = cities[a];
+    double score = scores[a];
+    int offer = offers[a];
+    set(a, cities[b], scores[b], offers[b]);
+    set(b, city, score, offer);
+  }
+}
@@ -0,0 +1,135 @@
+package com.example.citysearch.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.exception.DatasetNotFoundException;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.Dataset;
+import com.example.citysearch.loader.IngestionReport;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+// Meters for the search path, the live indexes and ingestion. Stage timers are
+// created once and recorded with plain nanosecond durations, which only bumps
+// counters and fixed histogram buckets, so timing a request allocates nothing.
+@Component
+public class SearchMetrics {
+  private final MeterRegistry registry;
+  private final CityDataLoader dataLoader;
+  private final Timer lookup;
+  private final Timer scoring;
+  private final Timer sort;
+  private final Timer serialization;
+  private final Timer gather;
+  // Dataset each name's gauges were registered for, and those gauges
+  private final Map<String, Dataset> gaugedDatasets = new HashMap<>();
+  private final Map<String, List<Meter>> datasetGauges = new HashMap<>();
+
+  public SearchMetrics(MeterRegistry registry, CityDataLoader dataLoader, SearchResultCache resultCache) {
+    this.registry = registry;
+    this.dataLoader = dataLoader;
+    this.lookup = stageTimer("lookup");
+    this.scoring = stageTimer("scoring");
+    this.sort = stageTimer("sort");
+    this.serialization = stageTimer("serialization");
+    this.gather = stageTimer("gather");
+
+    if (resultCache.isEnabled()) {
+      CaffeineCacheMetrics.monitor(registry, resultCache.cache(), "citysearch.results");
+    }
+    for (Dataset dataset : dataLoader.getDatasets()) {
+      refreshGauges(dataset.getName());
+    }
+    dataLoader.addChangeListener(this::refreshGauges);
+    dataLoader.addIngestionListener(this::recordIngestion);
+  }
+
+  private Timer stageTimer(String stage) {
+    return Timer.builder("citysearch.search.stage")
+        .description("Time spent in one stage of answering a suggestion request")
+        .tag("stage", stage)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofNanos(500))
+        .maximumExpectedValue(Duration.ofSeconds(1))
+        .register(registry);
+  }
+
+  public void recordLookup(long nanos) {
+    lookup.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordScoring(long nanos) {
+    scoring.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordSort(long nanos) {
+    sort.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordSerialization(long nanos) {
+    serialization.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  // Waiting on every shard of a sharded search and merging their suggestions
+  public void recordGather(long nanos) {
+    gather.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordShardFailure(String shard) {
+    registry.counter("citysearch.shard.failures", "shard", shard).increment();
+  }
+
+  // Rows per second is the rate of the rows counter
+  private void recordIngestion(String dataset, IngestionReport report) {
+    registry.counter("citysearch.ingestion.rows", "dataset", dataset, "outcome", "parsed")
+        .increment(report.rowsParsed());
+    registry.counter("citysearch.ingestion.rows", "dataset", dataset, "outcome", "rejected")
+        .increment(report.rowsRejected());
+    registry.timer("citysearch.ingestion", "dataset", dataset).record(report.elapsedMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  // Gauges read the live index on every scrape. They follow the Dataset
+  // object, so a dataset evicted and created again gets fresh ones.
+  private synchronized void refreshGauges(String name) {
+    Dataset current;
+    try {
+      current = dataLoader.getDataset(name);
+    } catch (DatasetNotFoundException e) {
+      current = null;
+    }
+    if (current == gaugedDatasets.get(name)) {
+      return;
+    }
+    List<Meter> previous = datasetGauges.remove(name);
+    if (previous != null) {
+      previous.forEach(registry::remove);
+    }
+    gaugedDatasets.remove(name);
+    if (current == null) {
+      return;
+    }
+
+    Tags tags = Tags.of("dataset", name);
+    datasetGauges.put(name, List.of(
+        Gauge.builder("citysearch.index.cities", current, dataset -> dataset.getIndex().getSize())
+            .description("Cities in the live index").tags(tags).register(registry),
+        Gauge.builder("citysearch.index.nodes", current, dataset -> dataset.getIndex().getNodeCount())
+            .description("Trie nodes in the live index").tags(tags).register(registry),
+        Gauge.builder("citysearch.index.memory", current, dataset -> dataset.getIndex().getMemoryBytes())
+            .description("Estimated footprint of the live index").baseUnit("bytes").tags(tags).register(registry),
+        Gauge.builder("citysearch.index.version", current, Dataset::getVersion)
+            .description("Number of indexes published for the dataset").tags(tags).register(registry)));
+    gaugedDatasets.put(name, current);
+  }
+}
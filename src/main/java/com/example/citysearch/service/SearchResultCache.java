@@ -0,0 +1,71 @@
+package com.example.citysearch.service;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.model.Suggestion;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+// Bounded cache of finished suggestion lists. Caffeine's W-TinyLFU policy only
+// admits a new entry over the eviction victim if it is requested more often,
+// so the few hot short prefixes stay resident while one-off queries churn.
+// Keys carry the dataset version, and entries of a dataset are dropped as
+// soon as a new index for it goes live.
+@Component
+public class SearchResultCache {
+  private final Cache<Key, List<Suggestion>> cache;
+  private final double cellDegrees;
+
+  public SearchResultCache(CitySearchProperties citySearchProperties, CityDataLoader dataLoader) {
+    this.cellDegrees = citySearchProperties.getResultCacheCellDegrees();
+    this.cache = citySearchProperties.getResultCacheSize() <= 0 ? null
+        : Caffeine.newBuilder().maximumSize(citySearchProperties.getResultCacheSize()).recordStats().build();
+    dataLoader.addChangeListener(this::invalidate);
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  // Requests in the same cell share one entry, computed for the cell centre
+  public double snap(double coordinate, double range) {
+    if (cellDegrees <= 0) {
+      return coordinate;
+    }
+    double centre = (Math.floor(coordinate / cellDegrees) + 0.5) * cellDegrees;
+    return Math.max(-range, Math.min(range, centre));
+  }
+
+  public List<Suggestion> get(Key key, Supplier<List<Suggestion>> search) {
+    return cache.get(key, k -> List.copyOf(search.get()));
+  }
+
+  public void invalidate(String dataset) {
+    if (cache != null) {
+      cache.asMap().keySet().removeIf(key -> key.dataset().equals(dataset));
+    }
+  }
+
+  public long size() {
+    return cache == null ? 0 : cache.estimatedSize();
+  }
+
+  public CacheStats stats() {
+    return cache == null ? CacheStats.empty() : cache.stats();
+  }
+
+  Cache<Key, List<Suggestion>> cache() {
+    return cache;
+  }
+
+  // query is the folded query; latitude and longitude are already snapped
+  public record Key(String dataset, long version, String query, Double latitude, Double longitude,
+      boolean fuzzy, boolean infix) {
+  }
+}
@@ -0,0 +1,179 @@
+package com.example.citysearch.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.store.CityStore;
+import com.example.citysearch.trie.CityIndex;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+// Keystroke cursors for autocomplete sessions. Once a typed prefix has at most
+// citysearch.sessionMaxKeys keys under it, the session's cursor keeps all of
+// them with their cities. Every later query of the session that still starts
+// with that prefix, whether the next keystroke or a backspace back to it, then
+// filters the cursor instead of searching the index, and typing past the last
+// match costs nothing. Cursors are weighed by their keys, bounded in total by
+// citysearch.sessionMemory, dropped after citysearch.sessionIdleSeconds idle
+// and dropped for a dataset as soon as a new index for it goes live.
+@Component
+public class SearchSessions {
+  private static final Pattern SESSION = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  private final Cache<String, Cursor> cursors;
+  private final int maxKeys;
+
+  public SearchSessions(CitySearchProperties citySearchProperties, CityDataLoader dataLoader) {
+    this.maxKeys = citySearchProperties.getSessionMaxKeys();
+    long memory = citySearchProperties.getSessionMemory().toBytes();
+    this.cursors = memory <= 0 || maxKeys <= 0 ? null : Caffeine.newBuilder()
+        .maximumWeight(memory)
+        .<String, Cursor>weigher((session, cursor) -> cursor.weight())
+        .expireAfterAccess(Duration.ofSeconds(citySearchProperties.getSessionIdleSeconds()))
+        .build();
+    dataLoader.addChangeListener(this::invalidate);
+  }
+
+  public boolean isEnabled() {
+    return cursors != null;
+  }
+
+  public static void validateSession(String session) {
+    if (session != null && !SESSION.matcher(session).matches()) {
+      throw new IllegalArgumentException("session must be 1-64 letters, digits, '-' or '_'");
+    }
+  }
+
+  // The first limit distinct cities with a key starting with the folded query,
+  // ordered as the index orders them: nearest first when located, otherwise by
+  // static rank. Null when the session has no cursor covering the query and
+  // the query has too many keys under it to start one.
+  int[] prefixMatches(String session, String dataset, CityIndex index, String query, Double latitude,
+      Double longitude, int limit) {
+    if (cursors == null || query.isEmpty()) {
+      return null;
+    }
+    Cursor cursor = cursors.getIfPresent(session);
+    if (cursor == null || cursor.index != index || !query.startsWith(cursor.prefix)) {
+      cursor = collect(dataset, index, query);
+      if (cursor == null) {
+        cursors.invalidate(session);
+        return null;
+      }
+      cursors.put(session, cursor);
+    }
+    return cursor.matches(query, latitude, longitude, limit);
+  }
+
+  // Keys are counted before any is copied, so a prefix too wide for a cursor
+  // costs one bounded walk and allocates nothing
+  private Cursor collect(String dataset, CityIndex index, String prefix) {
+    int[] count = new int[1];
+    if (!index.forEachKeyWithPrefix(prefix, (key, city) -> ++count[0] <= maxKeys)) {
+      return null;
+    }
+    String[] keys = new String[count[0]];
+    int[] cities = new int[count[0]];
+    int[] next = new int[1];
+    index.forEachKeyWithPrefix(prefix, (key, city) -> {
+      keys[next[0]] = key.toString();
+      cities[next[0]++] = city;
+      return true;
+    });
+    return Cursor.of(dataset, index, prefix, keys, cities);
+  }
+
+  public void invalidate(String dataset) {
+    if (cursors != null) {
+      cursors.asMap().values().removeIf(cursor -> cursor.dataset.equals(dataset));
+    }
+  }
+
+  public long size() {
+    return cursors == null ? 0 : cursors.estimatedSize();
+  }
+
+  // Every key under prefix in one index. Each city appears once, in static
+  // rank order, with its keys at keys[keyStarts[i]] up to keys[keyStarts[i + 1]].
+  private record Cursor(String dataset, CityIndex index, String prefix, int[] cities, int[] keyStarts,
+      String[] keys) {
+
+    // Sorted once here so that keystrokes only filter
+    static Cursor of(String dataset, CityIndex index, String prefix, String[] keys, int[] cities) {
+      CityStore store = index.getStore();
+      Integer[] order = new Integer[keys.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> {
+        int cmp = store.compareRank(cities[a], cities[b]);
+        return cmp != 0 ? cmp : Integer.compare(cities[a], cities[b]);
+      });
+      String[] sortedKeys = new String[keys.length];
+      int[] uniqueCities = new int[keys.length];
+      int[] keyStarts = new int[keys.length + 1];
+      int count = 0;
+      for (int i = 0; i < order.length; i++) {
+        if (count == 0 || uniqueCities[count - 1] != cities[order[i]]) {
+          keyStarts[count] = i;
+          uniqueCities[count++] = cities[order[i]];
+        }
+        sortedKeys[i] = keys[order[i]];
+      }
+      keyStarts[count] = keys.length;
+      return new Cursor(dataset, index, prefix, Arrays.copyOf(uniqueCities, count),
+          Arrays.copyOf(keyStarts, count + 1), sortedKeys);
+    }
+
+    int weight() {
+      int bytes = 64 + 8 * cities.length;
+      for (String key : keys) {
+        bytes += 40 + 2 * key.length();
+      }
+      return bytes;
+    }
+
+    // Cities are already in rank order, so an unlocated query takes the first
+    // matches; a located one keeps the nearest in a heap, measuring each
+    // distance once, with equal distances left in rank order
+    int[] matches(String query, Double latitude, Double longitude, int limit) {
+      boolean located = latitude != null && longitude != null;
+      CityStore store = index.getStore();
+      GeoMath.Origin origin = located ? GeoMath.origin(latitude, longitude) : null;
+      ScoreHeap nearest = located ? new ScoreHeap(limit) : null;
+      int[] found = new int[located ? 0 : Math.min(limit, cities.length)];
+      int count = 0;
+      for (int i = 0; i < cities.length && (located || count < found.length); i++) {
+        if (!matches(i, query)) {
+          continue;
+        }
+        if (located) {
+          nearest.offer(cities[i], -store.distanceKm(cities[i], origin));
+        } else {
+          found[count++] = cities[i];
+        }
+      }
+      if (!located) {
+        return Arrays.copyOf(found, count);
+      }
+      int[] winners = new int[nearest.size()];
+      nearest.drain(winners, new double[winners.length]);
+      return winners;
+    }
+
+    private boolean matches(int city, String query) {
+      for (int k = keyStarts[city]; k < keyStarts[city + 1]; k++) {
+        if (keys[k].startsWith(query)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
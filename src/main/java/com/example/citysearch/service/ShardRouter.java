@@ -0,0 +1,52 @@
+package com.example.citysearch.service;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.stereotype.Component;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+// Where the shards of a dataset live besides this node's own index: the
+// in-process shards of a sharded index run on a pool sized to the cores, and
+// the nodes listed under citysearch.remoteShards.<dataset> are asked over HTTP.
+@Component
+public class ShardRouter {
+  private final ExecutorService executor;
+  private final Map<String, List<CityShard>> remoteShards = new HashMap<>();
+
+  public ShardRouter(CitySearchProperties citySearchProperties, ObjectMapper objectMapper) {
+    this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+      Thread thread = new Thread(runnable, "shard-search");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Duration timeout = Duration.ofMillis(citySearchProperties.getShardTimeoutMillis());
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(timeout)
+        .build();
+    citySearchProperties.getRemoteShards().forEach((dataset, urls) -> remoteShards.put(dataset,
+        urls.stream().<CityShard>map(url -> new RemoteShard(client, objectMapper, url, dataset, timeout)).toList()));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  Executor executor() {
+    return executor;
+  }
+
+  public List<CityShard> remoteShards(String dataset) {
+    return remoteShards.getOrDefault(dataset, List.of());
+  }
+}
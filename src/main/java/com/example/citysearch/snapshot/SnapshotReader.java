@@ -0,0 +1,87 @@
+package com.example.citysearch.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Reads what SnapshotWriter wrote. Arrays come back as views over the source
+// buffer, so a memory-mapped snapshot is used in place without copying.
+public class SnapshotReader {
+  private final ByteBuffer source;
+  private int position = 0;
+
+  public SnapshotReader(ByteBuffer source) {
+    this.source = source.duplicate().order(SnapshotWriter.ORDER);
+  }
+
+  public int readInt() throws IOException {
+    int value = source.getInt(check(Integer.BYTES));
+    position += Integer.BYTES;
+    return value;
+  }
+
+  public long readLong() throws IOException {
+    long value = source.getLong(check(Long.BYTES));
+    position += Long.BYTES;
+    return value;
+  }
+
+  public String readString() throws IOException {
+    int length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    ByteBuffer bytes = bytes(length);
+    byte[] value = new byte[length];
+    bytes.get(0, value);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  public ByteBuffer bytes(int count) throws IOException {
+    return slice(count);
+  }
+
+  public CharBuffer chars(int count) throws IOException {
+    return slice(count * Character.BYTES).asCharBuffer();
+  }
+
+  public ShortBuffer shorts(int count) throws IOException {
+    return slice(count * Short.BYTES).asShortBuffer();
+  }
+
+  public IntBuffer ints(int count) throws IOException {
+    return slice(count * Integer.BYTES).asIntBuffer();
+  }
+
+  public LongBuffer longs(int count) throws IOException {
+    return slice(count * Long.BYTES).asLongBuffer();
+  }
+
+  public FloatBuffer floats(int count) throws IOException {
+    return slice(count * Float.BYTES).asFloatBuffer();
+  }
+
+  public DoubleBuffer doubles(int count) throws IOException {
+    return slice(count * Double.BYTES).asDoubleBuffer();
+  }
+
+  private ByteBuffer slice(int length) throws IOException {
+    position = (position + 7) & ~7;
+    ByteBuffer slice = source.slice(check(length), length).order(SnapshotWriter.ORDER);
+    position += length;
+    return slice;
+  }
+
+  private int check(int length) throws IOException {
+    if (length < 0 || position + length > source.limit()) {
+      throw new IOException("Snapshot is truncated or corrupt");
+    }
+    return position;
+  }
+}
@@ -0,0 +1,129 @@
+package com.example.citysearch.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Sequential little-endian writer for index snapshots. Every array starts on an
+// 8-byte boundary so SnapshotReader can hand out aligned typed views.
+public class SnapshotWriter {
+  public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ORDER);
+  private long position = 0;
+
+  public SnapshotWriter(WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  public long position() {
+    return position + buffer.position();
+  }
+
+  public void writeInt(int value) throws IOException {
+    ensure(Integer.BYTES);
+    buffer.putInt(value);
+  }
+
+  public void writeLong(long value) throws IOException {
+    ensure(Long.BYTES);
+    buffer.putLong(value);
+  }
+
+  public void writeString(String value) throws IOException {
+    if (value == null) {
+      writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeInt(bytes.length);
+    writeBytes(ByteBuffer.wrap(bytes), bytes.length);
+  }
+
+  public void writeBytes(ByteBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Byte.BYTES);
+      buffer.put(values.get(i));
+    }
+  }
+
+  public void writeChars(CharBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Character.BYTES);
+      buffer.putChar(values.get(i));
+    }
+  }
+
+  public void writeShorts(ShortBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Short.BYTES);
+      buffer.putShort(values.get(i));
+    }
+  }
+
+  public void writeInts(IntBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Integer.BYTES);
+      buffer.putInt(values.get(i));
+    }
+  }
+
+  public void writeLongs(LongBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Long.BYTES);
+      buffer.putLong(values.get(i));
+    }
+  }
+
+  public void writeFloats(FloatBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Float.BYTES);
+      buffer.putFloat(values.get(i));
+    }
+  }
+
+  public void writeDoubles(DoubleBuffer values, int count) throws IOException {
+    align();
+    for (int i = 0; i < count; i++) {
+      ensure(Double.BYTES);
+      buffer.putDouble(values.get(i));
+    }
+  }
+
+  public void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void align() throws IOException {
+    int padding = (int) (-position() & 7);
+    ensure(padding);
+    for (int i = 0; i < padding; i++) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  private void ensure(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+}
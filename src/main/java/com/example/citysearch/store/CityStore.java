@@ -0,0 +1,454 @@
+package com.example.citysearch.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.model.City;
+import com.example.citysearch.snapshot.SnapshotReader;
+import com.example.citysearch.snapshot.SnapshotWriter;
+
+// Column-oriented city attributes addressed by a dense int id. The index only
+// stores ids, so a loaded dataset is a few primitive columns rather than one
+// object graph per city; objects are created for the returned results only.
+// Columns are buffers so the same code serves heap arrays and mapped snapshots.
+// A store can also be two stores read as one, sharing both without a copy.
+public class CityStore {
+  private final int size;
+  private final ByteBuffer nameBytes;
+  private final IntBuffer nameOffsets;
+  private final DoubleBuffer latitudes;
+  private final DoubleBuffer longitudes;
+  // Derived from latitudes so distance scoring skips one cos per city
+  private final DoubleBuffer cosLatitudes;
+  private final LongBuffer populations;
+  private final CharBuffer countries;
+  private final IntBuffer admin1Codes;
+  private final String[] admin1Values;
+  // Source ids (GeoNames ids for GeoNames dumps), 0 where the row had none
+  private final LongBuffer geonameIds;
+  // Each city's response fields, JSON encoded once when the store is built
+  private final ByteBuffer jsonBytes;
+  private final IntBuffer jsonOffsets;
+  // Ids from headSize on belong to tail, offset by headSize; null for a plain store
+  private final int headSize;
+  private final CityStore tail;
+
+  private CityStore(int size, ByteBuffer nameBytes, IntBuffer nameOffsets, DoubleBuffer latitudes,
+      DoubleBuffer longitudes, DoubleBuffer cosLatitudes, LongBuffer populations, CharBuffer countries, IntBuffer admin1Codes,
+      String[] admin1Values, LongBuffer geonameIds, ByteBuffer jsonBytes, IntBuffer jsonOffsets) {
+    this.size = size;
+    this.nameBytes = nameBytes;
+    this.nameOffsets = nameOffsets;
+    this.latitudes = latitudes;
+    this.longitudes = longitudes;
+    this.cosLatitudes = cosLatitudes;
+    this.populations = populations;
+    this.countries = countries;
+    this.admin1Codes = admin1Codes;
+    this.admin1Values = admin1Values;
+    this.geonameIds = geonameIds;
+    this.jsonBytes = jsonBytes;
+    this.jsonOffsets = jsonOffsets;
+    this.headSize = size;
+    this.tail = null;
+  }
+
+  private CityStore(CityStore head, CityStore tail) {
+    this.size = head.headSize + tail.size;
+    this.nameBytes = head.nameBytes;
+    this.nameOffsets = head.nameOffsets;
+    this.latitudes = head.latitudes;
+    this.longitudes = head.longitudes;
+    this.cosLatitudes = head.cosLatitudes;
+    this.populations = head.populations;
+    this.countries = head.countries;
+    this.admin1Codes = head.admin1Codes;
+    this.admin1Values = head.admin1Values;
+    this.geonameIds = head.geonameIds;
+    this.jsonBytes = head.jsonBytes;
+    this.jsonOffsets = head.jsonOffsets;
+    this.headSize = head.headSize;
+    this.tail = tail;
+  }
+
+  // The cities of head followed by those of tail, which keep their order.
+  // A concatenated head is re-chained so every link starts with plain columns.
+  public static CityStore concat(CityStore head, CityStore tail) {
+    return new CityStore(head, head.tail == null ? tail : concat(head.tail, tail));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getMemoryBytes() {
+    long bytes = nameBytes.capacity() + 4L * nameOffsets.capacity() + 8L * latitudes.capacity()
+        + 8L * longitudes.capacity() + 8L * cosLatitudes.capacity() + 8L * populations.capacity() + 2L * countries.capacity()
+        + 4L * admin1Codes.capacity() + 8L * geonameIds.capacity() + jsonBytes.capacity()
+        + 4L * jsonOffsets.capacity();
+    for (String value : admin1Values) {
+      bytes += value == null ? 0 : 40 + value.length();
+    }
+    return tail == null ? bytes : bytes + tail.getMemoryBytes();
+  }
+
+  public String getName(int id) {
+    if (id >= headSize) {
+      return tail.getName(id - headSize);
+    }
+    int start = nameOffsets.get(id);
+    int length = nameOffsets.get(id + 1) - start;
+    if (nameBytes.hasArray()) {
+      return new String(nameBytes.array(), nameBytes.arrayOffset() + start, length, StandardCharsets.UTF_8);
+    }
+    byte[] bytes = new byte[length];
+    nameBytes.get(start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public double getLatitude(int id) {
+    return id < headSize ? latitudes.get(id) : tail.getLatitude(id - headSize);
+  }
+
+  public double getLongitude(int id) {
+    return id < headSize ? longitudes.get(id) : tail.getLongitude(id - headSize);
+  }
+
+  public double distanceKm(int id, GeoMath.Origin origin) {
+    if (id >= headSize) {
+      return tail.distanceKm(id - headSize, origin);
+    }
+    return origin.distanceKm(latitudes.get(id), longitudes.get(id), cosLatitudes.get(id));
+  }
+
+  public long getPopulation(int id) {
+    return id < headSize ? populations.get(id) : tail.getPopulation(id - headSize);
+  }
+
+  public String getCountry(int id) {
+    if (id >= headSize) {
+      return tail.getCountry(id - headSize);
+    }
+    char first = countries.get(2 * id);
+    if (first == 0) {
+      return null;
+    }
+    char second = countries.get(2 * id + 1);
+    return second == 0 ? String.valueOf(first) : new String(new char[] { first, second });
+  }
+
+  public String getAdmin1(int id) {
+    return id < headSize ? admin1Values[admin1Codes.get(id)] : tail.getAdmin1(id - headSize);
+  }
+
+  public long getGeonameId(int id) {
+    return id < headSize ? geonameIds.get(id) : tail.getGeonameId(id - headSize);
+  }
+
+  // Length of the city's SuggestionJson fields
+  public int getJsonLength(int id) {
+    return id < headSize ? jsonOffsets.get(id + 1) - jsonOffsets.get(id) : tail.getJsonLength(id - headSize);
+  }
+
+  // Appends the city's SuggestionJson fields; target needs getJsonLength(id) bytes left
+  public void putJson(int id, ByteBuffer target) {
+    if (id >= headSize) {
+      tail.putJson(id - headSize, target);
+      return;
+    }
+    int start = jsonOffsets.get(id);
+    int length = jsonOffsets.get(id + 1) - start;
+    target.put(target.position(), jsonBytes, start, length);
+    target.position(target.position() + length);
+  }
+
+  public City getCity(int id) {
+    return new City(getName(id), getLatitude(id), getLongitude(id), getPopulation(id), getCountry(id),
+        getAdmin1(id), getGeonameId(id));
+  }
+
+  // Static rank: most populated first, then by name and id so the order is total
+  public int compareRank(int a, int b) {
+    if (a >= headSize || b >= headSize) {
+      return compareRankAcross(a, b);
+    }
+    int cmp = Long.compare(populations.get(b), populations.get(a));
+    if (cmp != 0) {
+      return cmp;
+    }
+    int aPos = nameOffsets.get(a);
+    int aEnd = nameOffsets.get(a + 1);
+    int bPos = nameOffsets.get(b);
+    int bEnd = nameOffsets.get(b + 1);
+    while (aPos < aEnd && bPos < bEnd) {
+      cmp = Integer.compare(Byte.toUnsignedInt(nameBytes.get(aPos++)), Byte.toUnsignedInt(nameBytes.get(bPos++)));
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    cmp = Integer.compare(aEnd - aPos, bEnd - bPos);
+    return cmp != 0 ? cmp : Integer.compare(a, b);
+  }
+
+  // Same order for ids that are not both in the head; names are compared as UTF-8 bytes like above
+  private int compareRankAcross(int a, int b) {
+    int cmp = Long.compare(getPopulation(b), getPopulation(a));
+    if (cmp != 0) {
+      return cmp;
+    }
+    cmp = Arrays.compareUnsigned(getName(a).getBytes(StandardCharsets.UTF_8),
+        getName(b).getBytes(StandardCharsets.UTF_8));
+    return cmp != 0 ? cmp : Integer.compare(a, b);
+  }
+
+  // A tail's cities are added one by one after the head's columns are copied
+  public Builder toBuilder() {
+    Builder builder = new Builder(Math.max(size, 16));
+    int nameLength = nameOffsets.get(headSize);
+    builder.size = headSize;
+    builder.nameBytes = new byte[Math.max(nameLength, 64)];
+    nameBytes.get(0, builder.nameBytes, 0, nameLength);
+    nameOffsets.get(0, builder.nameOffsets, 0, headSize + 1);
+    latitudes.get(0, builder.latitudes, 0, headSize);
+    longitudes.get(0, builder.longitudes, 0, headSize);
+    populations.get(0, builder.populations, 0, headSize);
+    countries.get(0, builder.countries, 0, 2 * headSize);
+    admin1Codes.get(0, builder.admin1Codes, 0, headSize);
+    geonameIds.get(0, builder.geonameIds, 0, headSize);
+    for (String value : admin1Values) {
+      builder.admin1Code(value);
+    }
+    for (int id = 0; id < headSize; id++) {
+      if (builder.geonameIds[id] != 0) {
+        builder.geonameIdLookup.put(builder.geonameIds[id], id);
+      }
+    }
+    for (int id = headSize; id < size; id++) {
+      builder.add(getCity(id));
+    }
+    return builder;
+  }
+
+  public void writeTo(SnapshotWriter out) throws IOException {
+    if (tail != null) {
+      toBuilder().build().writeTo(out);
+      return;
+    }
+    out.writeInt(size);
+    out.writeInt(nameOffsets.get(size));
+    out.writeInt(admin1Values.length);
+    for (String value : admin1Values) {
+      out.writeString(value);
+    }
+    out.writeBytes(nameBytes, nameOffsets.get(size));
+    out.writeInts(nameOffsets, size + 1);
+    out.writeDoubles(latitudes, size);
+    out.writeDoubles(longitudes, size);
+    out.writeDoubles(cosLatitudes, size);
+    out.writeLongs(populations, size);
+    out.writeChars(countries, 2 * size);
+    out.writeInts(admin1Codes, size);
+    out.writeLongs(geonameIds, size);
+    out.writeInt(jsonOffsets.get(size));
+    out.writeBytes(jsonBytes, jsonOffsets.get(size));
+    out.writeInts(jsonOffsets, size + 1);
+  }
+
+  public static CityStore readFrom(SnapshotReader in) throws IOException {
+    int size = in.readInt();
+    int nameLength = in.readInt();
+    String[] admin1Values = new String[in.readInt()];
+    for (int i = 0; i < admin1Values.length; i++) {
+      admin1Values[i] = in.readString();
+    }
+    ByteBuffer nameBytes = in.bytes(nameLength);
+    IntBuffer nameOffsets = in.ints(size + 1);
+    DoubleBuffer latitudes = in.doubles(size);
+    DoubleBuffer longitudes = in.doubles(size);
+    DoubleBuffer cosLatitudes = in.doubles(size);
+    LongBuffer populations = in.longs(size);
+    CharBuffer countries = in.chars(2 * size);
+    IntBuffer admin1Codes = in.ints(size);
+    LongBuffer geonameIds = in.longs(size);
+    ByteBuffer jsonBytes = in.bytes(in.readInt());
+    return new CityStore(size, nameBytes, nameOffsets, latitudes, longitudes, cosLatitudes, populations, countries,
+        admin1Codes, admin1Values, geonameIds, jsonBytes, in.ints(size + 1));
+  }
+
+  // Growable columns; ids are handed out in insertion order. A city whose
+  // GeoNames id is already present replaces that entry and keeps its id.
+  public static class Builder {
+    private int size;
+    private byte[] nameBytes;
+    private int[] nameOffsets;
+    private double[] latitudes;
+    private double[] longitudes;
+    private long[] populations;
+    private char[] countries;
+    private int[] admin1Codes;
+    private long[] geonameIds;
+    private final List<String> admin1Values = new ArrayList<>();
+    private final Map<String, Integer> admin1Lookup = new HashMap<>();
+    private final Map<Long, Integer> geonameIdLookup = new HashMap<>();
+    // Names replaced with one of a different length, spliced in by build()
+    private final Map<Integer, byte[]> renamed = new HashMap<>();
+
+    public Builder() {
+      this(16);
+    }
+
+    private Builder(int capacity) {
+      nameBytes = new byte[capacity * 8];
+      nameOffsets = new int[capacity + 1];
+      latitudes = new double[capacity];
+      longitudes = new double[capacity];
+      populations = new long[capacity];
+      countries = new char[2 * capacity];
+      admin1Codes = new int[capacity];
+      geonameIds = new long[capacity];
+      admin1Code(null);
+    }
+
+    public int size() {
+      return size;
+    }
+
+    // Id of the staged city with this GeoNames id, or -1
+    public int find(long geonameId) {
+      Integer id = geonameId == 0 ? null : geonameIdLookup.get(geonameId);
+      return id == null ? -1 : id;
+    }
+
+    public int add(City city) {
+      Integer existing = city.getGeonameId() == 0 ? null : geonameIdLookup.get(city.getGeonameId());
+      if (existing != null) {
+        set(existing, city);
+        return existing;
+      }
+      if (size == latitudes.length) {
+        grow();
+      }
+      int id = size++;
+      byte[] name = city.getName().getBytes(StandardCharsets.UTF_8);
+      int start = nameOffsets[id];
+      if (start + name.length > nameBytes.length) {
+        nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, start + name.length));
+      }
+      System.arraycopy(name, 0, nameBytes, start, name.length);
+      nameOffsets[id + 1] = start + name.length;
+      setAttributes(id, city);
+      if (city.getGeonameId() != 0) {
+        geonameIdLookup.put(city.getGeonameId(), id);
+      }
+      return id;
+    }
+
+    private void set(int id, City city) {
+      byte[] name = city.getName().getBytes(StandardCharsets.UTF_8);
+      if (name.length == nameOffsets[id + 1] - nameOffsets[id]) {
+        System.arraycopy(name, 0, nameBytes, nameOffsets[id], name.length);
+        renamed.remove(id);
+      } else {
+        renamed.put(id, name);
+      }
+      setAttributes(id, city);
+    }
+
+    private void setAttributes(int id, City city) {
+      latitudes[id] = city.getLatitude();
+      longitudes[id] = city.getLongitude();
+      populations[id] = city.getPopulation();
+      // Both chars are always written: a replaced entry must not keep the
+      // country of the row it replaces
+      String country = city.getCountry();
+      boolean hasCountry = country != null && !country.isEmpty();
+      countries[2 * id] = hasCountry ? country.charAt(0) : 0;
+      countries[2 * id + 1] = hasCountry && country.length() > 1 ? country.charAt(1) : 0;
+      admin1Codes[id] = admin1Code(city.getAdmin1());
+      geonameIds[id] = city.getGeonameId();
+    }
+
+    private int admin1Code(String value) {
+      return admin1Lookup.computeIfAbsent(value, v -> {
+        admin1Values.add(v);
+        return admin1Values.size() - 1;
+      });
+    }
+
+    private void grow() {
+      int capacity = latitudes.length * 2;
+      nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+      latitudes = Arrays.copyOf(latitudes, capacity);
+      longitudes = Arrays.copyOf(longitudes, capacity);
+      populations = Arrays.copyOf(populations, capacity);
+      countries = Arrays.copyOf(countries, 2 * capacity);
+      admin1Codes = Arrays.copyOf(admin1Codes, capacity);
+      geonameIds = Arrays.copyOf(geonameIds, capacity);
+    }
+
+    private void spliceRenamed() {
+      int length = 0;
+      for (int id = 0; id < size; id++) {
+        byte[] name = renamed.get(id);
+        length += name != null ? name.length : nameOffsets[id + 1] - nameOffsets[id];
+      }
+      byte[] bytes = new byte[Math.max(length, 64)];
+      int[] offsets = new int[nameOffsets.length];
+      for (int id = 0; id < size; id++) {
+        byte[] name = renamed.get(id);
+        int nameLength = name != null ? name.length : nameOffsets[id + 1] - nameOffsets[id];
+        System.arraycopy(name != null ? name : nameBytes, name != null ? 0 : nameOffsets[id], bytes, offsets[id],
+            nameLength);
+        offsets[id + 1] = offsets[id] + nameLength;
+      }
+      nameBytes = bytes;
+      nameOffsets = offsets;
+      renamed.clear();
+    }
+
+    public CityStore build() {
+      if (!renamed.isEmpty()) {
+        spliceRenamed();
+      }
+      double[] cosLatitudes = new double[size];
+      for (int id = 0; id < size; id++) {
+        cosLatitudes[id] = Math.cos(Math.toRadians(latitudes[id]));
+      }
+      ByteArrayOutputStream json = new ByteArrayOutputStream();
+      int[] jsonOffsets = new int[size + 1];
+      for (int id = 0; id < size; id++) {
+        String country = countries[2 * id] == 0 ? null : countries[2 * id + 1] == 0
+            ? String.valueOf(countries[2 * id]) : new String(countries, 2 * id, 2);
+        json.writeBytes(SuggestionJson.encode(
+            new String(nameBytes, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id], StandardCharsets.UTF_8),
+            country, admin1Values.get(admin1Codes[id]), latitudes[id], longitudes[id]));
+        jsonOffsets[id + 1] = json.size();
+      }
+      return new CityStore(size,
+          ByteBuffer.wrap(Arrays.copyOf(nameBytes, nameOffsets[size])),
+          IntBuffer.wrap(Arrays.copyOf(nameOffsets, size + 1)),
+          DoubleBuffer.wrap(Arrays.copyOf(latitudes, size)),
+          DoubleBuffer.wrap(Arrays.copyOf(longitudes, size)),
+          DoubleBuffer.wrap(cosLatitudes),
+          LongBuffer.wrap(Arrays.copyOf(populations, size)),
+          CharBuffer.wrap(Arrays.copyOf(countries, 2 * size)),
+          IntBuffer.wrap(Arrays.copyOf(admin1Codes, size)),
+          admin1Values.toArray(new String[0]),
+          LongBuffer.wrap(Arrays.copyOf(geonameIds, size)),
+          ByteBuffer.wrap(json.toByteArray()),
+          IntBuffer.wrap(jsonOffsets));
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.example.citysearch.store;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+// The fields of a suggestion as UTF-8 JSON, up to and including the key of the
+// score, which is the only part that changes from one request to the next:
+// {"name":"…","country":"…","admin1":"…","latitude":…,"longitude":…,"score":
+// Numbers and escapes are written the way Jackson writes them.
+public final class SuggestionJson {
+
+  private SuggestionJson() {
+  }
+
+  public static byte[] encode(String name, String country, String admin1, double latitude, double longitude) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(96);
+    ascii(out, "{\"name\":");
+    string(out, name);
+    ascii(out, ",\"country\":");
+    string(out, country);
+    ascii(out, ",\"admin1\":");
+    string(out, admin1);
+    ascii(out, ",\"latitude\":");
+    ascii(out, Double.toString(latitude));
+    ascii(out, ",\"longitude\":");
+    ascii(out, Double.toString(longitude));
+    ascii(out, ",\"score\":");
+    return out.toByteArray();
+  }
+
+  private static void ascii(ByteArrayOutputStream out, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      out.write(value.charAt(i));
+    }
+  }
+
+  // Quotes, backslashes and control characters are the only bytes escaped;
+  // none of them occurs inside a multi-byte UTF-8 sequence
+  private static void string(ByteArrayOutputStream out, String value) {
+    if (value == null) {
+      ascii(out, "null");
+      return;
+    }
+    out.write('"');
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      if (b == '"' || b == '\\') {
+        out.write('\\');
+        out.write(b);
+      } else if (b >= 0 && b < 0x20) {
+        ascii(out, switch (b) {
+          case '\b' -> "\\b";
+          case '\t' -> "\\t";
+          case '\n' -> "\\n";
+          case '\f' -> "\\f";
+          case '\r' -> "\\r";
+          default -> String.format("\\u%04X", b);
+        });
+      } else {
+        out.write(b);
+      }
+    }
+    out.write('"');
+  }
+}
@@ -0,0 +1,94 @@
+package com.example.citysearch.trie;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.example.citysearch.model.City;
+import com.example.citysearch.store.CityStore;
+
+// Searches return city ids into getStore(), best first
+public interface CityIndex {
+  int DEFAULT_TOP_K = 10;
+
+  int getSize();
+
+  int getTopK();
+
+  CityStore getStore();
+
+  // Nodes of the name and inner-word tries together
+  int getNodeCount();
+
+  // Approximate footprint of the index and its store, used for per-dataset budgets
+  long getMemoryBytes();
+
+  int[] searchByPrefix(String prefix, int limit);
+
+  int[] getAllCities(int limit);
+
+  int[] searchNearestByPrefix(String prefix, double latitude, double longitude, int limit);
+
+  // Cities within maxDistanceKm of the point whatever their name, nearest
+  // first; pass Double.POSITIVE_INFINITY for the plain k nearest
+  int[] searchNearest(double latitude, double longitude, double maxDistanceKm, int limit);
+
+  // Cities with a word after the first that starts with prefix, e.g. "New York"
+  // for "york"; cities whose name itself starts with prefix are not excluded
+  int[] searchByWordPrefix(String prefix, int limit);
+
+  int[] searchNearestByWordPrefix(String prefix, double latitude, double longitude, int limit);
+
+  // Keys within maxEdits insertions, deletions or substitutions of starting
+  // with prefix; fewer edits first, then by static rank
+  FuzzyMatches searchFuzzyByPrefix(String prefix, int maxEdits, int limit);
+
+  Builder toBuilder();
+
+  // Starts upserts and deletions keyed by GeoNames id, applied on top of this
+  // index rather than by rebuilding it
+  default Changes changes() {
+    return PatchedCityIndex.changes(this);
+  }
+
+  // Visits every indexed (key, city id) pair, e.g. to re-lay out an index as another type
+  void forEachKey(KeyVisitor visitor);
+
+  // Visits the (key, city id) pairs whose key starts with the folded prefix
+  // until the visitor returns false; returns whether every pair was visited
+  boolean forEachKeyWithPrefix(String prefix, PrefixVisitor visitor);
+
+  interface KeyVisitor {
+    void visit(String key, int city);
+  }
+
+  // key is the walk's own buffer and only valid during the call
+  interface PrefixVisitor {
+    boolean visit(CharSequence key, int city);
+  }
+
+  interface Changes {
+    // Adds the city or replaces the one with its GeoNames id; returns whether it replaced one
+    boolean upsert(City city, Collection<String> alternateNames);
+
+    // Returns false when no live city has the GeoNames id
+    boolean delete(long geonameId);
+
+    // Compacts into a plain index once more than maxPatchedCities cities are patched
+    CityIndex build(int maxPatchedCities);
+  }
+
+  interface Builder {
+    default Builder insert(String cityName, City city) {
+      return insert(cityName, city, List.of());
+    }
+
+    // Indexes the city under its name and every alternate name, all sharing
+    // one city id. A name always wins over another city's alternate name, and
+    // a city whose GeoNames id is already indexed replaces that entry.
+    Builder insert(String cityName, City city, Collection<String> alternateNames);
+
+    int getSize();
+
+    CityIndex build();
+  }
+}
@@ -1,111 +1,354 @@
 package com.example.citysearch.trie;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
 
+import com.example.citysearch.geo.GeoMath;
 import com.example.citysearch.model.City;
+import com.example.citysearch.store.CityStore;
 
-public class CitySearchTrie {
-  private final TrieNode root = new TrieNode();
+// Read-only index snapshot. Changes go through a Builder that produces a new
+// instance, so a published trie can be shared by any number of readers.
+public class CitySearchTrie implements CityIndex {
+  // Rough per-object overheads for the memory estimate of a compressed-oops heap
+  private static final int NODE_BYTES = 64;
+  private static final int ARRAY_HEADER_BYTES = 16;
 
-  private final ReadWriteLock lock = new ReentrantReadWriteLock();
-  private int size = 0;
+  private final TrieNode root;
+  // Inner words of every name, each pointing at all the cities that contain it
+  private final TrieNode wordRoot;
+  private final KdTree kdTree;
+  private final CityStore store;
+  private final int topK;
+  private final int nodeCount;
+  private final long nodeBytes;
 
-  public void insert(String cityName, City city) {
-    lock.writeLock().lock();
+  private CitySearchTrie(TrieNode root, TrieNode wordRoot, KdTree kdTree, CityStore store, int topK,
+      int nodeCount, long nodeBytes) {
+    this.root = root;
+    this.wordRoot = wordRoot;
+    this.kdTree = kdTree;
+    this.store = store;
+    this.topK = topK;
+    this.nodeCount = nodeCount;
+    this.nodeBytes = nodeBytes;
+  }
+
+  @Override
+  public int getSize() {
+    return store.size();
+  }
+
+  @Override
+  public int getTopK() {
+    return topK;
+  }
+
+  @Override
+  public CityStore getStore() {
+    return store;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return nodeCount;
+  }
 
-    try {
-      if (!cityExists(cityName)) {
-        TrieNode node = root;
-        for (char c : cityName.toLowerCase().toCharArray()) {
-          node.children.putIfAbsent(c, new TrieNode());
-          node = node.children.get(c);
+  @Override
+  public long getMemoryBytes() {
+    return store.getMemoryBytes() + nodeBytes + kdTree.getMemoryBytes();
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(topK, StagedCities.of(this));
+  }
+
+  @Override
+  public void forEachKey(KeyVisitor visitor) {
+    forEachCity(root, new StringBuilder(), visitor);
+  }
+
+  @Override
+  public boolean forEachKeyWithPrefix(String prefix, PrefixVisitor visitor) {
+    String key = KeyNormalizer.normalize(prefix);
+    TrieNode node = findNode(root, key);
+    return node == null || visitKeys(node, new StringBuilder(key), visitor);
+  }
+
+  @Override
+  public int[] searchByPrefix(String prefix, int limit) {
+    TrieNode node = findNode(root, KeyNormalizer.normalize(prefix));
+    if (node == null) {
+      return TrieNode.NO_CITIES;
+    }
+    return topCities(node, limit);
+  }
+
+  @Override
+  public int[] searchByWordPrefix(String prefix, int limit) {
+    TrieNode node = findNode(wordRoot, KeyNormalizer.normalize(prefix));
+    if (node == null) {
+      return TrieNode.NO_CITIES;
+    }
+    return topCities(node, limit);
+  }
+
+  @Override
+  public int[] getAllCities(int limit) {
+    return topCities(root, limit);
+  }
+
+  @Override
+  public int[] searchNearestByPrefix(String prefix, double latitude, double longitude, int limit) {
+    return nearest(findNode(root, KeyNormalizer.normalize(prefix)), latitude, longitude, limit);
+  }
+
+  @Override
+  public int[] searchNearestByWordPrefix(String prefix, double latitude, double longitude, int limit) {
+    return nearest(findNode(wordRoot, KeyNormalizer.normalize(prefix)), latitude, longitude, limit);
+  }
+
+  @Override
+  public int[] searchNearest(double latitude, double longitude, double maxDistanceKm, int limit) {
+    return kdTree.nearest(latitude, longitude, maxDistanceKm, limit);
+  }
+
+  private int[] nearest(TrieNode node, double latitude, double longitude, int limit) {
+    if (node == null) {
+      return TrieNode.NO_CITIES;
+    }
+
+    // Best-first over subtrees and cities: a subtree is only opened once its
+    // bounding box could still hold something nearer than what is already queued.
+    int[] results = new int[Math.min(limit, store.size())];
+    int count = 0;
+    GeoMath.Origin origin = GeoMath.origin(latitude, longitude);
+    PriorityQueue<GeoCandidate> queue = new PriorityQueue<>();
+    queue.add(new GeoCandidate(boundDistance(node, latitude, longitude), node, -1));
+    while (!queue.isEmpty() && count < results.length) {
+      GeoCandidate candidate = queue.poll();
+      if (candidate.city() >= 0) {
+        // The same city can be reached through several of its names or words
+        if (!TopK.contains(results, count, candidate.city())) {
+          results[count++] = candidate.city();
         }
-        node.isEndOfWord = true;
-        node.cities.add(city);
-        size++;
+        continue;
+      }
+      for (int city : candidate.node().cities) {
+        double distance = store.distanceKm(city, origin);
+        queue.add(new GeoCandidate(distance, null, city));
+      }
+      for (TrieNode child : candidate.node().children) {
+        queue.add(new GeoCandidate(boundDistance(child, latitude, longitude), child, -1));
       }
-    } finally {
-      lock.writeLock().unlock();
     }
-
+    return count == results.length ? results : Arrays.copyOf(results, count);
   }
 
-  public int getSize() {
-    lock.readLock().lock();
-    try {
-      return size;
-    } finally {
-      lock.readLock().unlock();
+  @Override
+  public FuzzyMatches searchFuzzyByPrefix(String prefix, int maxEdits, int limit) {
+    if (limit <= 0 || maxEdits < 0) {
+      return FuzzyMatches.NONE;
     }
+    char[] query = KeyNormalizer.normalize(prefix).toCharArray();
+    FuzzyCollector<TrieNode> matches = new FuzzyCollector<>(maxEdits);
+    walkFuzzy(root, query, FuzzyCollector.firstRow(query), maxEdits + 1, matches);
+    return matches.collect(limit, this::topCities, store);
   }
 
-  private boolean cityExists(String cityName) {
-    TrieNode node = root;
-    for (char c : cityName.toLowerCase().toCharArray()) {
-      node = node.children.get(c);
-      if (node == null) {
-        return false;
+  // Depth-first over one Levenshtein row per edge; row[query.length] is the cost
+  // of the query against the key so far. Rows never drop below the minimum of
+  // the row above, so a branch is cut once it cannot beat the best cost on its path.
+  private void walkFuzzy(TrieNode node, char[] query, int[] row, int best, FuzzyCollector<TrieNode> matches) {
+    int cost = row[query.length];
+    if (cost < best) {
+      matches.add(node, cost);
+      best = cost;
+    }
+    for (int i = 0; i < node.children.length && best > 0; i++) {
+      int[] next = FuzzyCollector.nextRow(row, query, node.keys[i]);
+      if (FuzzyCollector.minimum(next) < best) {
+        walkFuzzy(node.children[i], query, next, best, matches);
       }
     }
-    return node.isEndOfWord;
   }
 
-  public List<City> searchByPrefix(String prefix, int limit) {
-    TrieNode node = root;
-    for (char c : prefix.toLowerCase().toCharArray()) {
-      node = node.children.get(c);
-      if (node == null) {
-        return new ArrayList<>();
+  private static TrieNode findNode(TrieNode node, String key) {
+    for (int i = 0; i < key.length() && node != null; i++) {
+      node = node.child(key.charAt(i));
+    }
+    return node;
+  }
+
+  private double boundDistance(TrieNode node, double latitude, double longitude) {
+    return GeoMath.minDistanceKm(latitude, longitude, node.minLat, node.maxLat, node.minLon, node.maxLon);
+  }
+
+  private record GeoCandidate(double distance, TrieNode node, int city) implements Comparable<GeoCandidate> {
+    @Override
+    public int compareTo(GeoCandidate other) {
+      int cmp = Double.compare(distance, other.distance);
+      if (cmp == 0) {
+        // Resolve cities before subtrees at the same distance so ties terminate early
+        cmp = Boolean.compare(city < 0, other.city < 0);
       }
+      return cmp;
     }
-    List<City> results = new ArrayList<>();
-    collectCities(node, results, limit);
-    return results;
   }
 
-  public List<City> getAllCities(int limit) {
-    List<City> results = new ArrayList<>();
-    collectCities(root, results, limit);
-    return results;
+  private int[] topCities(TrieNode node, int limit) {
+    if (limit <= topK) {
+      return Arrays.copyOf(node.topCities, Math.min(limit, node.topCities.length));
+    }
+
+    // Deeper than the precomputed lists: rank the whole subtree
+    IntStream.Builder ids = IntStream.builder();
+    forEachCity(node, new StringBuilder(), (key, id) -> ids.add(id));
+    return TopK.all(ids.build().toArray(), limit, store);
   }
 
-  private void collectCities(TrieNode node, List<City> results, int limit) {
-    if (node == null || results.size() >= limit) {
-      return;
+  private void forEachCity(TrieNode node, StringBuilder key, KeyVisitor visitor) {
+    for (int city : node.cities) {
+      visitor.visit(key.toString(), city);
     }
+    for (int i = 0; i < node.children.length; i++) {
+      key.append(node.keys[i]);
+      forEachCity(node.children[i], key, visitor);
+      key.setLength(key.length() - 1);
+    }
+  }
 
-    for (City city : node.cities) {
-      if (results.size() >= limit) {
-        return;
+  private boolean visitKeys(TrieNode node, StringBuilder key, PrefixVisitor visitor) {
+    for (int city : node.cities) {
+      if (!visitor.visit(key, city)) {
+        return false;
       }
-      results.add(city);
     }
-
-    for (TrieNode child : node.children.values()) {
-      collectCities(child, results, limit);
-      if (results.size() >= limit) {
-        return;
+    for (int i = 0; i < node.children.length; i++) {
+      key.append(node.keys[i]);
+      boolean more = visitKeys(node.children[i], key, visitor);
+      key.setLength(key.length() - 1);
+      if (!more) {
+        return false;
       }
     }
+    return true;
   }
 
   public void printAllCities() {
-    printAllCitiesHelper(root, "");
+    forEachCity(root, new StringBuilder(), (key, city) -> System.out
+        .println("City: " + key + ", Lat: " + store.getLatitude(city) + ", Lon: " + store.getLongitude(city)));
   }
 
-  private void printAllCitiesHelper(TrieNode node, String prefix) {
-    if (node.isEndOfWord) {
-      for (City city : node.cities) {
-        System.out.println("City: " + prefix + ", Lat: " + city.getLatitude() + ", Lon: " + city.getLongitude());
+  // Mutable staging area for a new snapshot. Not thread-safe; callers build on
+  // one thread and publish the finished trie.
+  public static class Builder implements CityIndex.Builder {
+    private final int topK;
+    private final StagedCities staged;
+    private int nodeCount;
+    private long nodeBytes;
+
+    public Builder() {
+      this(DEFAULT_TOP_K);
+    }
+
+    public Builder(int topK) {
+      this(topK, new StagedCities());
+    }
+
+    Builder(int topK, StagedCities staged) {
+      if (topK <= 0) {
+        throw new IllegalArgumentException("topK must be positive");
       }
+      this.topK = topK;
+      this.staged = staged;
+    }
+
+    @Override
+    public Builder insert(String cityName, City city, Collection<String> alternateNames) {
+      staged.add(cityName, city, alternateNames);
+      return this;
+    }
+
+    private static BuildNode tree(Map<String, int[]> keys) {
+      BuildNode root = new BuildNode();
+      keys.forEach((key, ids) -> {
+        BuildNode node = root;
+        for (int i = 0; i < key.length(); i++) {
+          node = node.children.computeIfAbsent(key.charAt(i), k -> new BuildNode());
+        }
+        node.cities = ids;
+      });
+      return root;
+    }
+
+    @Override
+    public int getSize() {
+      return staged.size();
+    }
+
+    @Override
+    public CitySearchTrie build() {
+      CityStore store = staged.buildStore();
+      nodeCount = 0;
+      nodeBytes = 0;
+      TrieNode root = freeze(tree(staged.keys()), store);
+      TrieNode words = freeze(tree(staged.words()), store);
+      return new CitySearchTrie(root, words, KdTree.build(store), store, topK, nodeCount, nodeBytes);
     }
-    for (Map.Entry<Character, TrieNode> entry : node.children.entrySet()) {
-      printAllCitiesHelper(entry.getValue(), prefix + entry.getKey());
+
+    // Children are frozen first so top-k lists and bounding boxes can be merged bottom-up
+    private TrieNode freeze(BuildNode node, CityStore cities) {
+      int childCount = node.children.size();
+      char[] keys = childCount == 0 ? TrieNode.NO_KEYS : new char[childCount];
+      TrieNode[] children = childCount == 0 ? TrieNode.NO_CHILDREN : new TrieNode[childCount];
+      int i = 0;
+      for (Character key : node.children.keySet()) {
+        keys[i++] = key;
+      }
+      Arrays.sort(keys);
+
+      int[] own = node.cities;
+      double minLat = Double.POSITIVE_INFINITY;
+      double maxLat = Double.NEGATIVE_INFINITY;
+      double minLon = Double.POSITIVE_INFINITY;
+      double maxLon = Double.NEGATIVE_INFINITY;
+      int[] candidates = new int[own.length + childCount * topK];
+      int candidateCount = 0;
+      for (int city : own) {
+        candidates[candidateCount++] = city;
+        minLat = Math.min(minLat, cities.getLatitude(city));
+        maxLat = Math.max(maxLat, cities.getLatitude(city));
+        minLon = Math.min(minLon, cities.getLongitude(city));
+        maxLon = Math.max(maxLon, cities.getLongitude(city));
+      }
+      for (i = 0; i < childCount; i++) {
+        TrieNode child = freeze(node.children.get(keys[i]), cities);
+        children[i] = child;
+        System.arraycopy(child.topCities, 0, candidates, candidateCount, child.topCities.length);
+        candidateCount += child.topCities.length;
+        minLat = Math.min(minLat, child.minLat);
+        maxLat = Math.max(maxLat, child.maxLat);
+        minLon = Math.min(minLon, child.minLon);
+        maxLon = Math.max(maxLon, child.maxLon);
+      }
+      int[] top = TopK.select(candidates, candidateCount, topK, cities);
+      nodeCount++;
+      nodeBytes += NODE_BYTES + (childCount == 0 ? 0 : 2L * ARRAY_HEADER_BYTES + 6L * childCount)
+          + (own.length == 0 ? 0 : ARRAY_HEADER_BYTES + 4L * own.length) + ARRAY_HEADER_BYTES + 4L * top.length;
+
+      return new TrieNode(keys, children, own, top, minLat, maxLat, minLon, maxLon);
     }
   }
 
+  private static class BuildNode {
+    final Map<Character, BuildNode> children = new HashMap<>();
+    int[] cities = TrieNode.NO_CITIES;
+  }
+
 }
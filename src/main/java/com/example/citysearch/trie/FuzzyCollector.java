@@ -0,0 +1,91 @@
+package com.example.citysearch.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.example.citysearch.store.CityStore;
+
+// Subtrees reached by a bounded edit-distance walk, bucketed by their cost.
+// The walk only records a node when it beats every ancestor on its path, so
+// nodes in one bucket are disjoint and a city is emitted at its lowest cost.
+final class FuzzyCollector<N> {
+  interface TopCities<N> {
+    int[] get(N node, int limit);
+  }
+
+  private final List<List<N>> levels = new ArrayList<>();
+
+  FuzzyCollector(int maxEdits) {
+    for (int i = 0; i <= maxEdits; i++) {
+      levels.add(new ArrayList<>());
+    }
+  }
+
+  // Levenshtein row for the key extended by c, given the row of the key so far
+  static int[] nextRow(int[] row, char[] query, char c) {
+    int[] next = new int[row.length];
+    next[0] = row[0] + 1;
+    for (int j = 1; j < row.length; j++) {
+      int substitution = row[j - 1] + (query[j - 1] == c ? 0 : 1);
+      next[j] = Math.min(substitution, Math.min(row[j], next[j - 1]) + 1);
+    }
+    return next;
+  }
+
+  static int minimum(int[] row) {
+    int min = row[0];
+    for (int value : row) {
+      min = Math.min(min, value);
+    }
+    return min;
+  }
+
+  static int[] firstRow(char[] query) {
+    int[] row = new int[query.length + 1];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = i;
+    }
+    return row;
+  }
+
+  void add(N node, int edits) {
+    levels.get(edits).add(node);
+  }
+
+  FuzzyMatches collect(int limit, TopCities<N> topCities, CityStore store) {
+    int[] cities = new int[limit];
+    int[] edits = new int[limit];
+    int count = 0;
+    Set<Integer> emitted = new HashSet<>();
+    for (int level = 0; level < levels.size() && count < limit; level++) {
+      List<N> nodes = levels.get(level);
+      if (nodes.isEmpty()) {
+        continue;
+      }
+      // Cities already emitted at a lower cost may fill a node's top list, so ask for enough to cover them
+      int perNode = limit - count + emitted.size();
+      int[] candidates = new int[0];
+      int candidateCount = 0;
+      for (N node : nodes) {
+        int[] top = topCities.get(node, perNode);
+        if (candidateCount + top.length > candidates.length) {
+          candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, candidateCount + top.length));
+        }
+        for (int city : top) {
+          if (!emitted.contains(city)) {
+            candidates[candidateCount++] = city;
+          }
+        }
+      }
+      for (int city : TopK.select(candidates, candidateCount, limit - count, store)) {
+        cities[count] = city;
+        edits[count++] = level;
+        emitted.add(city);
+      }
+    }
+    return new FuzzyMatches(cities, edits, count);
+  }
+}
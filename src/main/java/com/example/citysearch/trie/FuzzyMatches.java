@@ -0,0 +1,29 @@
+package com.example.citysearch.trie;
+
+// Cities matched by a fuzzy prefix search, closest first, with the number of
+// edits that separate the query from a prefix of each city's key
+public final class FuzzyMatches {
+  static final FuzzyMatches NONE = new FuzzyMatches(new int[0], new int[0], 0);
+
+  private final int[] cities;
+  private final int[] edits;
+  private final int size;
+
+  FuzzyMatches(int[] cities, int[] edits, int size) {
+    this.cities = cities;
+    this.edits = edits;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int city(int i) {
+    return cities[i];
+  }
+
+  public int edits(int i) {
+    return edits[i];
+  }
+}
@@ -0,0 +1,54 @@
+package com.example.citysearch.trie;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.example.citysearch.store.CityStore;
+
+// GeoNames id to city id for a built store. Ids that fit 31 bits, which is
+// every GeoNames id, are packed with their city as geonameId << 32 | city in
+// one sorted array, so the lookup costs 8 bytes per city and a binary search.
+final class GeonameIds {
+  private final long[] packed;
+  private final Map<Long, Integer> wide;
+
+  private GeonameIds(long[] packed, Map<Long, Integer> wide) {
+    this.packed = packed;
+    this.wide = wide;
+  }
+
+  static GeonameIds of(CityStore store) {
+    long[] packed = new long[store.size()];
+    int count = 0;
+    Map<Long, Integer> wide = new HashMap<>();
+    for (int city = 0; city < store.size(); city++) {
+      long geonameId = store.getGeonameId(city);
+      if (geonameId > 0 && geonameId <= Integer.MAX_VALUE) {
+        packed[count++] = geonameId << 32 | city;
+      } else if (geonameId != 0) {
+        wide.put(geonameId, city);
+      }
+    }
+    packed = Arrays.copyOf(packed, count);
+    Arrays.sort(packed);
+    return new GeonameIds(packed, wide);
+  }
+
+  // City id with this GeoNames id, or -1
+  int find(long geonameId) {
+    if (geonameId <= 0 || geonameId > Integer.MAX_VALUE) {
+      Integer city = wide.get(geonameId);
+      return city == null ? -1 : city;
+    }
+    int i = Arrays.binarySearch(packed, geonameId << 32);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return i < packed.length && packed[i] >>> 32 == geonameId ? (int) packed[i] : -1;
+  }
+
+  long getMemoryBytes() {
+    return 8L * packed.length + 64L * wide.size();
+  }
+}
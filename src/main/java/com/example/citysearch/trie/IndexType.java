@@ -0,0 +1,13 @@
+package com.example.citysearch.trie;
+
+public enum IndexType {
+  TRIE,
+  RADIX;
+
+  public CityIndex.Builder newBuilder(int topK) {
+    return switch (this) {
+      case TRIE -> new CitySearchTrie.Builder(topK);
+      case RADIX -> new RadixCitySearchTrie.Builder(topK);
+    };
+  }
+}
@@ -0,0 +1,182 @@
+package com.example.citysearch.trie;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.snapshot.SnapshotReader;
+import com.example.citysearch.snapshot.SnapshotWriter;
+import com.example.citysearch.store.CityStore;
+
+// Balanced 2-d tree over city coordinates for searches that ignore names. It
+// is implicit: a range [lo, hi) of order is a node holding the city at
+// mid = (lo + hi) >>> 1, with the ranges on either side of mid as children,
+// split on latitude or longitude, whichever the range spans more of. The
+// bounding box of each node's range is stored at its mid.
+final class KdTree {
+  private final CityStore store;
+  private final IntBuffer order;
+  private final FloatBuffer minLat;
+  private final FloatBuffer maxLat;
+  private final FloatBuffer minLon;
+  private final FloatBuffer maxLon;
+
+  private KdTree(CityStore store, IntBuffer order, FloatBuffer minLat, FloatBuffer maxLat, FloatBuffer minLon,
+      FloatBuffer maxLon) {
+    this.store = store;
+    this.order = order;
+    this.minLat = minLat;
+    this.maxLat = maxLat;
+    this.minLon = minLon;
+    this.maxLon = maxLon;
+  }
+
+  static KdTree build(CityStore store) {
+    int size = store.size();
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    float[][] boxes = new float[4][size];
+    split(store, order, 0, size, boxes);
+    return new KdTree(store, IntBuffer.wrap(order), FloatBuffer.wrap(boxes[0]), FloatBuffer.wrap(boxes[1]),
+        FloatBuffer.wrap(boxes[2]), FloatBuffer.wrap(boxes[3]));
+  }
+
+  // Boxes are rounded outwards so they stay a safe lower bound
+  private static void split(CityStore store, int[] order, int lo, int hi, float[][] boxes) {
+    if (lo >= hi) {
+      return;
+    }
+    float minLat = Float.POSITIVE_INFINITY;
+    float maxLat = Float.NEGATIVE_INFINITY;
+    float minLon = Float.POSITIVE_INFINITY;
+    float maxLon = Float.NEGATIVE_INFINITY;
+    for (int i = lo; i < hi; i++) {
+      minLat = Math.min(minLat, Math.nextDown((float) store.getLatitude(order[i])));
+      maxLat = Math.max(maxLat, Math.nextUp((float) store.getLatitude(order[i])));
+      minLon = Math.min(minLon, Math.nextDown((float) store.getLongitude(order[i])));
+      maxLon = Math.max(maxLon, Math.nextUp((float) store.getLongitude(order[i])));
+    }
+    int mid = (lo + hi) >>> 1;
+    boxes[0][mid] = minLat;
+    boxes[1][mid] = maxLat;
+    boxes[2][mid] = minLon;
+    boxes[3][mid] = maxLon;
+
+    boolean byLatitude = maxLat - minLat >= maxLon - minLon;
+    select(store, order, lo, hi - 1, mid, byLatitude);
+    split(store, order, lo, mid, boxes);
+    split(store, order, mid + 1, hi, boxes);
+  }
+
+  // Quickselect: afterwards order[k] holds the city that belongs there when
+  // sorted by the axis, with nothing greater before it or smaller after it
+  private static void select(CityStore store, int[] order, int left, int right, int k, boolean byLatitude) {
+    while (left < right) {
+      double pivot = coordinate(store, order[(left + right) >>> 1], byLatitude);
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (coordinate(store, order[i], byLatitude) < pivot) {
+          i++;
+        }
+        while (coordinate(store, order[j], byLatitude) > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          int swap = order[i];
+          order[i++] = order[j];
+          order[j--] = swap;
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private static double coordinate(CityStore store, int city, boolean byLatitude) {
+    return byLatitude ? store.getLatitude(city) : store.getLongitude(city);
+  }
+
+  void writeTo(SnapshotWriter out) throws IOException {
+    int size = order.limit();
+    out.writeInt(size);
+    out.writeInts(order, size);
+    out.writeFloats(minLat, size);
+    out.writeFloats(maxLat, size);
+    out.writeFloats(minLon, size);
+    out.writeFloats(maxLon, size);
+  }
+
+  static KdTree readFrom(SnapshotReader in, CityStore store) throws IOException {
+    int size = in.readInt();
+    return new KdTree(store, in.ints(size), in.floats(size), in.floats(size), in.floats(size), in.floats(size));
+  }
+
+  long getMemoryBytes() {
+    return (long) order.limit() * (Integer.BYTES + 4 * Float.BYTES);
+  }
+
+  // Cities within maxDistanceKm, nearest first. Best-first over nodes and
+  // cities, so only nodes whose box could still hold a nearer city are opened.
+  int[] nearest(double latitude, double longitude, double maxDistanceKm, int limit) {
+    int size = order.limit();
+    int[] results = new int[Math.min(limit, size)];
+    int count = 0;
+    GeoMath.Origin origin = GeoMath.origin(latitude, longitude);
+    PriorityQueue<Candidate> queue = new PriorityQueue<>();
+    if (size > 0) {
+      queue.add(node(0, size, latitude, longitude));
+    }
+    while (!queue.isEmpty() && count < results.length) {
+      Candidate candidate = queue.poll();
+      if (candidate.distance() > maxDistanceKm) {
+        break;
+      }
+      if (candidate.city() >= 0) {
+        results[count++] = candidate.city();
+        continue;
+      }
+      int lo = candidate.lo();
+      int hi = candidate.hi();
+      int mid = (lo + hi) >>> 1;
+      int city = order.get(mid);
+      queue.add(new Candidate(store.distanceKm(city, origin), city, 0, 0));
+      if (lo < mid) {
+        queue.add(node(lo, mid, latitude, longitude));
+      }
+      if (mid + 1 < hi) {
+        queue.add(node(mid + 1, hi, latitude, longitude));
+      }
+    }
+    return count == results.length ? results : Arrays.copyOf(results, count);
+  }
+
+  private Candidate node(int lo, int hi, double latitude, double longitude) {
+    int mid = (lo + hi) >>> 1;
+    double bound = GeoMath.minDistanceKm(latitude, longitude, minLat.get(mid), maxLat.get(mid), minLon.get(mid),
+        maxLon.get(mid));
+    return new Candidate(bound, -1, lo, hi);
+  }
+
+  private record Candidate(double distance, int city, int lo, int hi) implements Comparable<Candidate> {
+    @Override
+    public int compareTo(Candidate other) {
+      int cmp = Double.compare(distance, other.distance);
+      if (cmp == 0) {
+        // Resolve cities before nodes at the same distance so ties terminate early
+        cmp = Boolean.compare(city < 0, other.city < 0);
+      }
+      return cmp;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.example.citysearch.trie;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Folds names and queries to index keys: lower case, compatibility-decomposed
+// with combining marks dropped, so "Montréal", "MONTREAL" and "Montreal" share
+// one key. Plain lower-case ASCII, by far the common case, is returned as is.
+public final class KeyNormalizer {
+  private KeyNormalizer() {
+  }
+
+  // Suffixes of a key starting at each word after the first, e.g. "york city"
+  // and "city" for "new york city"
+  public static List<String> innerWords(String key) {
+    List<String> words = null;
+    for (int i = 1; i < key.length(); i++) {
+      if (!Character.isLetterOrDigit(key.charAt(i - 1)) && Character.isLetterOrDigit(key.charAt(i))) {
+        if (words == null) {
+          words = new ArrayList<>();
+        }
+        words.add(key.substring(i));
+      }
+    }
+    return words == null ? List.of() : words;
+  }
+
+  public static String normalize(String text) {
+    int length = text.length();
+    int i = 0;
+    while (i < length) {
+      char c = text.charAt(i);
+      if (c >= 0x80 || (c >= 'A' && c <= 'Z')) {
+        break;
+      }
+      i++;
+    }
+    if (i == length) {
+      return text;
+    }
+
+    boolean ascii = true;
+    for (int j = i; j < length && ascii; j++) {
+      ascii = text.charAt(j) < 0x80;
+    }
+    if (ascii) {
+      char[] chars = text.toCharArray();
+      for (int j = i; j < length; j++) {
+        if (chars[j] >= 'A' && chars[j] <= 'Z') {
+          chars[j] += 'a' - 'A';
+        }
+      }
+      return new String(chars);
+    }
+
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+    StringBuilder folded = new StringBuilder(decomposed.length());
+    for (int j = 0; j < decomposed.length(); j++) {
+      char c = decomposed.charAt(j);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      c = Character.toLowerCase(c);
+      switch (c) {
+        // Letters with no decomposition that readers still expect to match their base letters
+        case 'ß' -> folded.append("ss");
+        case 'æ' -> folded.append("ae");
+        case 'œ' -> folded.append("oe");
+        case 'ø' -> folded.append('o');
+        case 'ł' -> folded.append('l');
+        case 'đ' -> folded.append('d');
+        case 'ı' -> folded.append('i');
+        default -> folded.append(c);
+      }
+    }
+    return folded.toString();
+  }
+}
@@ -0,0 +1,310 @@
+package com.example.citysearch.trie;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.model.City;
+import com.example.citysearch.store.CityStore;
+
+// An index with some cities upserted or deleted, read as one. The base index
+// is shared untouched by every version patched from it; only the changed
+// cities are laid out again, in a small trie of their own, so a change costs
+// the size of the patch rather than the size of the dataset. Base cities that
+// were replaced or deleted are hidden. Ids below the base size are the base's
+// own and the patch's follow them in one concatenated store.
+public final class PatchedCityIndex implements CityIndex {
+  private final CityIndex base;
+  private final CitySearchTrie patch;
+  private final GeonameIds baseIds;
+  // Sorted ids, of base and patch cities alike, that searches skip
+  private final int[] hidden;
+  private final int baseSize;
+  private final CityStore store;
+
+  private PatchedCityIndex(CityIndex base, CitySearchTrie patch, GeonameIds baseIds, int[] hidden) {
+    this.base = base;
+    this.patch = patch;
+    this.baseIds = baseIds;
+    this.hidden = hidden;
+    this.baseSize = base.getStore().size();
+    this.store = CityStore.concat(base.getStore(), patch.getStore());
+  }
+
+  static Patch changes(CityIndex index) {
+    return new Patch(index);
+  }
+
+  @Override
+  public Changes changes() {
+    return new Patch(this);
+  }
+
+  @Override
+  public int getSize() {
+    return store.size() - hidden.length;
+  }
+
+  @Override
+  public int getTopK() {
+    return base.getTopK();
+  }
+
+  @Override
+  public CityStore getStore() {
+    return store;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return base.getNodeCount() + patch.getNodeCount();
+  }
+
+  @Override
+  public long getMemoryBytes() {
+    return base.getMemoryBytes() + patch.getMemoryBytes() + 4L * hidden.length + baseIds.getMemoryBytes();
+  }
+
+  // Cities laid out in the patch plus base cities it hides
+  public int getPatchSize() {
+    return patch.getSize() + hidden.length;
+  }
+
+  // Compacts into a plain index of the base's type
+  @Override
+  public Builder toBuilder() {
+    StagedCities staged = StagedCities.of(this);
+    if (base instanceof RadixCitySearchTrie) {
+      return new RadixCitySearchTrie.Builder(getTopK(), staged);
+    }
+    return new CitySearchTrie.Builder(getTopK(), staged);
+  }
+
+  @Override
+  public void forEachKey(KeyVisitor visitor) {
+    base.forEachKey((key, city) -> {
+      if (!isHidden(city)) {
+        visitor.visit(key, city);
+      }
+    });
+    patch.forEachKey((key, city) -> {
+      if (!isHidden(baseSize + city)) {
+        visitor.visit(key, baseSize + city);
+      }
+    });
+  }
+
+  @Override
+  public boolean forEachKeyWithPrefix(String prefix, PrefixVisitor visitor) {
+    return base.forEachKeyWithPrefix(prefix, (key, city) -> isHidden(city) || visitor.visit(key, city))
+        && patch.forEachKeyWithPrefix(prefix,
+            (key, city) -> isHidden(baseSize + city) || visitor.visit(key, baseSize + city));
+  }
+
+  @Override
+  public int[] searchByPrefix(String prefix, int limit) {
+    return byRank(limit, n -> base.searchByPrefix(prefix, n), n -> patch.searchByPrefix(prefix, n));
+  }
+
+  @Override
+  public int[] getAllCities(int limit) {
+    return byRank(limit, base::getAllCities, patch::getAllCities);
+  }
+
+  @Override
+  public int[] searchByWordPrefix(String prefix, int limit) {
+    return byRank(limit, n -> base.searchByWordPrefix(prefix, n), n -> patch.searchByWordPrefix(prefix, n));
+  }
+
+  @Override
+  public int[] searchNearestByPrefix(String prefix, double latitude, double longitude, int limit) {
+    return byDistance(latitude, longitude, limit,
+        n -> base.searchNearestByPrefix(prefix, latitude, longitude, n),
+        n -> patch.searchNearestByPrefix(prefix, latitude, longitude, n));
+  }
+
+  @Override
+  public int[] searchNearest(double latitude, double longitude, double maxDistanceKm, int limit) {
+    return byDistance(latitude, longitude, limit,
+        n -> base.searchNearest(latitude, longitude, maxDistanceKm, n),
+        n -> patch.searchNearest(latitude, longitude, maxDistanceKm, n));
+  }
+
+  @Override
+  public int[] searchNearestByWordPrefix(String prefix, double latitude, double longitude, int limit) {
+    return byDistance(latitude, longitude, limit,
+        n -> base.searchNearestByWordPrefix(prefix, latitude, longitude, n),
+        n -> patch.searchNearestByWordPrefix(prefix, latitude, longitude, n));
+  }
+
+  @Override
+  public FuzzyMatches searchFuzzyByPrefix(String prefix, int maxEdits, int limit) {
+    if (limit <= 0 || maxEdits < 0) {
+      return FuzzyMatches.NONE;
+    }
+    FuzzyMatches fromBase = liveFuzzy(n -> base.searchFuzzyByPrefix(prefix, maxEdits, n), 0, limit);
+    FuzzyMatches fromPatch = liveFuzzy(n -> patch.searchFuzzyByPrefix(prefix, maxEdits, n), baseSize, limit);
+    int size = Math.min(limit, fromBase.size() + fromPatch.size());
+    int[] cities = new int[size];
+    int[] edits = new int[size];
+    int i = 0;
+    int j = 0;
+    for (int k = 0; k < size; k++) {
+      boolean takeBase = j == fromPatch.size() || (i < fromBase.size() && (fromBase.edits(i) < fromPatch.edits(j)
+          || fromBase.edits(i) == fromPatch.edits(j) && store.compareRank(fromBase.city(i), fromPatch.city(j)) <= 0));
+      FuzzyMatches from = takeBase ? fromBase : fromPatch;
+      int index = takeBase ? i++ : j++;
+      cities[k] = from.city(index);
+      edits[k] = from.edits(index);
+    }
+    return new FuzzyMatches(cities, edits, size);
+  }
+
+  private int[] byRank(int limit, IntFunction<int[]> fromBase, IntFunction<int[]> fromPatch) {
+    return merge(live(fromBase, 0, limit), live(fromPatch, baseSize, limit), limit, store::compareRank);
+  }
+
+  private int[] byDistance(double latitude, double longitude, int limit, IntFunction<int[]> fromBase,
+      IntFunction<int[]> fromPatch) {
+    GeoMath.Origin origin = GeoMath.origin(latitude, longitude);
+    return merge(live(fromBase, 0, limit), live(fromPatch, baseSize, limit), limit,
+        (a, b) -> Double.compare(store.distanceKm(a, origin), store.distanceKm(b, origin)));
+  }
+
+  // Both lists are already in order; on a tie the base city comes first
+  private static int[] merge(int[] a, int[] b, int limit, IntBinaryOperator order) {
+    if (b.length == 0) {
+      return a;
+    }
+    int[] merged = new int[Math.min(limit, a.length + b.length)];
+    int i = 0;
+    int j = 0;
+    for (int k = 0; k < merged.length; k++) {
+      merged[k] = j == b.length || (i < a.length && order.applyAsInt(a[i], b[j]) <= 0) ? a[i++] : b[j++];
+    }
+    return merged;
+  }
+
+  // Up to limit results that are not hidden, shifted by offset into this
+  // index's ids. Asks again for more while hidden cities crowd them out.
+  private int[] live(IntFunction<int[]> search, int offset, int limit) {
+    int want = limit;
+    while (true) {
+      int[] found = search.apply(want);
+      int[] kept = new int[found.length];
+      int count = 0;
+      for (int city : found) {
+        if (!isHidden(offset + city)) {
+          kept[count++] = offset + city;
+        }
+      }
+      if (count >= limit || found.length < want) {
+        return Arrays.copyOf(kept, Math.min(count, limit));
+      }
+      want = more(want);
+    }
+  }
+
+  private FuzzyMatches liveFuzzy(IntFunction<FuzzyMatches> search, int offset, int limit) {
+    int want = limit;
+    while (true) {
+      FuzzyMatches found = search.apply(want);
+      int[] cities = new int[found.size()];
+      int[] edits = new int[found.size()];
+      int count = 0;
+      for (int i = 0; i < found.size(); i++) {
+        if (!isHidden(offset + found.city(i))) {
+          cities[count] = offset + found.city(i);
+          edits[count++] = found.edits(i);
+        }
+      }
+      if (count >= limit || found.size() < want) {
+        return new FuzzyMatches(cities, edits, Math.min(count, limit));
+      }
+      want = more(want);
+    }
+  }
+
+  private static int more(int want) {
+    return want > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : 2 * want;
+  }
+
+  private boolean isHidden(int city) {
+    return hidden.length > 0 && Arrays.binarySearch(hidden, city) >= 0;
+  }
+
+  // Upserts and deletions gathered for the next version. Only the patch is
+  // staged again, so gathering costs the size of the patch; looking up base
+  // cities by GeoNames id needs a table that is built by the first change to
+  // a base and shared by every later version patched from it. Not thread-safe,
+  // like the index builders.
+  static final class Patch implements Changes {
+    private final CityIndex base;
+    private final GeonameIds baseIds;
+    private final StagedCities patch;
+    private final Set<Integer> hidden = new HashSet<>();
+    private final int baseSize;
+
+    private Patch(CityIndex index) {
+      if (index instanceof PatchedCityIndex patched) {
+        base = patched.base;
+        baseIds = patched.baseIds;
+        // Every patch city is keyed, so staging keeps their ids and the hidden ones stay valid
+        patch = StagedCities.of(patched.patch);
+        for (int city : patched.hidden) {
+          hidden.add(city);
+        }
+      } else {
+        base = index;
+        baseIds = GeonameIds.of(index.getStore());
+        patch = new StagedCities();
+      }
+      baseSize = base.getStore().size();
+    }
+
+    @Override
+    public boolean upsert(City city, Collection<String> alternateNames) {
+      long geonameId = city.getGeonameId();
+      if (geonameId <= 0) {
+        throw new IllegalArgumentException("A changed city needs a positive GeoNames id");
+      }
+      int patched = patch.find(geonameId);
+      int baseCity = baseIds.find(geonameId);
+      boolean existed = patched >= 0 ? !hidden.contains(baseSize + patched)
+          : baseCity >= 0 && !hidden.contains(baseCity);
+      if (baseCity >= 0) {
+        hidden.add(baseCity);
+      }
+      hidden.remove(baseSize + patch.add(city.getName(), city, alternateNames));
+      return existed;
+    }
+
+    @Override
+    public boolean delete(long geonameId) {
+      int patched = patch.find(geonameId);
+      if (patched >= 0) {
+        // A patched city's base entry is already hidden
+        return hidden.add(baseSize + patched);
+      }
+      int baseCity = baseIds.find(geonameId);
+      return baseCity >= 0 && hidden.add(baseCity);
+    }
+
+    // Compacts into a plain index of the base's type once the patch holds more
+    // than maxPatchedCities cities, counting the base cities it hides
+    @Override
+    public CityIndex build(int maxPatchedCities) {
+      if (patch.size() == 0 && hidden.isEmpty()) {
+        return base;
+      }
+      int[] hiddenIds = hidden.stream().mapToInt(Integer::intValue).sorted().toArray();
+      PatchedCityIndex next = new PatchedCityIndex(base, new CitySearchTrie.Builder(base.getTopK(), patch).build(),
+          baseIds, hiddenIds);
+      return next.getPatchSize() > maxPatchedCities ? next.toBuilder().build() : next;
+    }
+  }
+}
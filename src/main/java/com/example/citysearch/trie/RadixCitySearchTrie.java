@@ -0,0 +1,631 @@
+package com.example.citysearch.trie;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.model.City;
+import com.example.citysearch.snapshot.SnapshotReader;
+import com.example.citysearch.snapshot.SnapshotWriter;
+import com.example.citysearch.store.CityStore;
+
+// Compressed (Patricia) trie laid out in flat primitive arrays. Nodes are
+// numbered breadth-first so the children of a node are a contiguous id range
+// sorted by first label char; cities are placed depth-first so every subtree
+// owns a contiguous range of cityIds. The whole index is a handful of arrays,
+// instead of a HashMap and lists per character. Arrays are held as buffers so
+// a snapshot file can be memory-mapped and searched without rebuilding.
+public class RadixCitySearchTrie implements CityIndex {
+  private final int topK;
+  private final CityStore store;
+
+  // Edge labels: node n is reached through labels[labelStart[n] .. labelStart[n] + labelLength[n])
+  private final CharBuffer labels;
+  private final IntBuffer labelStart;
+  private final ShortBuffer labelLength;
+
+  private final IntBuffer firstChild;
+  private final IntBuffer childCount;
+
+  // Own cities of node n are cityIds[cityStart[n] .. cityStart[n] + cityCount[n]),
+  // the whole subtree runs up to subtreeCityEnd[n]
+  private final IntBuffer cityIds;
+  private final IntBuffer cityStart;
+  private final IntBuffer cityCount;
+  private final IntBuffer subtreeCityEnd;
+
+  // Best-ranked cities of each subtree
+  private final IntBuffer topIds;
+  private final IntBuffer topStart;
+  private final ShortBuffer topCount;
+
+  // Subtree bounding boxes, rounded outwards so they stay a safe lower bound
+  private final FloatBuffer minLat;
+  private final FloatBuffer maxLat;
+  private final FloatBuffer minLon;
+  private final FloatBuffer maxLon;
+
+  // Inner words of every name, laid out the same way over the same store, and
+  // the spatial index of the store; both null for the word trie itself
+  private final RadixCitySearchTrie words;
+  private final KdTree kdTree;
+
+  private RadixCitySearchTrie(int topK, CityStore store, CharBuffer labels, IntBuffer labelStart,
+      ShortBuffer labelLength, IntBuffer firstChild, IntBuffer childCount, IntBuffer cityIds, IntBuffer cityStart,
+      IntBuffer cityCount, IntBuffer subtreeCityEnd, IntBuffer topIds, IntBuffer topStart, ShortBuffer topCount,
+      FloatBuffer minLat, FloatBuffer maxLat, FloatBuffer minLon, FloatBuffer maxLon, RadixCitySearchTrie words,
+      KdTree kdTree) {
+    this.topK = topK;
+    this.store = store;
+    this.labels = labels;
+    this.labelStart = labelStart;
+    this.labelLength = labelLength;
+    this.firstChild = firstChild;
+    this.childCount = childCount;
+    this.cityIds = cityIds;
+    this.cityStart = cityStart;
+    this.cityCount = cityCount;
+    this.subtreeCityEnd = subtreeCityEnd;
+    this.topIds = topIds;
+    this.topStart = topStart;
+    this.topCount = topCount;
+    this.minLat = minLat;
+    this.maxLat = maxLat;
+    this.minLon = minLon;
+    this.maxLon = maxLon;
+    this.words = words;
+    this.kdTree = kdTree;
+  }
+
+  public static RadixCitySearchTrie copyOf(CityIndex index) {
+    if (index instanceof RadixCitySearchTrie radix) {
+      return radix;
+    }
+    return new Builder(index.getTopK(), StagedCities.of(index)).build();
+  }
+
+  public void writeTo(SnapshotWriter out) throws IOException {
+    out.writeInt(topK);
+    store.writeTo(out);
+    kdTree.writeTo(out);
+    words.writeNodes(out);
+    writeNodes(out);
+  }
+
+  private void writeNodes(SnapshotWriter out) throws IOException {
+    int nodeCount = labelStart.limit();
+    out.writeInt(nodeCount);
+    out.writeInt(labels.limit());
+    out.writeInt(cityIds.limit());
+    out.writeInt(topIds.limit());
+    out.writeChars(labels, labels.limit());
+    out.writeInts(labelStart, nodeCount);
+    out.writeShorts(labelLength, nodeCount);
+    out.writeInts(firstChild, nodeCount);
+    out.writeInts(childCount, nodeCount);
+    out.writeInts(cityIds, cityIds.limit());
+    out.writeInts(cityStart, nodeCount);
+    out.writeInts(cityCount, nodeCount);
+    out.writeInts(subtreeCityEnd, nodeCount);
+    out.writeInts(topIds, topIds.limit());
+    out.writeInts(topStart, nodeCount);
+    out.writeShorts(topCount, nodeCount);
+    out.writeFloats(minLat, nodeCount);
+    out.writeFloats(maxLat, nodeCount);
+    out.writeFloats(minLon, nodeCount);
+    out.writeFloats(maxLon, nodeCount);
+  }
+
+  public static RadixCitySearchTrie readFrom(SnapshotReader in) throws IOException {
+    int topK = in.readInt();
+    CityStore store = CityStore.readFrom(in);
+    KdTree kdTree = KdTree.readFrom(in, store);
+    RadixCitySearchTrie words = readNodes(in, topK, store, null, null);
+    return readNodes(in, topK, store, words, kdTree);
+  }
+
+  private static RadixCitySearchTrie readNodes(SnapshotReader in, int topK, CityStore store,
+      RadixCitySearchTrie words, KdTree kdTree) throws IOException {
+    int nodeCount = in.readInt();
+    int labelChars = in.readInt();
+    int cityCount = in.readInt();
+    int topIdCount = in.readInt();
+    return new RadixCitySearchTrie(topK, store, in.chars(labelChars), in.ints(nodeCount), in.shorts(nodeCount),
+        in.ints(nodeCount), in.ints(nodeCount), in.ints(cityCount), in.ints(nodeCount), in.ints(nodeCount),
+        in.ints(nodeCount), in.ints(topIdCount), in.ints(nodeCount), in.shorts(nodeCount), in.floats(nodeCount),
+        in.floats(nodeCount), in.floats(nodeCount), in.floats(nodeCount), words, kdTree);
+  }
+
+  @Override
+  public int getSize() {
+    return store.size();
+  }
+
+  @Override
+  public int getTopK() {
+    return topK;
+  }
+
+  @Override
+  public CityStore getStore() {
+    return store;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return labelStart.limit() + (words == null ? 0 : words.labelStart.limit());
+  }
+
+  @Override
+  public long getMemoryBytes() {
+    return store.getMemoryBytes() + nodeBytes() + words.nodeBytes() + kdTree.getMemoryBytes();
+  }
+
+  private long nodeBytes() {
+    long nodeCount = labelStart.limit();
+    return 2L * labels.limit() + 4L * cityIds.limit() + 4L * topIds.limit()
+        + nodeCount * (7 * Integer.BYTES + 2 * Short.BYTES + 4 * Float.BYTES);
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(topK, StagedCities.of(this));
+  }
+
+  @Override
+  public void forEachKey(KeyVisitor visitor) {
+    forEachCity(0, new StringBuilder(), visitor);
+  }
+
+  private void forEachCity(int node, StringBuilder key, KeyVisitor visitor) {
+    int keyLength = key.length();
+    key.append(labels, labelStart.get(node), labelStart.get(node) + labelLength.get(node));
+    for (int i = cityStart.get(node); i < cityStart.get(node) + cityCount.get(node); i++) {
+      visitor.visit(key.toString(), cityIds.get(i));
+    }
+    for (int child = firstChild.get(node); child < firstChild.get(node) + childCount.get(node); child++) {
+      forEachCity(child, key, visitor);
+    }
+    key.setLength(keyLength);
+  }
+
+  @Override
+  public boolean forEachKeyWithPrefix(String prefix, PrefixVisitor visitor) {
+    String key = KeyNormalizer.normalize(prefix);
+    long found = find(key);
+    if (found < 0) {
+      return true;
+    }
+    // The prefix may end inside the node's label, which the walk appends whole
+    return visitKeys((int) (found >>> 32), new StringBuilder(key.substring(0, key.length() - (int) found)),
+        visitor);
+  }
+
+  private boolean visitKeys(int node, StringBuilder key, PrefixVisitor visitor) {
+    int keyLength = key.length();
+    key.append(labels, labelStart.get(node), labelStart.get(node) + labelLength.get(node));
+    boolean more = true;
+    for (int i = cityStart.get(node); more && i < cityStart.get(node) + cityCount.get(node); i++) {
+      more = visitor.visit(key, cityIds.get(i));
+    }
+    for (int child = firstChild.get(node); more && child < firstChild.get(node) + childCount.get(node); child++) {
+      more = visitKeys(child, key, visitor);
+    }
+    key.setLength(keyLength);
+    return more;
+  }
+
+  @Override
+  public int[] searchByPrefix(String prefix, int limit) {
+    int node = findNode(KeyNormalizer.normalize(prefix));
+    if (node < 0) {
+      return new int[0];
+    }
+    return topCities(node, limit);
+  }
+
+  @Override
+  public int[] searchNearest(double latitude, double longitude, double maxDistanceKm, int limit) {
+    return kdTree.nearest(latitude, longitude, maxDistanceKm, limit);
+  }
+
+  @Override
+  public int[] searchByWordPrefix(String prefix, int limit) {
+    return words.searchByPrefix(prefix, limit);
+  }
+
+  @Override
+  public int[] searchNearestByWordPrefix(String prefix, double latitude, double longitude, int limit) {
+    return words.searchNearestByPrefix(prefix, latitude, longitude, limit);
+  }
+
+  @Override
+  public int[] getAllCities(int limit) {
+    return topCities(0, limit);
+  }
+
+  @Override
+  public int[] searchNearestByPrefix(String prefix, double latitude, double longitude, int limit) {
+    int node = findNode(KeyNormalizer.normalize(prefix));
+    if (node < 0) {
+      return new int[0];
+    }
+
+    int[] results = new int[Math.min(limit, subtreeCityEnd.get(node) - cityStart.get(node))];
+    int count = 0;
+    GeoMath.Origin origin = GeoMath.origin(latitude, longitude);
+    PriorityQueue<GeoCandidate> queue = new PriorityQueue<>();
+    queue.add(new GeoCandidate(boundDistance(node, latitude, longitude), node, -1));
+    while (!queue.isEmpty() && count < results.length) {
+      GeoCandidate candidate = queue.poll();
+      if (candidate.city() >= 0) {
+        if (!TopK.contains(results, count, candidate.city())) {
+          results[count++] = candidate.city();
+        }
+        continue;
+      }
+      int current = candidate.node();
+      for (int i = cityStart.get(current); i < cityStart.get(current) + cityCount.get(current); i++) {
+        int city = cityIds.get(i);
+        double distance = store.distanceKm(city, origin);
+        queue.add(new GeoCandidate(distance, -1, city));
+      }
+      int childEnd = firstChild.get(current) + childCount.get(current);
+      for (int child = firstChild.get(current); child < childEnd; child++) {
+        queue.add(new GeoCandidate(boundDistance(child, latitude, longitude), child, -1));
+      }
+    }
+    return count == results.length ? results : Arrays.copyOf(results, count);
+  }
+
+  private record GeoCandidate(double distance, int node, int city) implements Comparable<GeoCandidate> {
+    @Override
+    public int compareTo(GeoCandidate other) {
+      int cmp = Double.compare(distance, other.distance);
+      if (cmp == 0) {
+        cmp = Boolean.compare(city < 0, other.city < 0);
+      }
+      return cmp;
+    }
+  }
+
+  private double boundDistance(int node, double latitude, double longitude) {
+    return GeoMath.minDistanceKm(latitude, longitude, minLat.get(node), maxLat.get(node), minLon.get(node),
+        maxLon.get(node));
+  }
+
+  @Override
+  public FuzzyMatches searchFuzzyByPrefix(String prefix, int maxEdits, int limit) {
+    if (limit <= 0 || maxEdits < 0) {
+      return FuzzyMatches.NONE;
+    }
+    char[] query = KeyNormalizer.normalize(prefix).toCharArray();
+    FuzzyCollector<Integer> matches = new FuzzyCollector<>(maxEdits);
+    walkFuzzy(0, query, FuzzyCollector.firstRow(query), maxEdits + 1, matches);
+    return matches.collect(limit, this::topCities, store);
+  }
+
+  // Same walk as CitySearchTrie, stepping through edge labels one char at a
+  // time; a match inside a label covers the subtree of the node it leads to.
+  private void walkFuzzy(int node, char[] query, int[] row, int best, FuzzyCollector<Integer> matches) {
+    int nodeBest = Math.min(best, row[query.length]);
+    boolean descend = true;
+    int start = labelStart.get(node);
+    for (int i = 0; i < labelLength.get(node) && descend; i++) {
+      row = FuzzyCollector.nextRow(row, query, labels.get(start + i));
+      nodeBest = Math.min(nodeBest, row[query.length]);
+      descend = FuzzyCollector.minimum(row) < nodeBest;
+    }
+    if (nodeBest < best) {
+      matches.add(node, nodeBest);
+    }
+    int childEnd = firstChild.get(node) + childCount.get(node);
+    for (int child = firstChild.get(node); child < childEnd && descend && nodeBest > 0; child++) {
+      walkFuzzy(child, query, row, nodeBest, matches);
+    }
+  }
+
+  // Returns the node whose subtree holds exactly the keys starting with key, or -1
+  private int findNode(String key) {
+    long found = find(key);
+    return found < 0 ? -1 : (int) (found >>> 32);
+  }
+
+  // The node the key ends in and how far into its label, as node << 32 | position; -1 if absent
+  private long find(String key) {
+    int node = 0;
+    int edgePos = labelLength.get(0);
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      if (edgePos == labelLength.get(node)) {
+        node = findChild(node, c);
+        if (node < 0) {
+          return -1;
+        }
+        edgePos = 1;
+      } else if (labels.get(labelStart.get(node) + edgePos) == c) {
+        edgePos++;
+      } else {
+        return -1;
+      }
+    }
+    return (long) node << 32 | edgePos;
+  }
+
+  private int findChild(int node, char c) {
+    int lo = firstChild.get(node);
+    int hi = lo + childCount.get(node) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      char first = labels.get(labelStart.get(mid));
+      if (first < c) {
+        lo = mid + 1;
+      } else if (first > c) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private int[] topCities(int node, int limit) {
+    if (limit <= topK) {
+      int[] top = new int[Math.min(limit, topCount.get(node))];
+      topIds.get(topStart.get(node), top);
+      return top;
+    }
+
+    int[] subtree = new int[subtreeCityEnd.get(node) - cityStart.get(node)];
+    cityIds.get(cityStart.get(node), subtree);
+    return TopK.all(subtree, limit, store);
+  }
+
+  // Collects unique keys, then lays out the compressed trie in one pass over the sorted keys
+  public static class Builder implements CityIndex.Builder {
+    private final int topK;
+    private final StagedCities staged;
+
+    public Builder() {
+      this(DEFAULT_TOP_K);
+    }
+
+    public Builder(int topK) {
+      this(topK, new StagedCities());
+    }
+
+    Builder(int topK, StagedCities staged) {
+      if (topK <= 0) {
+        throw new IllegalArgumentException("topK must be positive");
+      }
+      this.topK = topK;
+      this.staged = staged;
+    }
+
+    @Override
+    public Builder insert(String cityName, City city, Collection<String> alternateNames) {
+      staged.add(cityName, city, alternateNames);
+      return this;
+    }
+
+    @Override
+    public int getSize() {
+      return staged.size();
+    }
+
+    @Override
+    public RadixCitySearchTrie build() {
+      CityStore store = staged.buildStore();
+      RadixCitySearchTrie words = layout(topK, store, staged.words(), null, null);
+      return layout(topK, store, staged.keys(), words, KdTree.build(store));
+    }
+
+    private static RadixCitySearchTrie layout(int topK, CityStore cities, Map<String, int[]> entries,
+        RadixCitySearchTrie words, KdTree kdTree) {
+      String[] keys = entries.keySet().toArray(new String[0]);
+      Arrays.sort(keys);
+
+      BuildNode root = new BuildNode(keys.length == 0 ? "" : keys[0], 0, 0);
+      int[] counts = new int[2];
+      fill(root, keys, 0, keys.length, entries, counts);
+
+      // Breadth-first ids give every node a contiguous run of children
+      List<BuildNode> order = new ArrayList<>();
+      ArrayDeque<BuildNode> queue = new ArrayDeque<>();
+      queue.add(root);
+      while (!queue.isEmpty()) {
+        BuildNode node = queue.poll();
+        node.id = order.size();
+        order.add(node);
+        queue.addAll(node.children);
+      }
+
+      int nodeCount = order.size();
+      int topIdCount = 0;
+      int[] subtreeSizes = new int[nodeCount];
+      for (int i = nodeCount - 1; i >= 0; i--) {
+        BuildNode node = order.get(i);
+        subtreeSizes[i] = node.cities.length;
+        for (BuildNode child : node.children) {
+          subtreeSizes[i] += subtreeSizes[child.id];
+        }
+        topIdCount += Math.min(topK, subtreeSizes[i]);
+      }
+
+      Layout layout = new Layout(nodeCount, counts[0], counts[1], topIdCount);
+      int labelPos = 0;
+      for (BuildNode node : order) {
+        int id = node.id;
+        layout.labelStart[id] = labelPos;
+        layout.labelLength[id] = (short) (node.labelEnd - node.labelStart);
+        node.key.getChars(node.labelStart, node.labelEnd, layout.labels, labelPos);
+        labelPos += node.labelEnd - node.labelStart;
+        layout.childCount[id] = node.children.size();
+        layout.firstChild[id] = node.children.isEmpty() ? 0 : node.children.get(0).id;
+      }
+      assignCities(layout, root, 0);
+
+      int topPos = 0;
+      int[] candidates = new int[0];
+      for (int id = nodeCount - 1; id >= 0; id--) {
+        int candidateCount = 0;
+        int needed = layout.cityCount[id] + layout.childCount[id] * topK;
+        if (candidates.length < needed) {
+          candidates = new int[needed];
+        }
+        float minLat = Float.POSITIVE_INFINITY;
+        float maxLat = Float.NEGATIVE_INFINITY;
+        float minLon = Float.POSITIVE_INFINITY;
+        float maxLon = Float.NEGATIVE_INFINITY;
+        for (int c = layout.cityStart[id]; c < layout.cityStart[id] + layout.cityCount[id]; c++) {
+          int city = layout.cityIds[c];
+          candidates[candidateCount++] = city;
+          minLat = Math.min(minLat, Math.nextDown((float) cities.getLatitude(city)));
+          maxLat = Math.max(maxLat, Math.nextUp((float) cities.getLatitude(city)));
+          minLon = Math.min(minLon, Math.nextDown((float) cities.getLongitude(city)));
+          maxLon = Math.max(maxLon, Math.nextUp((float) cities.getLongitude(city)));
+        }
+        for (int child = layout.firstChild[id]; child < layout.firstChild[id] + layout.childCount[id]; child++) {
+          System.arraycopy(layout.topIds, layout.topStart[child], candidates, candidateCount, layout.topCount[child]);
+          candidateCount += layout.topCount[child];
+          minLat = Math.min(minLat, layout.minLat[child]);
+          maxLat = Math.max(maxLat, layout.maxLat[child]);
+          minLon = Math.min(minLon, layout.minLon[child]);
+          maxLon = Math.max(maxLon, layout.maxLon[child]);
+        }
+        int[] top = TopK.select(candidates, candidateCount, topK, cities);
+        layout.topStart[id] = topPos;
+        layout.topCount[id] = (short) top.length;
+        System.arraycopy(top, 0, layout.topIds, topPos, top.length);
+        topPos += top.length;
+        layout.minLat[id] = minLat;
+        layout.maxLat[id] = maxLat;
+        layout.minLon[id] = minLon;
+        layout.maxLon[id] = maxLon;
+      }
+      return layout.toTrie(topK, cities, topPos, words, kdTree);
+    }
+
+    // keys[from, to) all share the first depth chars; splits them by the next char
+    private static void fill(BuildNode node, String[] keys, int from, int to, Map<String, int[]> entries,
+        int[] counts) {
+      counts[0] += node.labelEnd - node.labelStart;
+      int depth = node.labelEnd;
+      if (from < to && keys[from].length() == depth) {
+        node.cities = entries.get(keys[from]);
+        counts[1] += node.cities.length;
+        from++;
+      }
+      int groupStart = from;
+      while (groupStart < to) {
+        char c = keys[groupStart].charAt(depth);
+        int groupEnd = groupStart + 1;
+        while (groupEnd < to && keys[groupEnd].charAt(depth) == c) {
+          groupEnd++;
+        }
+        int childDepth = commonPrefixLength(keys[groupStart], keys[groupEnd - 1]);
+        BuildNode child = new BuildNode(keys[groupStart], depth, childDepth);
+        node.children.add(child);
+        fill(child, keys, groupStart, groupEnd, entries, counts);
+        groupStart = groupEnd;
+      }
+    }
+
+    private static void assignCities(Layout layout, BuildNode node, int next) {
+      layout.cityStart[node.id] = next;
+      System.arraycopy(node.cities, 0, layout.cityIds, next, node.cities.length);
+      next += node.cities.length;
+      layout.cityCount[node.id] = node.cities.length;
+      for (BuildNode child : node.children) {
+        assignCities(layout, child, next);
+        next = layout.subtreeCityEnd[child.id];
+      }
+      layout.subtreeCityEnd[node.id] = next;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+      int length = Math.min(a.length(), b.length());
+      int i = 0;
+      while (i < length && a.charAt(i) == b.charAt(i)) {
+        i++;
+      }
+      return i;
+    }
+  }
+
+  // Plain arrays the builder fills before they are wrapped as the trie's buffers
+  private static class Layout {
+    final char[] labels;
+    final int[] labelStart;
+    final short[] labelLength;
+    final int[] firstChild;
+    final int[] childCount;
+    final int[] cityIds;
+    final int[] cityStart;
+    final int[] cityCount;
+    final int[] subtreeCityEnd;
+    final int[] topIds;
+    final int[] topStart;
+    final short[] topCount;
+    final float[] minLat;
+    final float[] maxLat;
+    final float[] minLon;
+    final float[] maxLon;
+
+    Layout(int nodeCount, int labelChars, int cityCount, int topIdCount) {
+      labels = new char[labelChars];
+      labelStart = new int[nodeCount];
+      labelLength = new short[nodeCount];
+      firstChild = new int[nodeCount];
+      childCount = new int[nodeCount];
+      cityIds = new int[cityCount];
+      cityStart = new int[nodeCount];
+      this.cityCount = new int[nodeCount];
+      subtreeCityEnd = new int[nodeCount];
+      topIds = new int[topIdCount];
+      topStart = new int[nodeCount];
+      topCount = new short[nodeCount];
+      minLat = new float[nodeCount];
+      maxLat = new float[nodeCount];
+      minLon = new float[nodeCount];
+      maxLon = new float[nodeCount];
+    }
+
+    // Cities indexed under several keys are counted once per key when sizing
+    // topIds, so only the first topIdCount entries are in use
+    RadixCitySearchTrie toTrie(int topK, CityStore store, int topIdCount, RadixCitySearchTrie words,
+        KdTree kdTree) {
+      return new RadixCitySearchTrie(topK, store, CharBuffer.wrap(labels), IntBuffer.wrap(labelStart),
+          ShortBuffer.wrap(labelLength), IntBuffer.wrap(firstChild), IntBuffer.wrap(childCount),
+          IntBuffer.wrap(cityIds), IntBuffer.wrap(cityStart), IntBuffer.wrap(cityCount),
+          IntBuffer.wrap(subtreeCityEnd), IntBuffer.wrap(topIds, 0, topIdCount).slice(), IntBuffer.wrap(topStart),
+          ShortBuffer.wrap(topCount), FloatBuffer.wrap(minLat), FloatBuffer.wrap(maxLat), FloatBuffer.wrap(minLon),
+          FloatBuffer.wrap(maxLon), words, kdTree);
+    }
+  }
+
+  private static class BuildNode {
+    final String key;
+    final int labelStart;
+    final int labelEnd;
+    final List<BuildNode> children = new ArrayList<>();
+    int[] cities = TrieNode.NO_CITIES;
+    int id;
+
+    BuildNode(String key, int labelStart, int labelEnd) {
+      this.key = key;
+      this.labelStart = labelStart;
+      this.labelEnd = labelEnd;
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package com.example.citysearch.trie;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+
+import com.example.citysearch.geo.GeoMath;
+import com.example.citysearch.model.City;
+import com.example.citysearch.store.CityStore;
+
+// A dataset split by GeoNames id into shards that are complete indexes of
+// their own, so one search can walk them on separate cores: the search
+// service fans out over getShards() and merges their best suggestions. Read
+// as a single CityIndex, ids run through the shards in order over their
+// stores concatenated, and results are merged the same way.
+public final class ShardedCityIndex implements CityIndex {
+  private final CityIndex[] shards;
+  // First id of each shard in the concatenated store
+  private final int[] offsets;
+  private final CityStore store;
+
+  private ShardedCityIndex(CityIndex[] shards) {
+    this.shards = shards;
+    this.offsets = new int[shards.length];
+    CityStore concatenated = shards[shards.length - 1].getStore();
+    for (int i = shards.length - 2; i >= 0; i--) {
+      concatenated = CityStore.concat(shards[i].getStore(), concatenated);
+    }
+    for (int i = 1; i < shards.length; i++) {
+      offsets[i] = offsets[i - 1] + shards[i - 1].getStore().size();
+    }
+    this.store = concatenated;
+  }
+
+  // Cities with a GeoNames id are spread by it, so an upsert or delete finds
+  // its shard from the id alone; rows without one go by their folded name
+  static int shardOf(long geonameId, String name, int shardCount) {
+    long key = geonameId != 0 ? geonameId : KeyNormalizer.normalize(name).hashCode();
+    return Math.floorMod(Long.hashCode(key * 0x9E3779B97F4A7C15L), shardCount);
+  }
+
+  public List<CityIndex> getShards() {
+    return List.of(shards);
+  }
+
+  @Override
+  public int getSize() {
+    return Arrays.stream(shards).mapToInt(CityIndex::getSize).sum();
+  }
+
+  @Override
+  public int getTopK() {
+    return shards[0].getTopK();
+  }
+
+  @Override
+  public CityStore getStore() {
+    return store;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return Arrays.stream(shards).mapToInt(CityIndex::getNodeCount).sum();
+  }
+
+  @Override
+  public long getMemoryBytes() {
+    return Arrays.stream(shards).mapToLong(CityIndex::getMemoryBytes).sum();
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(Arrays.stream(shards).map(CityIndex::toBuilder).toArray(CityIndex.Builder[]::new));
+  }
+
+  // Each shard patches its own cities
+  @Override
+  public Changes changes() {
+    CityIndex.Changes[] changes = new CityIndex.Changes[shards.length];
+    return new Changes() {
+      @Override
+      public boolean upsert(City city, Collection<String> alternateNames) {
+        return shard(city.getGeonameId(), city.getName()).upsert(city, alternateNames);
+      }
+
+      @Override
+      public boolean delete(long geonameId) {
+        return geonameId != 0 && shard(geonameId, null).delete(geonameId);
+      }
+
+      private Changes shard(long geonameId, String name) {
+        int shard = shardOf(geonameId, name, shards.length);
+        if (changes[shard] == null) {
+          changes[shard] = shards[shard].changes();
+        }
+        return changes[shard];
+      }
+
+      @Override
+      public CityIndex build(int maxPatchedCities) {
+        CityIndex[] next = shards.clone();
+        for (int i = 0; i < next.length; i++) {
+          if (changes[i] != null) {
+            next[i] = changes[i].build(maxPatchedCities);
+          }
+        }
+        return new ShardedCityIndex(next);
+      }
+    };
+  }
+
+  @Override
+  public void forEachKey(KeyVisitor visitor) {
+    for (int i = 0; i < shards.length; i++) {
+      int offset = offsets[i];
+      shards[i].forEachKey((key, city) -> visitor.visit(key, offset + city));
+    }
+  }
+
+  @Override
+  public boolean forEachKeyWithPrefix(String prefix, PrefixVisitor visitor) {
+    for (int i = 0; i < shards.length; i++) {
+      int offset = offsets[i];
+      if (!shards[i].forEachKeyWithPrefix(prefix, (key, city) -> visitor.visit(key, offset + city))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int[] searchByPrefix(String prefix, int limit) {
+    return gather(shard -> shard.searchByPrefix(prefix, limit), store::compareRank, limit);
+  }
+
+  @Override
+  public int[] getAllCities(int limit) {
+    return gather(shard -> shard.getAllCities(limit), store::compareRank, limit);
+  }
+
+  @Override
+  public int[] searchByWordPrefix(String prefix, int limit) {
+    return gather(shard -> shard.searchByWordPrefix(prefix, limit), store::compareRank, limit);
+  }
+
+  @Override
+  public int[] searchNearestByPrefix(String prefix, double latitude, double longitude, int limit) {
+    return gather(shard -> shard.searchNearestByPrefix(prefix, latitude, longitude, limit),
+        byDistance(latitude, longitude), limit);
+  }
+
+  @Override
+  public int[] searchNearest(double latitude, double longitude, double maxDistanceKm, int limit) {
+    return gather(shard -> shard.searchNearest(latitude, longitude, maxDistanceKm, limit),
+        byDistance(latitude, longitude), limit);
+  }
+
+  @Override
+  public int[] searchNearestByWordPrefix(String prefix, double latitude, double longitude, int limit) {
+    return gather(shard -> shard.searchNearestByWordPrefix(prefix, latitude, longitude, limit),
+        byDistance(latitude, longitude), limit);
+  }
+
+  @Override
+  public FuzzyMatches searchFuzzyByPrefix(String prefix, int maxEdits, int limit) {
+    if (limit <= 0 || maxEdits < 0) {
+      return FuzzyMatches.NONE;
+    }
+    FuzzyMatches[] parts = new FuzzyMatches[shards.length];
+    int[][] cities = new int[shards.length][];
+    for (int i = 0; i < shards.length; i++) {
+      parts[i] = shards[i].searchFuzzyByPrefix(prefix, maxEdits, limit);
+      cities[i] = new int[parts[i].size()];
+      for (int j = 0; j < cities[i].length; j++) {
+        cities[i][j] = offsets[i] + parts[i].city(j);
+      }
+    }
+    int[] next = new int[shards.length];
+    int size = Math.min(limit, Arrays.stream(cities).mapToInt(part -> part.length).sum());
+    int[] merged = new int[size];
+    int[] edits = new int[size];
+    for (int k = 0; k < size; k++) {
+      int best = -1;
+      for (int i = 0; i < shards.length; i++) {
+        if (next[i] < cities[i].length && (best < 0 || parts[i].edits(next[i]) < parts[best].edits(next[best])
+            || parts[i].edits(next[i]) == parts[best].edits(next[best])
+                && store.compareRank(cities[i][next[i]], cities[best][next[best]]) < 0)) {
+          best = i;
+        }
+      }
+      merged[k] = cities[best][next[best]];
+      edits[k] = parts[best].edits(next[best]++);
+    }
+    return new FuzzyMatches(merged, edits, size);
+  }
+
+  private IntBinaryOperator byDistance(double latitude, double longitude) {
+    GeoMath.Origin origin = GeoMath.origin(latitude, longitude);
+    return (a, b) -> Double.compare(store.distanceKm(a, origin), store.distanceKm(b, origin));
+  }
+
+  // Merges the shards' ordered results, each shifted into this index's ids;
+  // on a tie the earlier shard's city comes first
+  private int[] gather(Function<CityIndex, int[]> search, IntBinaryOperator order, int limit) {
+    int[][] parts = new int[shards.length][];
+    int total = 0;
+    for (int i = 0; i < shards.length; i++) {
+      int[] found = search.apply(shards[i]);
+      parts[i] = new int[found.length];
+      for (int j = 0; j < found.length; j++) {
+        parts[i][j] = offsets[i] + found[j];
+      }
+      total += parts[i].length;
+    }
+    int[] next = new int[shards.length];
+    int[] merged = new int[Math.min(limit, total)];
+    for (int k = 0; k < merged.length; k++) {
+      int best = -1;
+      for (int i = 0; i < shards.length; i++) {
+        if (next[i] < parts[i].length
+            && (best < 0 || order.applyAsInt(parts[i][next[i]], parts[best][next[best]]) < 0)) {
+          best = i;
+        }
+      }
+      merged[k] = parts[best][next[best]++];
+    }
+    return merged;
+  }
+
+  // Routes every city to its shard's builder; the shards are built in parallel
+  public static class Builder implements CityIndex.Builder {
+    private final CityIndex.Builder[] shards;
+
+    public Builder(IndexType type, int topK, int shardCount) {
+      this(IntStream.range(0, shardCount).mapToObj(i -> type.newBuilder(topK)).toArray(CityIndex.Builder[]::new));
+    }
+
+    private Builder(CityIndex.Builder[] shards) {
+      if (shards.length == 0) {
+        throw new IllegalArgumentException("A sharded index needs at least one shard");
+      }
+      this.shards = shards;
+    }
+
+    @Override
+    public Builder insert(String cityName, City city, Collection<String> alternateNames) {
+      shards[shardOf(city.getGeonameId(), cityName, shards.length)].insert(cityName, city, alternateNames);
+      return this;
+    }
+
+    @Override
+    public int getSize() {
+      return Arrays.stream(shards).mapToInt(CityIndex.Builder::getSize).sum();
+    }
+
+    @Override
+    public ShardedCityIndex build() {
+      return new ShardedCityIndex(Arrays.stream(shards).parallel().map(CityIndex.Builder::build)
+          .toArray(CityIndex[]::new));
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.example.citysearch.trie;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.citysearch.model.City;
+import com.example.citysearch.store.CityStore;
+
+// Cities gathered for the next build, with the keys each one is indexed under.
+// Every row becomes its own entry, so same-named cities are all kept; a row
+// whose GeoNames id is already staged replaces that entry, keys included.
+// Both index builders lay out their key structures from here.
+final class StagedCities {
+  private static final String[] NO_KEYS = new String[0];
+
+  private final CityStore.Builder store;
+  // Per city id: its folded name and its folded alternate names
+  private final List<String> primaryKeys = new ArrayList<>();
+  private final List<String[]> alternateKeys = new ArrayList<>();
+
+  StagedCities() {
+    this(new CityStore.Builder());
+  }
+
+  private StagedCities(CityStore.Builder store) {
+    this.store = store;
+  }
+
+  // Stages the cities and keys of a built index; alternate names are recovered
+  // from the keys that are not a city's own name. Every city is indexed under
+  // its own name, so a city no key reaches has been removed and is left out.
+  static StagedCities of(CityIndex index) {
+    CityStore cities = index.getStore();
+    String[] primaries = new String[cities.size()];
+    for (int city = 0; city < primaries.length; city++) {
+      primaries[city] = KeyNormalizer.normalize(cities.getName(city));
+    }
+    boolean[] indexed = new boolean[primaries.length];
+    Map<Integer, List<String>> alternates = new HashMap<>();
+    index.forEachKey((key, city) -> {
+      indexed[city] = true;
+      if (!key.equals(primaries[city])) {
+        alternates.computeIfAbsent(city, k -> new ArrayList<>()).add(key);
+      }
+    });
+
+    boolean complete = true;
+    for (boolean reached : indexed) {
+      complete &= reached;
+    }
+    StagedCities staged = complete ? new StagedCities(cities.toBuilder()) : new StagedCities();
+    for (int city = 0; city < primaries.length; city++) {
+      String[] keys = alternates.containsKey(city) ? alternates.get(city).toArray(NO_KEYS) : NO_KEYS;
+      if (complete) {
+        staged.primaryKeys.add(primaries[city]);
+        staged.alternateKeys.add(keys);
+      } else if (indexed[city]) {
+        staged.stage(cities.getCity(city), primaries[city], keys);
+      }
+    }
+    return staged;
+  }
+
+  // Returns the city's id, which is the existing one when it replaced an entry
+  int add(String cityName, City city, Collection<String> alternateNames) {
+    String primary = KeyNormalizer.normalize(cityName);
+    List<String> alternates = new ArrayList<>(alternateNames.size());
+    for (String alternateName : alternateNames) {
+      String key = KeyNormalizer.normalize(alternateName);
+      if (!key.isEmpty() && !key.equals(primary) && !alternates.contains(key)) {
+        alternates.add(key);
+      }
+    }
+    return stage(city, primary, alternates.toArray(NO_KEYS));
+  }
+
+  private int stage(City city, String primary, String[] alternates) {
+    int id = store.add(city);
+    if (id < primaryKeys.size()) {
+      primaryKeys.set(id, primary);
+      alternateKeys.set(id, alternates);
+    } else {
+      primaryKeys.add(primary);
+      alternateKeys.add(alternates);
+    }
+    return id;
+  }
+
+  // Id of the staged city with this GeoNames id, or -1
+  int find(long geonameId) {
+    return store.find(geonameId);
+  }
+
+  int size() {
+    return store.size();
+  }
+
+  CityStore buildStore() {
+    return store.build();
+  }
+
+  // Key to the cities indexed under it. A key that is some city's own name
+  // lists only those cities, so "York" is not buried under a bigger city
+  // that merely has York among its alternate names.
+  Map<String, int[]> keys() {
+    Map<String, List<Integer>> primaries = new HashMap<>();
+    for (int city = 0; city < primaryKeys.size(); city++) {
+      primaries.computeIfAbsent(primaryKeys.get(city), k -> new ArrayList<>()).add(city);
+    }
+    Map<String, List<Integer>> alternates = new HashMap<>();
+    for (int city = 0; city < alternateKeys.size(); city++) {
+      for (String key : alternateKeys.get(city)) {
+        if (!primaries.containsKey(key)) {
+          alternates.computeIfAbsent(key, k -> new ArrayList<>()).add(city);
+        }
+      }
+    }
+    Map<String, int[]> keys = toArrays(primaries);
+    keys.putAll(toArrays(alternates));
+    return keys;
+  }
+
+  // Inner words of every city's own name; alternates are whole-name aliases
+  Map<String, int[]> words() {
+    Map<String, List<Integer>> words = new HashMap<>();
+    for (int city = 0; city < primaryKeys.size(); city++) {
+      for (String word : KeyNormalizer.innerWords(primaryKeys.get(city))) {
+        words.computeIfAbsent(word, k -> new ArrayList<>()).add(city);
+      }
+    }
+    return toArrays(words);
+  }
+
+  private static Map<String, int[]> toArrays(Map<String, List<Integer>> lists) {
+    Map<String, int[]> arrays = new HashMap<>(lists.size() * 2);
+    lists.forEach((key, cities) -> arrays.put(key, cities.stream().mapToInt(Integer::intValue).toArray()));
+    return arrays;
+  }
+}
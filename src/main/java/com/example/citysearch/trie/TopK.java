@@ -0,0 +1,47 @@
+package com.example.citysearch.trie;
+
+import java.util.Arrays;
+
+import com.example.citysearch.store.CityStore;
+
+final class TopK {
+  private TopK() {
+  }
+
+  // Best k distinct ids of candidates[0, count) by static rank, via bounded
+  // insertion sort. A city indexed under several keys shows up more than once.
+  static int[] select(int[] candidates, int count, int k, CityStore store) {
+    int[] top = new int[Math.min(k, count)];
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      int id = candidates[i];
+      if (size == top.length && store.compareRank(id, top[size - 1]) >= 0) {
+        continue;
+      }
+      if (contains(top, size, id)) {
+        continue;
+      }
+      int pos = size == top.length ? size - 1 : size++;
+      while (pos > 0 && store.compareRank(id, top[pos - 1]) < 0) {
+        top[pos] = top[pos - 1];
+        pos--;
+      }
+      top[pos] = id;
+    }
+    return size == top.length ? top : Arrays.copyOf(top, size);
+  }
+
+  static boolean contains(int[] ids, int size, int id) {
+    for (int i = 0; i < size; i++) {
+      if (ids[i] == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static int[] all(int[] ids, int limit, CityStore store) {
+    int[] sorted = Arrays.stream(ids).distinct().boxed().sorted(store::compareRank).mapToInt(Integer::intValue).toArray();
+    return sorted.length > limit ? Arrays.copyOf(sorted, limit) : sorted;
+  }
+}
@@ -1,14 +1,45 @@
 package com.example.citysearch.trie;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import com.example.citysearch.model.City;
+import java.util.Arrays;
 
+// Immutable once built: children are kept as parallel sorted arrays so lookups
+// are a binary search and no reader ever needs a lock. Cities are ids into the
+// trie's CityStore.
 public class TrieNode {
-  Map<Character, TrieNode> children = new HashMap<>();
-  List<City> cities = new ArrayList<>();
-  boolean isEndOfWord = false;
+  static final char[] NO_KEYS = new char[0];
+  static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+  static final int[] NO_CITIES = new int[0];
+
+  final char[] keys;
+  final TrieNode[] children;
+  final int[] cities;
+  // Best-ranked cities of the whole subtree, sorted and bounded at build time
+  final int[] topCities;
+
+  // Bounding box of every city in the subtree, used to prune geo-ranked searches
+  final double minLat;
+  final double maxLat;
+  final double minLon;
+  final double maxLon;
+
+  TrieNode(char[] keys, TrieNode[] children, int[] cities, int[] topCities, double minLat, double maxLat,
+      double minLon, double maxLon) {
+    this.keys = keys;
+    this.children = children;
+    this.cities = cities;
+    this.topCities = topCities;
+    this.minLat = minLat;
+    this.maxLat = maxLat;
+    this.minLon = minLon;
+    this.maxLon = maxLon;
+  }
+
+  TrieNode child(char c) {
+    int i = Arrays.binarySearch(keys, c);
+    return i >= 0 ? children[i] : null;
+  }
+
+  boolean isEndOfWord() {
+    return cities.length > 0;
+  }
 }
@@ -0,0 +1,97 @@
+package com.example.citysearch.admission;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.FilterChain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionFilterTest {
+
+  private SimpleMeterRegistry registry;
+  private AdmissionFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setMaxConcurrentSearches(1);
+    properties.setMaxConcurrentUploads(1);
+    properties.setAdmissionWaitMillis(0);
+    registry = new SimpleMeterRegistry();
+    filter = new AdmissionFilter(properties, registry, new ObjectMapper());
+  }
+
+  private static MockHttpServletRequest request(String method, String path) {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+    request.setAsyncSupported(true);
+    return request;
+  }
+
+  private MockHttpServletResponse send(MockHttpServletRequest request, FilterChain chain) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, chain);
+    return response;
+  }
+
+  @Test
+  void testSearchesAndUploadsHaveSeparateLimits() throws Exception {
+    // The first batch streams asynchronously and keeps its permit until it completes
+    MockHttpServletRequest batch = request("POST", "/api/v1/suggestions/batch");
+    send(batch, (request, response) -> request.startAsync());
+
+    MockHttpServletResponse rejected = send(request("GET", "/api/v1/suggestions"), (request, response) -> {
+      fail("A search beyond the limit must not run");
+    });
+    assertEquals(429, rejected.getStatus());
+    assertEquals("1", rejected.getHeader("Retry-After"));
+    assertTrue(rejected.getContentAsString().contains("search"));
+    assertEquals(1, registry.get("citysearch.admission.rejected").tag("bulkhead", "search").counter().count());
+
+    MockHttpServletResponse upload = send(request("POST", "/api/v1/suggestions"), (request, response) -> {
+    });
+    assertEquals(200, upload.getStatus());
+
+    ((MockAsyncContext) batch.getAsyncContext()).complete();
+    MockHttpServletResponse search = send(request("GET", "/api/v1/suggestions"), (request, response) -> {
+    });
+    assertEquals(200, search.getStatus());
+    assertEquals(0, registry.get("citysearch.admission.active").tag("bulkhead", "search").gauge().value());
+  }
+
+  @Test
+  void testCityChangesShareTheUploadLimit() throws Exception {
+    send(request("POST", "/api/v1/suggestions"), (request, response) -> request.startAsync());
+
+    for (MockHttpServletRequest change : new MockHttpServletRequest[] {
+        request("PUT", "/api/v1/suggestions/cities/6077243"),
+        request("DELETE", "/api/v1/suggestions/cities/6077243"),
+        request("POST", "/api/v1/suggestions/cities/changes") }) {
+      MockHttpServletResponse rejected = send(change, (request, response) -> {
+        fail("A change beyond the upload limit must not run");
+      });
+      assertEquals(429, rejected.getStatus());
+      assertTrue(rejected.getContentAsString().contains("upload"));
+    }
+    assertEquals(200, send(request("GET", "/api/v1/suggestions"), (request, response) -> {
+    }).getStatus());
+  }
+
+  @Test
+  void testOtherEndpointsAreNotLimited() throws Exception {
+    send(request("POST", "/api/v1/suggestions/batch"), (request, response) -> request.startAsync());
+
+    assertEquals(200, send(request("GET", "/api/v1/suggestions/datasets"), (request, response) -> {
+    }).getStatus());
+    assertEquals(200, send(request("GET", "/actuator/prometheus"), (request, response) -> {
+    }).getStatus());
+  }
+}
@@ -0,0 +1,82 @@
+package com.example.citysearch.controller;
+
+import com.example.citysearch.model.City;
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.model.SuggestionsResponse;
+import com.example.citysearch.store.CityStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionsJsonWriterTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final SuggestionsJsonWriter writer = new SuggestionsJsonWriter();
+
+  private String write(SuggestionsResponse response) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.write(response, out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void testWrite_MatchesJackson() throws Exception {
+    CityStore.Builder builder = new CityStore.Builder();
+    builder.add(new City("Montréal", 45.50884, -73.58781, 1_600_000, "CA", "10", 6077243));
+    builder.add(new City("Say \"Cheese\" \\ Town\t", 1e-7, -180.0, 0, null, null, 0));
+    builder.add(new City("東京", 35.6895, 139.69171, 8_336_599, "JP", "4\u0001", 1850147));
+    CityStore store = builder.build();
+    SuggestionsResponse response = new SuggestionsResponse(List.of(
+        new Suggestion(store, 0, 0.6),
+        new Suggestion(store, 1, 1.0 / 3),
+        new Suggestion(store, 2, 0),
+        // From another node, with no store behind it
+        new Suggestion("Torbay", "CA", "05", 47.66659, -52.73135, 0.5, 7397)));
+
+    assertEquals(objectMapper.writeValueAsString(response), write(response));
+    assertEquals("{\"suggestions\":[]}", write(new SuggestionsResponse(List.of())));
+  }
+
+  @Test
+  void testWrite_GrowsPastItsBuffer() throws Exception {
+    CityStore.Builder builder = new CityStore.Builder();
+    builder.add(new City("Llanfairpwllgwyngyllgogerychwyrndrobwllllantysiliogogogoch".repeat(20), 53.22, -4.2));
+    CityStore store = builder.build();
+    List<Suggestion> suggestions = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      suggestions.add(new Suggestion(store, 0, i));
+    }
+    SuggestionsResponse response = new SuggestionsResponse(suggestions);
+
+    assertEquals(objectMapper.writeValueAsString(response), write(response));
+    assertEquals(objectMapper.writeValueAsString(response), write(response));
+  }
+
+  @Test
+  void testWrite_ReusesPooledBuffersAcrossThreads() throws Exception {
+    CityStore.Builder builder = new CityStore.Builder();
+    builder.add(new City("Ottawa", 45.41117, -75.69812, 812_129, "CA", "08", 6094817));
+    SuggestionsResponse response = new SuggestionsResponse(List.of(new Suggestion(builder.build(), 0, 1.0)));
+    SuggestionsJsonWriter pooled = new SuggestionsJsonWriter(1);
+
+    for (int i = 0; i < 3; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          pooled.write(response, new ByteArrayOutputStream());
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      thread.start();
+      thread.join();
+      assertEquals(1, pooled.pooledBuffers());
+    }
+  }
+}
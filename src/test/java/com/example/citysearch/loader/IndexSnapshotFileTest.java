@@ -0,0 +1,82 @@
+package com.example.citysearch.loader;
+
+import com.example.citysearch.model.City;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.IndexType;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSnapshotFileTest {
+
+  @TempDir
+  Path tempDir;
+
+  private CityIndex build(IndexType type) {
+    return type.newBuilder(3)
+        .insert("Montréal", new City("Montréal", 45.50884, -73.58781, 3_268_513, "CA", "10"))
+        .insert("Moncton", new City("Moncton", 46.11594, -64.80186, 87_467, "CA", "04"))
+        .insert("Monterey", new City("Monterey", 36.60024, -121.89468, 27_810, "US", "CA"))
+        .insert("Toronto", new City("Toronto", 43.70011, -79.4163, 4_612_191, "CA", "08"))
+        .insert("Mont-Royal", new City("Mont-Royal", 45.51675, -73.64918, 20_276, "CA", "10"))
+        .build();
+  }
+
+  @Test
+  void testWriteThenMap_ServesSameResults() throws IOException {
+    CityIndex original = build(IndexType.TRIE);
+    Path path = tempDir.resolve("cities.idx");
+
+    long bytes = IndexSnapshotFile.write(original, path);
+    CityIndex mapped = IndexSnapshotFile.map(path);
+
+    assertEquals(Files.size(path), bytes);
+    assertEquals(original.getSize(), mapped.getSize());
+    assertArrayEquals(names(original, original.searchByPrefix("mon", 3)), names(mapped, mapped.searchByPrefix("mon", 3)));
+    assertArrayEquals(names(original, original.searchNearestByPrefix("m", 46.0, -65.0, 2)),
+        names(mapped, mapped.searchNearestByPrefix("m", 46.0, -65.0, 2)));
+    assertArrayEquals(new String[] { "Mont-Royal" }, names(mapped, mapped.searchByWordPrefix("roy", 3)));
+    assertArrayEquals(names(original, original.searchNearest(45.5, -73.6, 500, 3)),
+        names(mapped, mapped.searchNearest(45.5, -73.6, 500, 3)));
+
+    int montreal = mapped.searchByPrefix("montr", 1)[0];
+    assertEquals("Montréal", mapped.getStore().getName(montreal));
+    assertEquals("CA", mapped.getStore().getCountry(montreal));
+    assertEquals("10", mapped.getStore().getAdmin1(montreal));
+  }
+
+  @Test
+  void testMappedIndexCanSeedNextBuild() throws IOException {
+    Path path = tempDir.resolve("cities.idx");
+    IndexSnapshotFile.write(build(IndexType.RADIX), path);
+
+    CityIndex next = IndexSnapshotFile.map(path).toBuilder()
+        .insert("Monaco", new City("Monaco", 43.73, 7.42, 0, "MC", null))
+        .build();
+
+    assertEquals(6, next.getSize());
+    assertEquals(5, next.searchByPrefix("mon", 10).length);
+  }
+
+  @Test
+  void testMap_RejectsOtherFiles() throws IOException {
+    Path path = tempDir.resolve("cities.tsv");
+    Files.writeString(path, "name\tlat\tlong\nToronto\t43.7\t-79.42\n");
+
+    assertThrows(IOException.class, () -> IndexSnapshotFile.map(path));
+  }
+
+  private static String[] names(CityIndex index, int[] ids) {
+    String[] names = new String[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      names[i] = index.getStore().getName(ids[i]);
+    }
+    return names;
+  }
+}
@@ -0,0 +1,112 @@
+package com.example.citysearch.loader;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.DatasetNotFoundException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestionJobsTest {
+
+  private TsvIngestionPipeline pipeline;
+  private CityDataLoader dataLoader;
+  private IngestionJobs jobs;
+
+  @BeforeEach
+  void setUp() {
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setLimitData(10);
+    properties.setIngestionThreads(2);
+    properties.setRowErrorPolicy(RowErrorPolicy.FAIL);
+    properties.setDatasetMemoryBudgets(Map.of("tiny", DataSize.ofBytes(64)));
+    pipeline = new TsvIngestionPipeline(properties);
+    dataLoader = new CityDataLoader(properties, pipeline);
+    jobs = new IngestionJobs(dataLoader, properties);
+  }
+
+  @AfterEach
+  void tearDown() {
+    jobs.shutdown();
+    pipeline.shutdown();
+  }
+
+  private static MockMultipartFile upload(String content) {
+    return new MockMultipartFile("file", "cities.tsv", "text/tab-separated-values",
+        content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void await(IngestionJob job) throws InterruptedException {
+    for (int i = 0; i < 500 && !job.isFinished(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(job.isFinished());
+  }
+
+  @Test
+  void testSubmit_PublishesIndexWhenJobSucceeds() throws IOException, InterruptedException {
+    IngestionJob job = jobs.submit(null, upload("name\tlat\tlong\nToronto\t43.7\t-79.42\nTorbay\t47.65\t-52.73\n"));
+
+    assertSame(job, jobs.get(job.getId()));
+    await(job);
+
+    assertEquals(IngestionJob.State.SUCCEEDED, job.getState());
+    assertEquals(2, job.getRowsParsed());
+    assertEquals(2, dataLoader.getTrie().searchByPrefix("tor", 10).length);
+  }
+
+  @Test
+  void testSubmit_FailedJobLeavesLiveIndexUntouched() throws IOException, InterruptedException {
+    await(jobs.submit(null, upload("name\tlat\tlong\nToronto\t43.7\t-79.42\n")));
+
+    IngestionJob job = jobs.submit(null, upload("name\tlat\tlong\nTorbay\t47.65\t-52.73\nBroken\tnorth\t-52.73\n"));
+    await(job);
+
+    assertEquals(IngestionJob.State.FAILED, job.getState());
+    assertTrue(job.getFailure().contains("invalid lat"));
+    assertEquals(1, dataLoader.getTrie().getSize());
+  }
+
+  @Test
+  void testSubmit_DatasetsAreLoadedIndependently() throws IOException, InterruptedException {
+    await(jobs.submit(null, upload("name\tlat\tlong\nToronto\t43.7\t-79.42\n")));
+    IngestionJob job = jobs.submit("je", upload("name\tlat\tlong\nSt Helier\t49.18\t-2.1\n"));
+    await(job);
+
+    assertEquals("je", job.getDataset());
+    assertEquals(1, dataLoader.getTrie("je").searchByPrefix("st", 10).length);
+    assertEquals(0, dataLoader.getTrie().searchByPrefix("st", 10).length);
+
+    dataLoader.evict("je");
+    assertThrows(DatasetNotFoundException.class, () -> dataLoader.getTrie("je"));
+    assertEquals(1, dataLoader.getTrie().getSize());
+  }
+
+  @Test
+  void testSubmit_RejectsLoadOverMemoryBudget() throws IOException, InterruptedException {
+    IngestionJob job = jobs.submit("tiny", upload("name\tlat\tlong\nToronto\t43.7\t-79.42\n"));
+    await(job);
+
+    assertEquals(IngestionJob.State.FAILED, job.getState());
+    assertTrue(job.getFailure().contains("memory budget"));
+    assertEquals(0, dataLoader.getTrie("tiny").getSize());
+  }
+
+  @Test
+  void testSubmit_RejectsInvalidDatasetName() {
+    assertThrows(IllegalArgumentException.class, () -> jobs.submit("../etc", upload("name\tlat\tlong\n")));
+  }
+
+  @Test
+  void testGet_UnknownJob() {
+    assertNull(jobs.get("missing"));
+  }
+}
@@ -0,0 +1,117 @@
+package com.example.citysearch.loader;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.InvalidDataException;
+import com.example.citysearch.trie.CityIndex;
+import com.example.citysearch.trie.IndexType;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TsvIngestionPipelineTest {
+
+  private static final String TSV = "id\tname\tlat\tlong\tcountry\tadmin1\tpopulation\n"
+      + "1\tToronto\t43.70011\t-79.4163\tCA\t08\t4612191\n"
+      + "2\tBroken\tnorth\t-79.4\tCA\t08\t1\n"
+      + "\n"
+      + "3\tMontréal\t45.50884\t-73.58781\tCA\t10\t3268513\n"
+      + "4\tNowhere\t95.0\t-79.4\tCA\t08\t1\n"
+      + "5\tShort\t43.0\n";
+
+  private TsvIngestionPipeline pipeline;
+
+  @AfterEach
+  void tearDown() {
+    pipeline.shutdown();
+  }
+
+  private TsvIngestionPipeline pipeline(RowErrorPolicy policy) {
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setIngestionThreads(2);
+    properties.setRowErrorPolicy(policy);
+    pipeline = new TsvIngestionPipeline(properties);
+    return pipeline;
+  }
+
+  private static InputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testIngest_CollectsRejectedRows() throws IOException {
+    CityIndex.Builder builder = IndexType.TRIE.newBuilder(3);
+
+    IngestionReport report = pipeline(RowErrorPolicy.COLLECT).ingest(stream(TSV), builder);
+
+    assertEquals(2, report.rowsParsed());
+    assertEquals(3, report.rowsRejected());
+    assertEquals(3, report.errors().size());
+    assertTrue(report.errors().get(0).startsWith("Line 3:"));
+    CityIndex index = builder.build();
+    int montreal = index.searchByPrefix("montr", 1)[0];
+    assertEquals("Montréal", index.getStore().getName(montreal));
+    assertEquals(3_268_513, index.getStore().getPopulation(montreal));
+    assertEquals("10", index.getStore().getAdmin1(montreal));
+  }
+
+  @Test
+  void testIngest_SkipDropsRowsWithoutMessages() throws IOException {
+    IngestionReport report = pipeline(RowErrorPolicy.SKIP).ingest(stream(TSV), IndexType.TRIE.newBuilder(3));
+
+    assertEquals(2, report.rowsParsed());
+    assertEquals(3, report.rowsRejected());
+    assertTrue(report.errors().isEmpty());
+  }
+
+  @Test
+  void testIngest_FailStopsOnFirstBadRow() {
+    InvalidDataException exception = assertThrows(InvalidDataException.class,
+        () -> pipeline(RowErrorPolicy.FAIL).ingest(stream(TSV), IndexType.TRIE.newBuilder(3)));
+
+    assertTrue(exception.getMessage().contains("invalid lat 'north'"));
+  }
+
+  @Test
+  void testIngest_IndexesAsciiAndAlternateNames() throws IOException {
+    CityIndex.Builder builder = IndexType.RADIX.newBuilder(3);
+
+    IngestionReport report = pipeline(RowErrorPolicy.FAIL).ingest(stream("name\tascii\talt_name\tlat\tlong\n"
+        + "Montréal\tMontreal\tMontreal,Ville-Marie,Монреаль\t45.50884\t-73.58781\n"), builder);
+    CityIndex index = builder.build();
+
+    assertEquals(1, report.rowsParsed());
+    assertEquals(1, index.getSize());
+    assertEquals(1, index.searchByPrefix("ville", 3).length);
+    assertEquals(1, index.searchByPrefix("монр", 3).length);
+    assertEquals(1, index.searchByPrefix("montreal", 3).length);
+  }
+
+  @Test
+  void testIngest_KeepsSameNamedRowsAndUpsertsById() throws IOException {
+    CityIndex.Builder builder = IndexType.TRIE.newBuilder(3);
+
+    pipeline(RowErrorPolicy.FAIL).ingest(stream("id\tname\tlat\tlong\tcountry\tadmin1\tpopulation\n"
+        + "6058560\tLondon\t42.98339\t-81.23304\tCA\t08\t346765\n"
+        + "2643743\tLondon\t51.50853\t-0.12574\tGB\tENG\t7556900\n"
+        + "6058560\tLondon\t42.98339\t-81.23304\tCA\t08\t383822\n"), builder);
+    CityIndex index = builder.build();
+
+    assertEquals(2, index.getSize());
+    int[] londons = index.searchByPrefix("london", 3);
+    assertEquals("GB", index.getStore().getCountry(londons[0]));
+    assertEquals(383_822, index.getStore().getPopulation(londons[1]));
+  }
+
+  @Test
+  void testIngest_RequiresHeaderColumns() {
+    assertThrows(InvalidDataException.class, () -> pipeline(RowErrorPolicy.COLLECT)
+        .ingest(stream("id\tname\tcountry\n1\tToronto\tCA\n"), IndexType.TRIE.newBuilder(3)));
+  }
+}
@@ -0,0 +1,131 @@
+package com.example.citysearch.service;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.IngestionJobs;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.model.BatchQuery;
+import com.example.citysearch.model.BatchResult;
+import com.example.citysearch.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSearcherTest {
+
+  @TempDir
+  Path tempDir;
+
+  private CitySearchProperties properties;
+  private TsvIngestionPipeline pipeline;
+  private IngestionJobs ingestionJobs;
+  private ShardRouter shardRouter;
+  private CitySearchService searchService;
+  private BatchSearcher batchSearcher;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    properties = new CitySearchProperties();
+    properties.setLimitData(5);
+    properties.setTextScoreWeight(0.6);
+    properties.setLocationScoreWeight(0.4);
+    properties.setIngestionThreads(1);
+    properties.setBatchThreads(2);
+    properties.setBatchMaxQueries(1_000);
+    pipeline = new TsvIngestionPipeline(properties);
+    CityDataLoader dataLoader = new CityDataLoader(properties, pipeline);
+    dataLoader.loadFromFile(null, Files.writeString(tempDir.resolve("cities.tsv"), "name\tlat\tlong\tpopulation\n"
+        + "Toronto\t43.70011\t-79.4163\t2600000\n"
+        + "Torbay\t47.66659\t-52.73135\t7397\n"
+        + "London\t42.98339\t-81.23304\t346765\n"
+        + "Montréal\t45.50884\t-73.58781\t1600000\n"), (rowsParsed, rowsRejected) -> {
+        });
+    ingestionJobs = new IngestionJobs(dataLoader, properties);
+    SearchResultCache resultCache = new SearchResultCache(properties, dataLoader);
+    shardRouter = new ShardRouter(properties, new ObjectMapper());
+    searchService = new CitySearchService(dataLoader, properties, ingestionJobs, resultCache,
+        new SearchMetrics(new SimpleMeterRegistry(), dataLoader, resultCache), shardRouter,
+        new SearchSessions(properties, dataLoader));
+    batchSearcher = new BatchSearcher(searchService, dataLoader, properties);
+  }
+
+  @AfterEach
+  void tearDown() {
+    batchSearcher.shutdown();
+    shardRouter.shutdown();
+    ingestionJobs.shutdown();
+    pipeline.shutdown();
+  }
+
+  private List<BatchResult> run(List<BatchQuery> queries) throws Exception {
+    List<BatchResult> results = new ArrayList<>();
+    batchSearcher.prepare(null, queries, false, false).run(results::addAll);
+    results.sort(Comparator.comparingInt(BatchResult::getIndex));
+    return results;
+  }
+
+  private static List<String> names(List<Suggestion> suggestions) {
+    return suggestions.stream().map(Suggestion::getName).toList();
+  }
+
+  @Test
+  void testRun_AnswersEveryQueryLikeSingleSearches() throws Exception {
+    List<BatchQuery> queries = new ArrayList<>();
+    String[] prefixes = { "Tor", "lon", "MONTR", "tor", "x", "" };
+    for (int i = 0; i < 600; i++) {
+      String q = prefixes[i % prefixes.length];
+      queries.add(i % 2 == 0 ? new BatchQuery(q, null, null) : new BatchQuery(q, 45.0, -75.0));
+    }
+
+    List<BatchResult> results = run(queries);
+
+    assertEquals(600, results.size());
+    for (int i = 0; i < results.size(); i++) {
+      BatchQuery query = queries.get(i);
+      assertEquals(i, results.get(i).getIndex());
+      assertEquals(query.getQ(), results.get(i).getQ());
+      assertNull(results.get(i).getError());
+      assertEquals(names(searchService.search(null, query.getQ(), query.getLatitude(), query.getLongitude(), null,
+          false, false)), names(results.get(i).getSuggestions()));
+    }
+  }
+
+  @Test
+  void testRun_ReportsInvalidQueriesInline() throws Exception {
+    BatchQuery radiusWithoutCoordinates = new BatchQuery("Tor", null, null);
+    radiusWithoutCoordinates.setRadiusKm(10.0);
+
+    List<BatchResult> results = run(Arrays.asList(new BatchQuery("Tor", 95.0, 0.0), null,
+        radiusWithoutCoordinates, new BatchQuery("Tor", null, null)));
+
+    assertEquals("Latitude must be between -90 and 90 degrees", results.get(0).getError());
+    assertEquals("Missing query", results.get(1).getError());
+    assertNotNull(results.get(2).getError());
+    assertEquals(List.of("Toronto", "Torbay"), names(results.get(3).getSuggestions()));
+  }
+
+  @Test
+  void testPrepare_RejectsEmptyAndOversizedBatches() {
+    assertThrows(IllegalArgumentException.class, () -> batchSearcher.prepare(null, List.of(), false, false));
+    List<BatchQuery> tooMany = new ArrayList<>();
+    for (int i = 0; i <= properties.getBatchMaxQueries(); i++) {
+      tooMany.add(new BatchQuery("a", null, null));
+    }
+    assertThrows(IllegalArgumentException.class, () -> batchSearcher.prepare(null, tooMany, false, false));
+  }
+}
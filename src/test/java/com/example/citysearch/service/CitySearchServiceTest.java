@@ -1,7 +1,11 @@
 package com.example.citysearch.service;
 
 import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.exception.JobNotFoundException;
 import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.Dataset;
+import com.example.citysearch.loader.IngestionJob;
+import com.example.citysearch.loader.IngestionJobs;
 import com.example.citysearch.model.City;
 import com.example.citysearch.model.Suggestion;
 import com.example.citysearch.trie.CitySearchTrie;
@@ -14,6 +18,7 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.mock.web.MockMultipartFile;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -27,16 +32,33 @@ class CitySearchServiceTest {
   @Mock
   private CitySearchProperties citySearchProperties;
 
+  @Mock
+  private IngestionJobs ingestionJobs;
+
+  @Mock
+  private SearchResultCache resultCache;
+
+  @Mock
+  private SearchMetrics metrics;
+
+  @Mock
+  private ShardRouter shardRouter;
+
+  @Mock
+  private SearchSessions searchSessions;
+
   @InjectMocks
   private CitySearchService citySearchService;
 
-  private CitySearchTrie mockTrie;
+  private CitySearchTrie.Builder mockTrie;
 
   @BeforeEach
   void setUp() {
     MockitoAnnotations.openMocks(this);
-    mockTrie = new CitySearchTrie();
-    when(dataLoader.getTrie()).thenReturn(mockTrie);
+    mockTrie = new CitySearchTrie.Builder();
+    Dataset dataset = mock(Dataset.class);
+    when(dataset.getIndex()).thenAnswer(invocation -> mockTrie.build());
+    when(dataLoader.getDataset(any())).thenReturn(dataset);
   }
 
   @Test
@@ -105,6 +127,36 @@ class CitySearchServiceTest {
     assertEquals("Toronto", suggestions.get(0).getName());
   }
 
+  @Test
+  void testSearch_CoordinatesOnlyWithinRadius() {
+    mockTrie.insert("Toronto", new City("Toronto", 43.7, -79.42, 2_600_000));
+    mockTrie.insert("Mississauga", new City("Mississauga", 43.58, -79.66, 721_599));
+    mockTrie.insert("Vancouver", new City("Vancouver", 49.25, -123.12, 600_000));
+
+    when(citySearchProperties.getLimitData()).thenReturn(10);
+
+    List<Suggestion> suggestions = citySearchService.search(null, null, 43.6, -79.6, 50.0, false, false);
+
+    assertEquals(List.of("Mississauga", "Toronto"), suggestions.stream().map(Suggestion::getName).toList());
+  }
+
+  @Test
+  void testSearch_RadiusMeasuredFromCallerWithCacheOn() {
+    // About 0.8 km from the caller but 1.4 km from the centre of the caller's 0.01 degree cell
+    mockTrie.insert("Cooksville", new City("Cooksville", 43.6449, -79.6449, 10_000));
+
+    when(citySearchProperties.getLimitData()).thenReturn(10);
+    when(resultCache.isEnabled()).thenReturn(true);
+    when(resultCache.snap(anyDouble(), anyDouble()))
+        .thenAnswer(invocation -> (Math.floor(invocation.<Double>getArgument(0) / 0.01) + 0.5) * 0.01);
+    when(resultCache.get(any(), any()))
+        .thenAnswer(invocation -> invocation.<Supplier<List<Suggestion>>>getArgument(1).get());
+
+    List<Suggestion> suggestions = citySearchService.search(null, null, 43.6509, -79.6509, 1.0, false, false);
+
+    assertEquals(List.of("Cooksville"), suggestions.stream().map(Suggestion::getName).toList());
+  }
+
   @Test
   void testSearch_ScoringMechanism() {
     String query = "Toronto";
@@ -128,14 +180,71 @@ class CitySearchServiceTest {
   }
 
   @Test
-  void testLoadFromMultipartFile_ValidFile() throws Exception {
+  void testSearch_FuzzyFillsWithNearMisses() {
+    mockTrie.insert("Toronto", new City("Toronto", 43.7, -79.42, 2_600_000));
+    mockTrie.insert("Torbay", new City("Torbay", 47.65, -52.73, 7_000));
+
+    when(citySearchProperties.getLimitData()).thenReturn(10);
+    when(citySearchProperties.getFuzzyMaxEdits()).thenReturn(2);
+    when(citySearchProperties.getTextScoreWeight()).thenReturn(1.0);
+
+    assertTrue(citySearchService.search(null, "Torono", null, null, null, false, false).isEmpty());
+    List<Suggestion> suggestions = citySearchService.search(null, "Torono", null, null, null, true, false);
+
+    assertEquals("Toronto", suggestions.get(0).getName());
+    assertEquals(0.5, suggestions.get(0).getScore(), 1e-9);
+
+    // Barrie is a single edit away and near the caller, yet stays below the exact prefix match
+    mockTrie.insert("Barrie", new City("Barrie", 44.39, -79.69, 136_063));
+    mockTrie.insert("Barruecopardo", new City("Barruecopardo", 41.07, -6.66, 1_400));
+    when(citySearchProperties.getTextScoreWeight()).thenReturn(0.2);
+    when(citySearchProperties.getLocationScoreWeight()).thenReturn(0.8);
+    List<Suggestion> located = citySearchService.search(null, "Barrue", 43.7, -79.42, null, true, false);
+
+    assertEquals(List.of("Barruecopardo", "Barrie"), located.stream().map(Suggestion::getName).toList());
+  }
+
+  @Test
+  void testSearch_InfixRanksInnerWordsBelowPrefixMatches() {
+    mockTrie.insert("New York", new City("New York", 40.71, -74.01, 8_000_000));
+    mockTrie.insert("Yorkton", new City("Yorkton", 51.21, -102.46, 15_000));
+
+    when(citySearchProperties.getLimitData()).thenReturn(10);
+    when(citySearchProperties.getTextScoreWeight()).thenReturn(1.0);
+
+    assertEquals(1, citySearchService.search(null, "york", null, null, null, false, false).size());
+    List<Suggestion> suggestions = citySearchService.search(null, "york", null, null, null, false, true);
+
+    assertEquals(2, suggestions.size());
+    assertEquals("Yorkton", suggestions.get(0).getName());
+    assertEquals("New York", suggestions.get(1).getName());
+    assertTrue(suggestions.get(0).getScore() > suggestions.get(1).getScore());
+
+    // New York is far closer to Toronto, but only matches a later word
+    when(citySearchProperties.getTextScoreWeight()).thenReturn(0.2);
+    when(citySearchProperties.getLocationScoreWeight()).thenReturn(0.8);
+    List<Suggestion> located = citySearchService.search(null, "york", 43.7, -79.42, null, false, true);
+
+    assertEquals(List.of("Yorkton", "New York"), located.stream().map(Suggestion::getName).toList());
+  }
+
+  @Test
+  void testSubmitUpload_ValidFile() throws Exception {
     MockMultipartFile file = new MockMultipartFile("file", "cities.tsv", "text/tab-separated-values",
         "name\tlat\tlong\nToronto\t43.7\t-79.42".getBytes());
+    IngestionJob job = new IngestionJob("job-1", "je");
+
+    when(ingestionJobs.submit(any(), any())).thenReturn(job);
 
-    doNothing().when(dataLoader).loadFromMultipartFile(any());
+    assertSame(job, citySearchService.submitUpload("je", file));
+    verify(ingestionJobs, times(1)).submit("je", file);
+  }
+
+  @Test
+  void testGetUploadJob_UnknownId() {
+    when(ingestionJobs.get("missing")).thenReturn(null);
 
-    assertDoesNotThrow(() -> citySearchService.loadFromMultipartFile(file));
-    verify(dataLoader, times(1)).loadFromMultipartFile(file);
+    assertThrows(JobNotFoundException.class, () -> citySearchService.getUploadJob("missing"));
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.example.citysearch.service;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.IngestionJobs;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.model.ShardHit;
+import com.example.citysearch.model.Suggestion;
+import com.example.citysearch.trie.ShardedCityIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteShardTest {
+
+  @TempDir
+  Path tempDir;
+
+  private HttpServer standIn;
+  private SimpleMeterRegistry registry;
+  private TsvIngestionPipeline pipeline;
+  private IngestionJobs ingestionJobs;
+  private ShardRouter shardRouter;
+  private CitySearchService searchService;
+
+  // A node holding the other shard of the dataset; "down" answers 500
+  @BeforeEach
+  void setUp() throws IOException {
+    standIn = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    standIn.createContext("/up/api/v1/suggestions/shard", exchange -> {
+      byte[] body = ("[{\"name\":\"Torbay\",\"country\":\"CA\",\"admin1\":\"05\",\"latitude\":47.66659,"
+          + "\"longitude\":-52.73135,\"score\":0.5,\"population\":7397,\"textScore\":1.0},"
+          + "{\"name\":\"Tornio\",\"country\":\"FI\",\"admin1\":\"15\",\"latitude\":65.84811,"
+          + "\"longitude\":24.14662,\"score\":0.5,\"population\":22000,\"textScore\":1.0},"
+          + "{\"name\":\"Lake Tor\",\"country\":\"CA\",\"admin1\":\"08\",\"latitude\":44.0,"
+          + "\"longitude\":-79.0,\"score\":0.9,\"population\":5000000,\"textScore\":0.75}]")
+          .getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    standIn.createContext("/down/api/v1/suggestions/shard", exchange -> {
+      exchange.sendResponseHeaders(500, -1);
+      exchange.close();
+    });
+    standIn.start();
+    String base = "http://127.0.0.1:" + standIn.getAddress().getPort();
+
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setLimitData(3);
+    properties.setTextScoreWeight(0.5);
+    properties.setLocationScoreWeight(0.5);
+    properties.setIngestionThreads(1);
+    properties.setShardCount(2);
+    properties.setResultCacheSize(0);
+    properties.setRemoteShards(Map.of("canada-usa", List.of(base + "/up", base + "/down")));
+    pipeline = new TsvIngestionPipeline(properties);
+    CityDataLoader dataLoader = new CityDataLoader(properties, pipeline);
+    dataLoader.loadFromFile(null, Files.writeString(tempDir.resolve("cities.tsv"), "name\tlat\tlong\tpopulation\n"
+        + "Toronto\t43.70011\t-79.4163\t2600000\n"
+        + "Torrington\t41.80065\t-73.12122\t35000\n"
+        + "London\t42.98339\t-81.23304\t346765\n"), (rowsParsed, rowsRejected) -> {
+        });
+    assertInstanceOf(ShardedCityIndex.class, dataLoader.getDataset(null).getIndex());
+    ingestionJobs = new IngestionJobs(dataLoader, properties);
+    SearchResultCache resultCache = new SearchResultCache(properties, dataLoader);
+    shardRouter = new ShardRouter(properties, new ObjectMapper());
+    registry = new SimpleMeterRegistry();
+    searchService = new CitySearchService(dataLoader, properties, ingestionJobs, resultCache,
+        new SearchMetrics(registry, dataLoader, resultCache), shardRouter,
+        new SearchSessions(properties, dataLoader));
+  }
+
+  @AfterEach
+  void tearDown() {
+    standIn.stop(0);
+    shardRouter.shutdown();
+    ingestionJobs.shutdown();
+    pipeline.shutdown();
+  }
+
+  @Test
+  void testSearch_MergesLocalAndRemoteShards() {
+    List<Suggestion> suggestions = searchService.search(null, "tor", null, null, null, false, false);
+
+    // Equal scores go to the larger city, wherever it lives, and an inner-word
+    // match stays below every full-prefix match whatever its score
+    assertEquals(List.of("Toronto", "Torrington", "Tornio"), suggestions.stream().map(Suggestion::getName).toList());
+    assertEquals(1, registry.counter("citysearch.shard.failures", "shard",
+        "http://127.0.0.1:" + standIn.getAddress().getPort() + "/down").count());
+  }
+
+  @Test
+  void testSearchShard_AnswersFromLocalCitiesOnly() {
+    assertEquals(List.of("Toronto", "Torrington"),
+        searchService.searchShard(null, "tor", null, null, null, false, false).stream()
+            .map(ShardHit::name).toList());
+    assertEquals(1.0, searchService.searchShard(null, "tor", null, null, null, false, false).get(0).textScore());
+  }
+}
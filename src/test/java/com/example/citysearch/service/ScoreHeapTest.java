@@ -0,0 +1,52 @@
+package com.example.citysearch.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScoreHeapTest {
+
+  @Test
+  void testDrain_BestFirstWithTiesInOfferOrder() {
+    ScoreHeap heap = new ScoreHeap(3);
+    heap.offer(1, 0.5);
+    heap.offer(2, 0.9);
+    heap.offer(3, 0.5);
+    heap.offer(4, 0.1);
+    heap.offer(5, 0.5);
+
+    int[] cities = new int[3];
+    double[] scores = new double[3];
+    assertEquals(3, heap.drain(cities, scores));
+
+    assertArrayEquals(new int[] { 2, 1, 3 }, cities);
+    assertArrayEquals(new double[] { 0.9, 0.5, 0.5 }, scores);
+    assertEquals(0, heap.size());
+  }
+
+  @Test
+  void testDrain_MatchesStableSortOfAllOffers() {
+    Random random = new Random(3);
+    for (int round = 0; round < 200; round++) {
+      int capacity = 1 + random.nextInt(12);
+      double[] offered = IntStream.range(0, random.nextInt(40)).mapToDouble(i -> random.nextInt(8) / 8.0).toArray();
+      ScoreHeap heap = new ScoreHeap(capacity);
+      for (int city = 0; city < offered.length; city++) {
+        heap.offer(city, offered[city]);
+      }
+
+      int[] cities = new int[heap.size()];
+      heap.drain(cities, new double[cities.length]);
+
+      List<Integer> expected = IntStream.range(0, offered.length).boxed()
+          .sorted(Comparator.comparingDouble((Integer city) -> offered[city]).reversed())
+          .limit(capacity).toList();
+      assertEquals(expected, IntStream.of(cities).boxed().toList());
+    }
+  }
+}
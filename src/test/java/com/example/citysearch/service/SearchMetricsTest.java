@@ -0,0 +1,89 @@
+package com.example.citysearch.service;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchMetricsTest {
+
+  @TempDir
+  Path tempDir;
+
+  private TsvIngestionPipeline pipeline;
+  private CityDataLoader dataLoader;
+  private SimpleMeterRegistry registry;
+  private SearchMetrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setLimitData(10);
+    properties.setIngestionThreads(1);
+    pipeline = new TsvIngestionPipeline(properties);
+    dataLoader = new CityDataLoader(properties, pipeline);
+    registry = new SimpleMeterRegistry();
+    metrics = new SearchMetrics(registry, dataLoader, new SearchResultCache(properties, dataLoader));
+  }
+
+  @AfterEach
+  void tearDown() {
+    pipeline.shutdown();
+  }
+
+  private void upload(String dataset, String rows) throws IOException {
+    Path file = Files.writeString(tempDir.resolve("cities.tsv"), "name\tlat\tlong\n" + rows);
+    dataLoader.loadFromFile(dataset, file, (rowsParsed, rowsRejected) -> {
+    });
+  }
+
+  private double gauge(String name, String dataset) {
+    return registry.get(name).tag("dataset", dataset).gauge().value();
+  }
+
+  @Test
+  void testGauges_FollowLiveIndexAndEviction() throws IOException {
+    upload("extra", "Toronto\t43.7\t-79.42\nOttawa\t45.41\t-75.7\nBroken\tnorth\t-75.7\n");
+
+    assertEquals(2, gauge("citysearch.index.cities", "extra"));
+    assertEquals(1, gauge("citysearch.index.version", "extra"));
+    assertTrue(gauge("citysearch.index.nodes", "extra") > 0);
+    assertTrue(gauge("citysearch.index.memory", "extra") > 0);
+    assertEquals(0, gauge("citysearch.index.cities", "canada-usa"));
+    assertEquals(2, registry.get("citysearch.ingestion.rows").tags("dataset", "extra", "outcome", "parsed")
+        .counter().count());
+    assertEquals(1, registry.get("citysearch.ingestion.rows").tags("dataset", "extra", "outcome", "rejected")
+        .counter().count());
+
+    dataLoader.evict("extra");
+    assertNull(registry.find("citysearch.index.cities").tag("dataset", "extra").gauge());
+
+    upload("extra", "Montréal\t45.5\t-73.58\n");
+    assertEquals(1, gauge("citysearch.index.cities", "extra"));
+  }
+
+  @Test
+  void testRecordStages_TaggedByStage() {
+    metrics.recordLookup(TimeUnit.MICROSECONDS.toNanos(20));
+    metrics.recordSort(TimeUnit.MICROSECONDS.toNanos(3));
+    metrics.recordSort(TimeUnit.MICROSECONDS.toNanos(5));
+
+    assertEquals(1, registry.get("citysearch.search.stage").tag("stage", "lookup").timer().count());
+    assertEquals(8, registry.get("citysearch.search.stage").tag("stage", "sort").timer()
+        .totalTime(TimeUnit.MICROSECONDS), 1e-9);
+    assertEquals(0, registry.get("citysearch.search.stage").tag("stage", "serialization").timer().count());
+  }
+}
@@ -0,0 +1,89 @@
+package com.example.citysearch.service;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.model.Suggestion;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+
+  @TempDir
+  Path tempDir;
+
+  private TsvIngestionPipeline pipeline;
+  private CityDataLoader dataLoader;
+  private SearchResultCache cache;
+
+  @BeforeEach
+  void setUp() {
+    CitySearchProperties properties = new CitySearchProperties();
+    properties.setLimitData(10);
+    properties.setIngestionThreads(1);
+    pipeline = new TsvIngestionPipeline(properties);
+    dataLoader = new CityDataLoader(properties, pipeline);
+    cache = new SearchResultCache(properties, dataLoader);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pipeline.shutdown();
+  }
+
+  private static SearchResultCache.Key key(String dataset, long version, String query) {
+    return new SearchResultCache.Key(dataset, version, query, null, null, false, false);
+  }
+
+  @Test
+  void testGet_ComputesOncePerKey() {
+    AtomicInteger searches = new AtomicInteger();
+    List<Suggestion> result = List.of(new Suggestion("Toronto", 43.7, -79.42, 1.0));
+
+    cache.get(key("canada-usa", 1, "tor"), () -> {
+      searches.incrementAndGet();
+      return result;
+    });
+    List<Suggestion> cached = cache.get(key("canada-usa", 1, "tor"), () -> {
+      searches.incrementAndGet();
+      return List.of();
+    });
+
+    assertEquals(1, searches.get());
+    assertEquals(result, cached);
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+  }
+
+  @Test
+  void testPublish_DropsEntriesOfThatDataset() throws IOException {
+    cache.get(key("canada-usa", 0, "tor"), List::of);
+    cache.get(key("other", 0, "tor"), List::of);
+    Path upload = Files.writeString(tempDir.resolve("cities.tsv"), "name\tlat\tlong\nToronto\t43.7\t-79.42\n");
+
+    dataLoader.loadFromFile(null, upload, (rowsParsed, rowsRejected) -> {
+    });
+
+    assertEquals(1, dataLoader.getDataset(null).getVersion());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  void testSnap_MapsCellToItsCentre() {
+    assertEquals(43.705, cache.snap(43.7012, 90), 1e-9);
+    assertEquals(43.705, cache.snap(43.7099, 90), 1e-9);
+    assertEquals(-79.415, cache.snap(-79.4163, 180), 1e-9);
+    assertEquals(90, cache.snap(90, 90), 1e-9);
+  }
+}
@@ -0,0 +1,111 @@
+package com.example.citysearch.service;
+
+import com.example.citysearch.config.CitySearchProperties;
+import com.example.citysearch.loader.CityDataLoader;
+import com.example.citysearch.loader.IngestionJobs;
+import com.example.citysearch.loader.TsvIngestionPipeline;
+import com.example.citysearch.model.Suggestion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchSessionsTest {
+
+  @TempDir
+  Path tempDir;
+
+  private CitySearchProperties properties;
+  private TsvIngestionPipeline pipeline;
+  private IngestionJobs ingestionJobs;
+  private ShardRouter shardRouter;
+  private CityDataLoader dataLoader;
+  private SearchSessions sessions;
+  private CitySearchService searchService;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    properties = new CitySearchProperties();
+    properties.setLimitData(3);
+    properties.setTextScoreWeight(0.6);
+    properties.setLocationScoreWeight(0.4);
+    properties.setIngestionThreads(1);
+    properties.setResultCacheSize(0);
+    properties.setSessionMaxKeys(4);
+    pipeline = new TsvIngestionPipeline(properties);
+    dataLoader = new CityDataLoader(properties, pipeline);
+    dataLoader.loadFromFile(null, Files.writeString(tempDir.resolve("cities.tsv"),
+        "id\tname\talt_name\tlat\tlong\tpopulation\n"
+            + "6167865\tToronto\tTdot\t43.70011\t-79.4163\t2600000\n"
+            + "6167863\tTorbay\t\t47.66659\t-52.73135\t7397\n"
+            + "5174095\tToronto Junction\t\t40.4648\t-80.6065\t5000\n"
+            + "4930282\tTorrington\tTorr\t41.80065\t-73.12122\t35000\n"
+            + "6058560\tLondon\t\t42.98339\t-81.23304\t346765\n"
+            + "6077243\tMontréal\tTorontoville\t45.50884\t-73.58781\t1600000\n"), (rowsParsed, rowsRejected) -> {
+            });
+    ingestionJobs = new IngestionJobs(dataLoader, properties);
+    shardRouter = new ShardRouter(properties, new ObjectMapper());
+    sessions = new SearchSessions(properties, dataLoader);
+    SearchResultCache resultCache = new SearchResultCache(properties, dataLoader);
+    searchService = new CitySearchService(dataLoader, properties, ingestionJobs, resultCache,
+        new SearchMetrics(new SimpleMeterRegistry(), dataLoader, resultCache), shardRouter, sessions);
+  }
+
+  @AfterEach
+  void tearDown() {
+    shardRouter.shutdown();
+    ingestionJobs.shutdown();
+    pipeline.shutdown();
+  }
+
+  private static List<String> names(List<Suggestion> suggestions) {
+    return suggestions.stream().map(Suggestion::getName).toList();
+  }
+
+  @Test
+  void testKeystrokes_AnswerAsWithoutSession() {
+    // "t" has too many keys for a cursor, "to" starts one and backspacing to it keeps it
+    for (String query : List.of("t", "to", "tor", "toro", "toront", "torontox", "toro", "to", "tor", "t")) {
+      for (Double latitude : new Double[] { null, 45.0 }) {
+        Double longitude = latitude == null ? null : -75.0;
+        assertEquals(names(searchService.search(null, query, latitude, longitude, null, true, true)),
+            names(searchService.search(null, query, latitude, longitude, null, true, true, "box-1")), query);
+      }
+    }
+    assertEquals(0, sessions.size());
+  }
+
+  @Test
+  void testCursor_KeptForNarrowerQueriesAndDroppedOnNewIndex() throws IOException {
+    assertEquals(List.of("Toronto", "Montréal", "Toronto Junction"),
+        names(searchService.search(null, "toro", null, null, null, false, false, "box-1")));
+    assertEquals(1, sessions.size());
+    assertEquals(List.of("Montréal"),
+        names(searchService.search(null, "Torontov", null, null, null, false, false, "box-1")));
+    assertEquals(1, sessions.size());
+
+    dataLoader.loadFromFile(null, Files.writeString(tempDir.resolve("more.tsv"), "name\tlat\tlong\tpopulation\n"
+        + "Torontonia\t43.0\t-79.0\t10\n"), (rowsParsed, rowsRejected) -> {
+        });
+    assertEquals(0, sessions.size());
+    assertTrue(names(searchService.search(null, "toronton", null, null, null, false, false, "box-1"))
+        .contains("Torontonia"));
+  }
+
+  @Test
+  void testSession_RejectsMalformedIds() {
+    assertThrows(IllegalArgumentException.class,
+        () -> searchService.search(null, "to", null, null, null, false, false, "a b"));
+  }
+}
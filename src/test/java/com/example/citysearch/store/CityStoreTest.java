@@ -0,0 +1,107 @@
+package com.example.citysearch.store;
+
+import com.example.citysearch.model.City;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CityStoreTest {
+
+  @Test
+  void testColumnsRoundTrip() {
+    CityStore.Builder builder = new CityStore.Builder();
+    int montreal = builder.add(new City("Montréal", 45.50884, -73.58781, 3_268_513, "CA", "10"));
+    int toronto = builder.add(new City("Toronto", 43.70011, -79.4163));
+    CityStore store = builder.build();
+
+    assertEquals(2, store.size());
+    assertEquals("Montréal", store.getName(montreal));
+    assertEquals(45.50884, store.getLatitude(montreal));
+    assertEquals(-73.58781, store.getLongitude(montreal));
+    assertEquals(3_268_513, store.getPopulation(montreal));
+    assertEquals("CA", store.getCountry(montreal));
+    assertEquals("10", store.getAdmin1(montreal));
+    assertNull(store.getCountry(toronto));
+    assertNull(store.getAdmin1(toronto));
+  }
+
+  @Test
+  void testCompareRank_PopulationThenName() {
+    CityStore.Builder builder = new CityStore.Builder();
+    int big = builder.add(new City("Zurich", 0, 0, 400_000));
+    int smallA = builder.add(new City("Aarau", 0, 0, 20_000));
+    int smallB = builder.add(new City("Baden", 0, 0, 20_000));
+    CityStore store = builder.build();
+
+    assertTrue(store.compareRank(big, smallA) < 0);
+    assertTrue(store.compareRank(smallA, smallB) < 0);
+    assertEquals(0, store.compareRank(smallB, smallB));
+  }
+
+  @Test
+  void testToBuilder_KeepsIdsAndGrows() {
+    CityStore.Builder builder = new CityStore.Builder();
+    for (int i = 0; i < 40; i++) {
+      builder.add(new City("City " + i, i, -i, i, "US", "NY"));
+    }
+    CityStore store = builder.build();
+
+    CityStore.Builder next = store.toBuilder();
+    int added = next.add(new City("Québec", 46.81, -71.21, 531_902, "CA", "10"));
+    CityStore grown = next.build();
+
+    assertEquals(40, added);
+    assertEquals("City 17", grown.getName(17));
+    assertEquals("NY", grown.getAdmin1(17));
+    assertEquals("Québec", grown.getName(added));
+    assertEquals("10", grown.getAdmin1(added));
+  }
+
+  @Test
+  void testAdd_SameGeonameIdReplacesEntry() {
+    CityStore.Builder builder = new CityStore.Builder();
+    int first = builder.add(new City("Berlin", 52.52, 13.41, 3_426_354, "DE", "16", 2950159));
+    int other = builder.add(new City("Berlin", 44.47, -71.19, 9_367, "US", "NH", 5084868));
+    int replaced = builder.add(new City("Berlin-Mitte", 52.52, 13.40, 384_172, "DE", "16", 2950159));
+    CityStore store = builder.build();
+
+    assertEquals(first, replaced);
+    assertEquals(2, store.size());
+    assertEquals("Berlin-Mitte", store.getName(first));
+    assertEquals(384_172, store.getPopulation(first));
+    assertEquals("Berlin", store.getName(other));
+    assertEquals(5084868, store.getGeonameId(other));
+  }
+
+  @Test
+  void testAdd_ReplacementWithoutCountryClearsCountry() {
+    CityStore.Builder builder = new CityStore.Builder();
+    int first = builder.add(new City("Berlin", 52.52, 13.41, 3_426_354, "DE", "16", 2950159));
+    int replaced = builder.add(new City("Berlin", 52.52, 13.41, 3_426_354, "", "16", 2950159));
+    CityStore store = builder.build();
+
+    assertEquals(first, replaced);
+    assertNull(store.getCountry(first));
+  }
+
+  @Test
+  void testConcat_ReadsTailAfterHead() {
+    CityStore.Builder head = new CityStore.Builder();
+    head.add(new City("Ottawa", 45.41, -75.70, 812_129, "CA", "08", 6094817));
+    CityStore.Builder tail = new CityStore.Builder();
+    tail.add(new City("Gatineau", 45.48, -75.70, 242_124, "CA", "10", 5959974));
+    CityStore store = CityStore.concat(head.build(), tail.build());
+
+    assertEquals(2, store.size());
+    assertEquals("Gatineau", store.getName(1));
+    assertEquals("10", store.getAdmin1(1));
+    assertEquals(5959974, store.getGeonameId(1));
+    assertTrue(store.compareRank(0, 1) < 0);
+
+    CityStore flat = store.toBuilder().build();
+    assertEquals("Ottawa", flat.getName(0));
+    assertEquals("Gatineau", flat.getName(1));
+    assertEquals(45.48, flat.getLatitude(1));
+  }
+}
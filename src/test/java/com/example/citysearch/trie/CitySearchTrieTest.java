@@ -0,0 +1,259 @@
+package com.example.citysearch.trie;
+
+import com.example.citysearch.model.City;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CitySearchTrieTest {
+
+  private static List<String> names(CityIndex index, int[] ids) {
+    return Arrays.stream(ids).mapToObj(index.getStore()::getName).toList();
+  }
+
+  private CityIndex build(IndexType type) {
+    return type.newBuilder(3)
+        .insert("Sarnia", new City("Sarnia", 42.97, -82.40, 72_047))
+        .insert("Seattle", new City("Seattle", 47.61, -122.33, 608_660))
+        .insert("Saskatoon", new City("Saskatoon", 52.12, -106.63, 198_958))
+        .insert("San Antonio", new City("San Antonio", 29.42, -98.49, 1_327_407))
+        .insert("Selma", new City("Selma", 32.41, -87.02, 20_756))
+        .build();
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchByPrefix_ReturnsMostPopulatedFirst(IndexType type) {
+    CityIndex trie = build(type);
+
+    assertEquals(List.of("San Antonio", "Seattle", "Saskatoon"), names(trie, trie.searchByPrefix("s", 3)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchByPrefix_NarrowPrefix(IndexType type) {
+    CityIndex trie = build(type);
+
+    assertEquals(List.of("San Antonio", "Saskatoon"), names(trie, trie.searchByPrefix("Sa", 2)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchByPrefix_PrefixEndingInsideCompressedEdge(IndexType type) {
+    CityIndex trie = build(type);
+
+    assertEquals(List.of("Saskatoon"), names(trie, trie.searchByPrefix("SASK", 3)));
+    assertEquals(0, trie.searchByPrefix("Sasy", 3).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testForEachKeyWithPrefix_VisitsSubtreeUntilStopped(IndexType type) {
+    CityIndex trie = build(type);
+    List<String> keys = new ArrayList<>();
+
+    assertTrue(trie.forEachKeyWithPrefix("SA", (key, city) -> keys.add(key + "=" + trie.getStore().getName(city))));
+    assertEquals(List.of("san antonio=San Antonio", "sarnia=Sarnia", "saskatoon=Saskatoon"), keys);
+    assertTrue(trie.forEachKeyWithPrefix("sasy", (key, city) -> false));
+    assertFalse(trie.forEachKeyWithPrefix("s", (key, city) -> keys.size() < 4 && keys.add(key.toString())));
+    assertEquals(4, keys.size());
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchByPrefix_LimitAboveTopKWalksSubtree(IndexType type) {
+    CityIndex trie = build(type);
+    List<String> results = names(trie, trie.searchByPrefix("s", 10));
+
+    assertEquals(5, results.size());
+    assertEquals("Selma", results.get(4));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testGetAllCities_UsesRootRanking(IndexType type) {
+    CityIndex trie = build(type);
+
+    assertEquals(List.of("San Antonio"), names(trie, trie.getAllCities(1)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchNearestByPrefix_RanksWholeSubtreeByDistance(IndexType type) {
+    CityIndex trie = build(type);
+
+    assertEquals(List.of("Sarnia", "Selma"), names(trie, trie.searchNearestByPrefix("s", 43.0, -82.0, 2)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchNearest_IgnoresNames(IndexType type) {
+    CityIndex trie = build(type);
+
+    assertEquals(List.of("Sarnia", "Selma", "Saskatoon"), names(trie, trie.searchNearest(43.0, -82.0,
+        Double.POSITIVE_INFINITY, 3)));
+    assertEquals(List.of("Seattle"), names(trie, trie.searchNearest(47.0, -122.0, 100, 3)));
+    assertEquals(0, trie.searchNearest(0, 0, 100, 3).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchNearestByPrefix_NoMatch(IndexType type) {
+    assertEquals(0, build(type).searchNearestByPrefix("x", 43.0, -82.0, 2).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testToBuilder_LeavesPublishedSnapshotUntouched(IndexType type) {
+    CityIndex trie = build(type);
+    CityIndex next = trie.toBuilder()
+        .insert("Sudbury", new City("Sudbury", 46.49, -80.99, 2_000_000))
+        .build();
+
+    assertEquals(5, trie.getSize());
+    assertEquals(6, next.getSize());
+    assertEquals(List.of("San Antonio"), names(trie, trie.getAllCities(1)));
+    assertEquals(List.of("Sudbury"), names(next, next.getAllCities(1)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testEmptyIndex(IndexType type) {
+    CityIndex trie = type.newBuilder(3).build();
+
+    assertEquals(0, trie.getSize());
+    assertEquals(0, trie.getAllCities(3).length);
+    assertEquals(0, trie.searchNearestByPrefix("", 43.0, -82.0, 3).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchFuzzyByPrefix_ToleratesTypos(IndexType type) {
+    CityIndex trie = build(type);
+    FuzzyMatches matches = trie.searchFuzzyByPrefix("Sarnai", 2, 3);
+
+    assertEquals(1, matches.size());
+    assertEquals("Sarnia", trie.getStore().getName(matches.city(0)));
+    assertEquals(1, matches.edits(0));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchFuzzyByPrefix_FewerEditsRankFirst(IndexType type) {
+    CityIndex trie = build(type);
+    FuzzyMatches matches = trie.searchFuzzyByPrefix("sel", 1, 3);
+
+    assertEquals(2, matches.size());
+    assertEquals("Selma", trie.getStore().getName(matches.city(0)));
+    assertEquals(0, matches.edits(0));
+    assertEquals("Seattle", trie.getStore().getName(matches.city(1)));
+    assertEquals(1, matches.edits(1));
+    assertEquals(0, trie.searchFuzzyByPrefix("xyz", 1, 3).size());
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchByPrefix_FoldsAccentsAndCase(IndexType type) {
+    CityIndex trie = type.newBuilder(3)
+        .insert("Montréal", new City("Montréal", 45.50884, -73.58781, 3_268_513))
+        .insert("Québec", new City("Québec", 46.81228, -71.21454, 531_902))
+        .build();
+
+    assertEquals(List.of("Montréal"), names(trie, trie.searchByPrefix("montreal", 3)));
+    assertEquals(List.of("Montréal"), names(trie, trie.searchByPrefix("MONTRÉ", 3)));
+    assertEquals(List.of("Québec"), names(trie, trie.searchByPrefix("Quebec", 3)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testInsert_AlternateNamesShareOneCity(IndexType type) {
+    CityIndex trie = type.newBuilder(3)
+        .insert("New York City", new City("New York City", 40.71, -74.01, 8_175_133), List.of("NYC", "Nueva York"))
+        .insert("Newark", new City("Newark", 40.74, -74.17, 281_944), List.of("New Ark"))
+        .insert("Nyack", new City("Nyack", 41.09, -73.92, 7_000))
+        .build();
+
+    assertEquals(3, trie.getSize());
+    assertEquals(List.of("New York City"), names(trie, trie.searchByPrefix("nueva", 3)));
+    assertEquals(List.of("New York City", "Nyack"), names(trie, trie.searchByPrefix("ny", 3)));
+    assertEquals(List.of("New York City", "Newark"), names(trie, trie.searchByPrefix("new", 3)));
+    assertEquals(List.of("New York City", "Newark"), names(trie, trie.searchByPrefix("n", 10)).subList(0, 2));
+    assertEquals(3, trie.searchNearestByPrefix("n", 40.7, -74.0, 10).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testInsert_NameWinsOverEarlierAlternateName(IndexType type) {
+    CityIndex trie = type.newBuilder(3)
+        .insert("Toronto", new City("Toronto", 43.70, -79.42, 2_600_000), List.of("York"))
+        .insert("York", new City("York", 39.96, -76.73, 43_718))
+        .build();
+
+    assertEquals(List.of("York"), names(trie, trie.searchByPrefix("york", 3)));
+    assertEquals(List.of("York"), names(trie, trie.toBuilder().build().searchByPrefix("york", 3)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearchByWordPrefix_MatchesLaterWords(IndexType type) {
+    CityIndex trie = type.newBuilder(3)
+        .insert("New York City", new City("New York City", 40.71, -74.01, 8_175_133), List.of("Big Apple"))
+        .insert("St. Catharines", new City("St. Catharines", 43.17, -79.24, 131_400))
+        .insert("Salt Lake City", new City("Salt Lake City", 40.76, -111.89, 200_591))
+        .insert("Yorkton", new City("Yorkton", 51.21, -102.46, 15_669))
+        .build();
+
+    assertEquals(List.of("New York City"), names(trie, trie.searchByWordPrefix("york", 3)));
+    assertEquals(List.of("St. Catharines"), names(trie, trie.searchByWordPrefix("Cath", 3)));
+    assertEquals(List.of("New York City", "Salt Lake City"), names(trie, trie.searchByWordPrefix("city", 3)));
+    assertEquals(List.of("Salt Lake City", "New York City"),
+        names(trie, trie.searchNearestByWordPrefix("city", 40.0, -112.0, 3)));
+    assertEquals(0, trie.searchByWordPrefix("apple", 3).length);
+    assertEquals(List.of("New York City"), names(trie, trie.toBuilder().build().searchByWordPrefix("york", 3)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testInsert_KeepsSameNamedCities(IndexType type) {
+    CityIndex trie = type.newBuilder(3)
+        .insert("Springfield", new City("Springfield", 39.80, -89.64, 116_250, "US", "IL", 4250542))
+        .insert("Springfield", new City("Springfield", 42.10, -72.59, 153_060, "US", "MA", 4951788))
+        .insert("Springfield", new City("Springfield", 37.22, -93.30, 159_498, "US", "MO", 4409896))
+        .build();
+
+    assertEquals(3, trie.getSize());
+    int[] top = trie.searchByPrefix("spring", 3);
+    assertEquals(3, top.length);
+    assertEquals("MO", trie.getStore().getAdmin1(top[0]));
+    int nearest = trie.searchNearestByPrefix("springfield", 42.0, -72.0, 1)[0];
+    assertEquals("MA", trie.getStore().getAdmin1(nearest));
+    assertEquals(3, trie.toBuilder().build().searchByPrefix("springfield", 10).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testInsert_SameGeonameIdReplacesInPlace(IndexType type) {
+    CityIndex trie = type.newBuilder(3)
+        .insert("Kingston", new City("Kingston", 44.23, -76.48, 114_195, "CA", "08", 5992500))
+        .insert("Kingston", new City("Kingston", 17.99, -76.79, 937_700, "JM", "17", 3489854), List.of("Kingstown"))
+        .build();
+    CityIndex next = trie.toBuilder()
+        .insert("Kingston upon Hull", new City("Kingston upon Hull", 53.74, -0.33, 284_321, "GB", "ENG", 3489854))
+        .build();
+
+    assertEquals(2, next.getSize());
+    assertEquals(List.of("Kingston upon Hull", "Kingston"), names(next, next.searchByPrefix("kingston", 3)));
+    assertEquals("JM", trie.getStore().getCountry(trie.searchByPrefix("kingstow", 1)[0]));
+    assertEquals(0, next.searchByPrefix("kingstow", 3).length);
+    assertEquals(1, next.searchByWordPrefix("upon", 3).length);
+    int hull = next.searchByPrefix("kingston u", 1)[0];
+    assertEquals("GB", next.getStore().getCountry(hull));
+    assertEquals(3489854, next.getStore().getGeonameId(hull));
+  }
+}
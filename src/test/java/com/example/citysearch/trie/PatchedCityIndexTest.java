@@ -0,0 +1,123 @@
+package com.example.citysearch.trie;
+
+import com.example.citysearch.model.City;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatchedCityIndexTest {
+
+  private static List<String> names(CityIndex index, int[] ids) {
+    return Arrays.stream(ids).mapToObj(index.getStore()::getName).toList();
+  }
+
+  private CityIndex build(IndexType type) {
+    return type.newBuilder(3)
+        .insert("Sarnia", new City("Sarnia", 42.97, -82.40, 72_047, "CA", "08", 6141439))
+        .insert("Seattle", new City("Seattle", 47.61, -122.33, 608_660, "US", "WA", 5809844))
+        .insert("Saskatoon", new City("Saskatoon", 52.12, -106.63, 198_958, "CA", "11", 6141256))
+        .insert("San Antonio", new City("San Antonio", 29.42, -98.49, 1_327_407, "US", "TX", 4726206),
+            List.of("Bexar"))
+        .insert("Selma", new City("Selma", 32.41, -87.02, 20_756, "US", "AL", 4094212))
+        .build();
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testUpsert_ReplacesCityInEverySearch(IndexType type) {
+    CityIndex base = build(type);
+    CityIndex.Changes changes = base.changes();
+    assertTrue(changes.upsert(new City("Selma", 43.0, -82.05, 2_000_000, "US", "AL", 4094212), List.of()));
+    CityIndex patched = changes.build(100);
+
+    assertInstanceOf(PatchedCityIndex.class, patched);
+    assertEquals(5, patched.getSize());
+    assertEquals(List.of("Selma", "San Antonio", "Seattle"), names(patched, patched.searchByPrefix("s", 3)));
+    assertEquals(List.of("Selma", "Sarnia"), names(patched, patched.searchNearestByPrefix("s", 43.0, -82.0, 2)));
+    assertEquals(List.of("Selma", "Sarnia"), names(patched, patched.searchNearest(43.0, -82.0, 150, 5)));
+    // The base index is shared, not changed
+    assertEquals(List.of("Sarnia", "Selma"), names(base, base.searchNearestByPrefix("s", 43.0, -82.0, 2)));
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testDelete_HidesCityAndItsAlternateNames(IndexType type) {
+    CityIndex.Changes changes = build(type).changes();
+    assertTrue(changes.delete(4726206));
+    assertFalse(changes.delete(4726206));
+    assertFalse(changes.delete(1));
+    CityIndex patched = changes.build(100);
+
+    assertEquals(4, patched.getSize());
+    assertEquals(List.of("Seattle", "Saskatoon", "Sarnia"), names(patched, patched.searchByPrefix("s", 3)));
+    assertEquals(0, patched.searchByPrefix("bexar", 3).length);
+    assertEquals(List.of("Seattle"), names(patched, patched.getAllCities(1)));
+    assertFalse(names(patched, patched.searchNearest(29.42, -98.49, Double.POSITIVE_INFINITY, 5))
+        .contains("San Antonio"));
+    FuzzyMatches near = patched.searchFuzzyByPrefix("san antonia", 1, 3);
+    assertEquals(0, near.size());
+  }
+
+  @Test
+  void testChanges_StackOnAPatchedIndex() {
+    CityIndex.Changes first = build(IndexType.TRIE).changes();
+    first.upsert(new City("Sudbury", 46.49, -80.99, 88_054, "CA", "08", 5964700), List.of("Grand Sudbury"));
+    first.delete(5809844);
+    CityIndex once = first.build(100);
+
+    CityIndex.Changes second = once.changes();
+    assertFalse(second.upsert(new City("Seattle", 47.61, -122.33, 737_015, "US", "WA", 5809844), List.of()));
+    assertTrue(second.upsert(new City("Greater Sudbury", 46.49, -80.99, 166_004, "CA", "08", 5964700),
+        List.of("Grand Sudbury")));
+    CityIndex twice = second.build(100);
+
+    assertEquals(6, twice.getSize());
+    assertEquals(List.of("Seattle"), names(twice, twice.searchByPrefix("sea", 3)));
+    assertEquals(737_015, twice.getStore().getPopulation(twice.searchByPrefix("sea", 1)[0]));
+    assertEquals(List.of("Greater Sudbury"), names(twice, twice.searchByPrefix("grand", 3)));
+    assertEquals(List.of("Greater Sudbury"), names(twice, twice.searchByWordPrefix("sudb", 3)));
+    assertEquals(0, twice.searchByPrefix("sudbury", 3).length);
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testBuild_CompactsOncePatchOutgrowsLimit(IndexType type) {
+    CityIndex base = build(type);
+    CityIndex.Changes changes = base.changes();
+    changes.delete(6141439);
+    changes.upsert(new City("Salem", 44.94, -123.04, 175_535, "US", "OR", 5750162), List.of());
+    CityIndex compacted = changes.build(1);
+
+    assertFalse(compacted instanceof PatchedCityIndex);
+    assertEquals(base.getClass(), compacted.getClass());
+    assertEquals(5, compacted.getSize());
+    assertEquals(5, compacted.getStore().size());
+    assertEquals(List.of("San Antonio", "Seattle", "Saskatoon", "Salem", "Selma"),
+        names(compacted, compacted.searchByPrefix("s", 10)));
+  }
+
+  @Test
+  void testCopyOf_LeavesDeletedCitiesOut() {
+    CityIndex.Changes changes = build(IndexType.TRIE).changes();
+    changes.delete(6141256);
+    RadixCitySearchTrie copy = RadixCitySearchTrie.copyOf(changes.build(100));
+
+    assertEquals(4, copy.getStore().size());
+    assertEquals(0, copy.searchByPrefix("sask", 3).length);
+    assertEquals(List.of("San Antonio"), names(copy, copy.searchByPrefix("bex", 3)));
+  }
+
+  @Test
+  void testUpsert_RequiresGeonameId() {
+    CityIndex.Changes changes = build(IndexType.TRIE).changes();
+
+    assertThrows(IllegalArgumentException.class,
+        () -> changes.upsert(new City("Nowhere", 0, 0), List.of()));
+  }
+}
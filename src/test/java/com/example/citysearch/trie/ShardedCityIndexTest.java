@@ -0,0 +1,74 @@
+package com.example.citysearch.trie;
+
+import com.example.citysearch.model.City;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedCityIndexTest {
+
+  private static List<String> names(CityIndex index, int[] ids) {
+    return Arrays.stream(ids).mapToObj(index.getStore()::getName).toList();
+  }
+
+  private static <B extends CityIndex.Builder> B insertAll(B builder) {
+    builder.insert("Sarnia", new City("Sarnia", 42.97, -82.40, 72_047, "CA", "08", 6141439))
+        .insert("Seattle", new City("Seattle", 47.61, -122.33, 608_660, "US", "WA", 5809844))
+        .insert("Saskatoon", new City("Saskatoon", 52.12, -106.63, 198_958, "CA", "11", 6141256))
+        .insert("San Antonio", new City("San Antonio", 29.42, -98.49, 1_327_407, "US", "TX", 4726206),
+            List.of("Bexar"))
+        .insert("Selma", new City("Selma", 32.41, -87.02, 20_756, "US", "AL", 4094212))
+        .insert("Salem", new City("Salem", 44.94, -123.04, 175_535, "US", "OR", 5750162))
+        .insert("Sudbury", new City("Sudbury", 46.49, -80.99, 88_054, "CA", "08", 5964700));
+    return builder;
+  }
+
+  @ParameterizedTest
+  @EnumSource(IndexType.class)
+  void testSearch_MatchesOneIndex(IndexType type) {
+    CityIndex single = insertAll(type.newBuilder(3)).build();
+    ShardedCityIndex sharded = insertAll(new ShardedCityIndex.Builder(type, 3, 3)).build();
+
+    assertEquals(3, sharded.getShards().size());
+    assertEquals(7, sharded.getSize());
+    assertEquals(names(single, single.searchByPrefix("s", 10)), names(sharded, sharded.searchByPrefix("s", 10)));
+    assertEquals(names(single, single.getAllCities(4)), names(sharded, sharded.getAllCities(4)));
+    assertEquals(names(single, single.searchNearestByPrefix("s", 43.0, -82.0, 3)),
+        names(sharded, sharded.searchNearestByPrefix("s", 43.0, -82.0, 3)));
+    assertEquals(names(single, single.searchNearest(43.0, -82.0, 500, 10)),
+        names(sharded, sharded.searchNearest(43.0, -82.0, 500, 10)));
+    assertEquals(List.of("San Antonio"), names(sharded, sharded.searchByPrefix("bex", 3)));
+    FuzzyMatches near = sharded.searchFuzzyByPrefix("salen", 1, 3);
+    assertEquals("Salem", sharded.getStore().getName(near.city(0)));
+  }
+
+  @Test
+  void testChanges_OnlyRebuildTheirShard() {
+    ShardedCityIndex sharded = insertAll(new ShardedCityIndex.Builder(IndexType.TRIE, 3, 3)).build();
+    CityIndex.Changes changes = sharded.changes();
+    assertTrue(changes.delete(5809844));
+    assertFalse(changes.delete(1));
+    assertFalse(changes.upsert(new City("Sherbrooke", 45.40, -71.89, 161_323, "CA", "10", 6146143), List.of()));
+    CityIndex next = changes.build(100);
+
+    assertInstanceOf(ShardedCityIndex.class, next);
+    assertEquals(7, next.getSize());
+    assertEquals(List.of("Sherbrooke"), names(next, next.searchByPrefix("sher", 3)));
+    assertEquals(0, next.searchByPrefix("seattle", 3).length);
+    int touched = 0;
+    for (int i = 0; i < 3; i++) {
+      if (sharded.getShards().get(i) != ((ShardedCityIndex) next).getShards().get(i)) {
+        touched++;
+      }
+    }
+    int seattle = ShardedCityIndex.shardOf(5809844, "Seattle", 3);
+    int sherbrooke = ShardedCityIndex.shardOf(6146143, "Sherbrooke", 3);
+    assertEquals(seattle == sherbrooke ? 1 : 2, touched);
+  }
+}